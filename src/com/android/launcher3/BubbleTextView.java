@@ -48,8 +48,8 @@ import com.android.launcher3.badge.BadgeRenderer;
 import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.folder.FolderIconPreviewVerifier;
 import com.android.launcher3.graphics.DrawableFactory;
-import com.android.launcher3.graphics.HolographicOutlineHelper;
 import com.android.launcher3.graphics.IconPalette;
+import com.android.launcher3.graphics.IconShadowCache;
 import com.android.launcher3.graphics.PreloadIconDrawable;
 import com.android.launcher3.model.PackageItemInfo;
 
@@ -76,11 +76,17 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
     private final boolean mCenterVertically;
 
     private final CheckLongPressHelper mLongPressHelper;
-    private final HolographicOutlineHelper mOutlineHelper;
+    private final IconShadowCache mShadowCache;
     private final StylusEventHelper mStylusEventHelper;
     private final float mSlop;
 
     private Bitmap mPressedBackground;
+    private final Runnable mOnShadowReady = new Runnable() {
+        @Override
+        public void run() {
+            onShadowReady();
+        }
+    };
 
     private final boolean mDeferShadowGenerationOnTouch;
     private final boolean mLayoutHorizontal;
@@ -183,7 +189,7 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
         mLongPressHelper = new CheckLongPressHelper(this);
         mStylusEventHelper = new StylusEventHelper(new SimpleOnStylusPressListener(this), this);
 
-        mOutlineHelper = HolographicOutlineHelper.getInstance(getContext());
+        mShadowCache = IconShadowCache.getInstance(getContext());
         setAccessibilityDelegate(mLauncher.getAccessibilityDelegate());
 
     }
@@ -295,7 +301,7 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
                 // we pre-create it on ACTION_DOWN (it takes a small but perceptible amount of time
                 // to create it)
                 if (!mDeferShadowGenerationOnTouch && mPressedBackground == null) {
-                    mPressedBackground = mOutlineHelper.createMediumDropShadow(this);
+                    mPressedBackground = mShadowCache.getShadow(this, mOnShadowReady);
                 }
 
                 // If we're in a stylus button press, don't check for long press.
@@ -325,22 +331,38 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
     void setStayPressed(boolean stayPressed) {
         mStayPressed = stayPressed;
         if (!stayPressed) {
-            HolographicOutlineHelper.getInstance(getContext()).recycleShadowBitmap(mPressedBackground);
             mPressedBackground = null;
         } else {
             if (mPressedBackground == null) {
-                mPressedBackground = mOutlineHelper.createMediumDropShadow(this);
+                mPressedBackground = mShadowCache.getShadow(this, mOnShadowReady);
             }
         }
 
+        updatePressedIcon();
+        refreshDrawableState();
+    }
+
+    private void updatePressedIcon() {
         // Only show the shadow effect when persistent pressed state is set.
         ViewParent parent = getParent();
         if (parent != null && parent.getParent() instanceof BubbleTextShadowHandler) {
             ((BubbleTextShadowHandler) parent.getParent()).setPressedIcon(
                     this, mPressedBackground);
         }
+    }
 
-        refreshDrawableState();
+    /**
+     * Called when the shadow of the icon, which was not ready when the icon was pressed, has been
+     * generated.
+     */
+    private void onShadowReady() {
+        if (mPressedBackground != null || !(isPressed() || mStayPressed)) {
+            return;
+        }
+        mPressedBackground = mShadowCache.getShadow(this, mOnShadowReady);
+        if (mStayPressed && mPressedBackground != null) {
+            updatePressedIcon();
+        }
     }
 
     void clearPressedBackground() {
@@ -353,7 +375,7 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
         if (super.onKeyDown(keyCode, event)) {
             // Pre-create shadow so show immediately on click.
             if (mPressedBackground == null) {
-                mPressedBackground = mOutlineHelper.createMediumDropShadow(this);
+                mPressedBackground = mShadowCache.getShadow(this, mOnShadowReady);
             }
             return true;
         }
@@ -491,6 +513,40 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
         mLongPressHelper.cancelLongPress();
     }
 
+    /**
+     * Resets the state set while the view was bound to an item, so that it can be bound to
+     * another one. The view must already be removed from its parent.
+     */
+    public void prepareForReuse() {
+        cancelLongPress();
+        animate().cancel();
+        if (mStayPressed) {
+            setStayPressed(false);
+        }
+        if (mIconLoadRequest != null) {
+            mIconLoadRequest.cancel();
+            mIconLoadRequest = null;
+        }
+        setTag(null);
+        setOnClickListener(null);
+        setOnLongClickListener(null);
+        setOnFocusChangeListener(null);
+        setOnKeyListener(null);
+        setAlpha(1f);
+        setScaleX(1f);
+        setScaleY(1f);
+        setTranslationX(0f);
+        setTranslationY(0f);
+        setVisibility(VISIBLE);
+        if (!mIsIconVisible) {
+            setIconVisible(true);
+        }
+        setTextVisibility(true);
+        mForceHideBadge = false;
+        mBadgeInfo = null;
+        mBadgeScale = 0;
+    }
+
     public void applyPromiseState(boolean promiseStateChanged) {
         if (getTag() instanceof ShortcutInfo) {
             ShortcutInfo info = (ShortcutInfo) getTag();
@@ -522,6 +578,7 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
                 } else {
                     preloadDrawable = DrawableFactory.get(getContext())
                             .newPendingIcon(info.iconBitmap, getContext());
+                    preloadDrawable.setIconColor(info.iconColor);
                     preloadDrawable.setLevel(progressLevel);
                     setIcon(preloadDrawable);
                 }
@@ -640,12 +697,30 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver {
         if (getTag() instanceof ItemInfoWithIcon) {
             ItemInfoWithIcon info = (ItemInfoWithIcon) getTag();
             if (info.usingLowResIcon) {
+                // Views are usually bound before being attached, and shown once attached
                 mIconLoadRequest = LauncherAppState.getInstance(getContext()).getIconCache()
-                        .updateIconInBackground(BubbleTextView.this, info);
+                        .updateIconInBackground(BubbleTextView.this, info, isAttachedToWindow()
+                                ? IconCache.PRIORITY_VISIBLE : IconCache.PRIORITY_NEAR_VISIBLE);
             }
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mIconLoadRequest != null) {
+            mIconLoadRequest.setPriority(IconCache.PRIORITY_VISIBLE);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mIconLoadRequest != null) {
+            mIconLoadRequest.setPriority(IconCache.PRIORITY_OFF_SCREEN);
+        }
+    }
+
     public int getIconSize() {
         return mIconSize;
     }
@@ -1070,6 +1070,19 @@ public class CellLayout extends ViewGroup implements BubbleTextShadowHandler {
         }
     }
 
+    /**
+     * Draws {@param outline} instead of {@param placeholder} for the drop locations currently
+     * visualized with it.
+     */
+    public void replaceDragOutline(Bitmap placeholder, Bitmap outline) {
+        for (int i = 0; i < mDragOutlineAnims.length; i++) {
+            if (mDragOutlineAnims[i].getTag() == placeholder) {
+                mDragOutlineAnims[i].setTag(outline);
+                invalidate(mDragOutlines[i]);
+            }
+        }
+    }
+
     public void clearDragOutlines() {
         final int oldIndex = mDragOutlineCurrent;
         mDragOutlineAnims[oldIndex].animateOut();
@@ -74,6 +74,8 @@ public class FastBitmapDrawable extends Drawable {
     private boolean mIsDisabled;
 
     private IconPalette mIconPalette;
+    // Precomputed dominant color of the bitmap, or 0 if it needs to be computed
+    private int mIconColor;
 
     private static final Property<FastBitmapDrawable, Float> BRIGHTNESS
             = new Property<FastBitmapDrawable, Float>(Float.TYPE, "brightness") {
@@ -108,10 +110,19 @@ public class FastBitmapDrawable extends Drawable {
         canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
     }
 
+    /**
+     * Sets the dominant color of the bitmap, as computed by
+     * {@link Utilities#findDominantColorByHue}, so that it is not computed again. Ignored if 0.
+     */
+    public void setIconColor(int color) {
+        mIconColor = color;
+    }
+
     public IconPalette getIconPalette() {
         if (mIconPalette == null) {
-            mIconPalette = IconPalette.fromDominantColor(Utilities
-                    .findDominantColorByHue(mBitmap, 20), true /* desaturateBackground */);
+            int color = mIconColor != 0 ? mIconColor
+                    : Utilities.findDominantColorByHue(mBitmap, 20);
+            mIconPalette = IconPalette.fromDominantColor(color, true /* desaturateBackground */);
         }
         return mIconPalette;
     }
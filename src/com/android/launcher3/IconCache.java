@@ -45,21 +45,30 @@ import android.util.Log;
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.graphics.BitmapPool;
+import com.android.launcher3.graphics.CacheBlobCodec;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.icons.IconsHandler;
+import com.android.launcher3.icons.ManifestIconIndex;
 import com.android.launcher3.model.PackageItemInfo;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.IconAtlas;
 import com.android.launcher3.util.InstantAppResolver;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.Provider;
 import com.android.launcher3.util.SQLiteCacheHelper;
 import com.android.launcher3.util.Thunk;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Cache of application icons.  Icons can be made from any thread.
@@ -78,10 +87,25 @@ public class IconCache {
 
     private static final int LOW_RES_SCALE_FACTOR = 5;
 
+    // Number of components looked up by each query when preloading entries, which keeps the
+    // query under the limit of 999 arguments
+    private static final int PRELOAD_QUERY_CHUNK_SIZE = 500;
+    private static final int MIN_ICONS_PER_DECODE_PART = 16;
+
+    // Maximum size of the icon atlas file, about 1300 icons of 192px
+    private static final long ICON_ATLAS_MAX_BYTES = 192 * 1024 * 1024;
+
+    // Priorities of the high-res icon loads, from the first processed to the last
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_NEAR_VISIBLE = 1;
+    public static final int PRIORITY_OFF_SCREEN = 2;
+
     @Thunk static final Object ICON_UPDATE_TOKEN = new Object();
 
     public static class CacheEntry {
         public Bitmap icon;
+        // Dominant color of the high-res icon, or 0 if unknown
+        public int iconColor;
         public CharSequence title = "";
         public CharSequence contentDescription = "";
         public boolean isLowResIcon;
@@ -91,7 +115,6 @@ public class IconCache {
     private static IconsHandler sIconsHandler;
 
     private final HashMap<UserHandle, Bitmap> mDefaultIcons = new HashMap<>();
-    @Thunk final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
 
     private final Context mContext;
     private final PackageManager mPackageManager;
@@ -103,9 +126,14 @@ public class IconCache {
     private final InstantAppResolver mInstantAppResolver;
     private final int mIconDpi;
     @Thunk final IconDB mIconDb;
+    // Raw pixels of the high-res icons of the DB, null if disabled
+    private final IconAtlas mIconAtlas;
     private boolean firstErrorRebuiltDb = false;
+    // Incremented when entries are removed from the memory cache, guarded by this
+    private int mRemovalCount;
 
     @Thunk final Handler mWorkerHandler;
+    private final IconUpgradeQueue mUpgradeQueue;
 
     private final BitmapFactory.Options mLowResOptions;
 
@@ -117,10 +145,15 @@ public class IconCache {
         mInstantAppResolver = InstantAppResolver.newInstance(mContext);
         mIconDpi = inv.fillResIconDpi;
         mIconDb = new IconDB(context, inv.iconBitmapSize);
+        mIconAtlas = FeatureFlags.LAUNCHER3_ICON_ATLAS
+                ? new IconAtlas(new File(context.getFilesDir(), LauncherFiles.APP_ICONS_ATLAS),
+                        inv.iconBitmapSize, ICON_ATLAS_MAX_BYTES)
+                : null;
 
         mIconProvider = Utilities.getOverrideObject(
                 IconProvider.class, context, R.string.icon_provider_class);
         mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
+        mUpgradeQueue = new IconUpgradeQueue(this, mWorkerHandler);
 
         mLowResOptions = new BitmapFactory.Options();
         // Always prefer RGB_565 config for low res. If the bitmap has transparency, it will
@@ -195,6 +228,7 @@ public class IconCache {
      */
     public synchronized void remove(ComponentName componentName, UserHandle user) {
         mCache.remove(new ComponentKey(componentName, user));
+        mRemovalCount++;
     }
 
     /**
@@ -211,6 +245,7 @@ public class IconCache {
         for (ComponentKey condemned: forDeletion) {
             mCache.remove(condemned);
         }
+        mRemovalCount++;
     }
 
     /**
@@ -261,7 +296,12 @@ public class IconCache {
      */
     public synchronized void removeIconsForPkg(String packageName, UserHandle user) {
         removeFromMemCacheLocked(packageName, user);
+        ManifestIconIndex.getInstance(mContext).invalidate(packageName);
         long userSerial = mUserManager.getSerialNumberForUser(user);
+        // The icons are removed before the rows, as in addIconToDB
+        if (mIconAtlas != null) {
+            mIconAtlas.removePackage(packageName, userSerial);
+        }
         mIconDb.delete(
                 IconDB.COLUMN_COMPONENT + " LIKE ? AND " + IconDB.COLUMN_USER + " = ?",
                 new String[]{packageName + "/%", Long.toString(userSerial)});
@@ -273,6 +313,7 @@ public class IconCache {
     public synchronized void removeIconForActivity(ComponentName component, UserHandle user) {
         remove(component, user);
         long userSerial = mUserManager.getSerialNumberForUser(user);
+        removeFromAtlas(component.flattenToString(), userSerial);
         mIconDb.delete(
                 IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
                 new String[]{component.flattenToString(), Long.toString(userSerial)});
@@ -349,6 +390,7 @@ public class IconCache {
                     if (!ignorePackages.contains(component.getPackageName())) {
                         remove(component, user);
                         itemsToRemove.add(c.getInt(rowIndex));
+                        removeFromAtlas(cn, userSerial);
                     }
                     continue;
                 }
@@ -368,6 +410,7 @@ public class IconCache {
                 if (app == null) {
                     remove(component, user);
                     itemsToRemove.add(c.getInt(rowIndex));
+                    removeFromAtlas(cn, userSerial);
                 } else {
                     appsToUpdate.add(app);
                 }
@@ -416,20 +459,22 @@ public class IconCache {
             entry.icon = LauncherIcons.createBadgedIconBitmap(getFullResIcon(app), app.getUser(),
                     mContext, Build.VERSION_CODES.O);
         }
+        if (entry.iconColor == 0) {
+            entry.iconColor = findIconColor(entry.icon);
+        }
         entry.title = app.getLabel();
         entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, app.getUser());
         mCache.put(key, entry);
 
         Bitmap lowResIcon = generateLowResIcon(entry.icon);
-        ContentValues values = newContentValues(entry.icon, lowResIcon, entry.title.toString(),
-                app.getApplicationInfo().packageName, entry.isCustom);
-        addIconToDB(values, app.getComponentName(), info, userSerial);
+        ContentValues values = newContentValues(entry.icon, lowResIcon, entry.iconColor,
+                entry.title.toString(), app.getApplicationInfo().packageName, entry.isCustom);
+        addIconToDB(values, entry.icon, app.getComponentName(), info, userSerial);
     }
 
-    public void flush() {
-        synchronized (mCache) {
-            mCache.clear();
-        }
+    public synchronized void flush() {
+        mCache.clear();
+        mRemovalCount++;
     }
 
     CacheEntry getCacheEntry(LauncherActivityInfo app) {
@@ -441,7 +486,7 @@ public class IconCache {
     }
 
     public void clearIconDataBase() {
-        mIconDb.clearDB();
+        clearDB();
     }
 
     public void addCustomInfoToDataBase(Drawable icon, ItemInfo info, CharSequence title) {
@@ -468,15 +513,16 @@ public class IconCache {
             entry = new CacheEntry();
         }
         entry.icon = ((BitmapDrawable) icon).getBitmap();
+        entry.iconColor = findIconColor(entry.icon);
         entry.title = title != null ? title : app.getLabel();
         entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, app.getUser());
         mCache.put(key, entry);
 
         Bitmap lowResIcon = generateLowResIcon(entry.icon);
-        ContentValues values = newContentValues(entry.icon, lowResIcon, entry.title.toString(),
-                app.getApplicationInfo().packageName, entry.isCustom);
+        ContentValues values = newContentValues(entry.icon, lowResIcon, entry.iconColor,
+                entry.title.toString(), app.getApplicationInfo().packageName, entry.isCustom);
         if (packageInfo != null) {
-            addIconToDB(values, app.getComponentName(), packageInfo,
+            addIconToDB(values, entry.icon, app.getComponentName(), packageInfo,
                     mUserManager.getSerialNumberForUser(app.getUser()));
         }
     }
@@ -488,9 +534,15 @@ public class IconCache {
     /**
      * Updates {@param values} to contain versioning information and adds it to the DB.
      * @param values {@link ContentValues} containing icon & title
+     * @param icon the high-res icon in {@param values}, also added to the icon atlas
      */
-    private void addIconToDB(ContentValues values, ComponentName key,
+    private void addIconToDB(ContentValues values, Bitmap icon, ComponentName key,
             PackageInfo info, long userSerial) {
+        if (mIconAtlas != null) {
+            // Written before the row, so that a crash in between leaves an outdated row, which
+            // is updated with its icon on the next DB update
+            mIconAtlas.put(key.flattenToString(), userSerial, icon);
+        }
         values.put(IconDB.COLUMN_COMPONENT, key.flattenToString());
         values.put(IconDB.COLUMN_USER, userSerial);
         values.put(IconDB.COLUMN_LAST_UPDATED, info.lastUpdateTime);
@@ -504,26 +556,18 @@ public class IconCache {
      */
     public IconLoadRequest updateIconInBackground(final ItemInfoUpdateReceiver caller,
             final ItemInfoWithIcon info) {
-        Runnable request = new Runnable() {
-
-            @Override
-            public void run() {
-                if (info instanceof AppInfo || info instanceof ShortcutInfo) {
-                    getTitleAndIcon(info, false);
-                } else if (info instanceof PackageItemInfo) {
-                    getTitleAndIconForApp((PackageItemInfo) info, false);
-                }
-                mMainThreadExecutor.execute(new Runnable() {
+        return updateIconInBackground(caller, info, PRIORITY_VISIBLE);
+    }
 
-                    @Override
-                    public void run() {
-                        caller.reapplyItemInfo(info);
-                    }
-                });
-            }
-        };
-        mWorkerHandler.post(request);
-        return new IconLoadRequest(request, mWorkerHandler);
+    /**
+     * Fetches high-res icon for the provided ItemInfo and updates the caller when done. Requests
+     * are processed by increasing {@param priority}, one of the PRIORITY_* constants, and the
+     * requests for the same component share a single load.
+     * @return a request ID that can be used to cancel the request or change its priority.
+     */
+    public IconLoadRequest updateIconInBackground(ItemInfoUpdateReceiver caller,
+            ItemInfoWithIcon info, int priority) {
+        return mUpgradeQueue.add(caller, info, priority);
     }
 
     /**
@@ -556,6 +600,7 @@ public class IconCache {
         // we should still look in the cache for restored app icons.
         if (info.getTargetComponent() == null) {
             info.iconBitmap = getDefaultIcon(info.user);
+            info.iconColor = 0;
             info.title = "";
             info.contentDescription = "";
             info.usingLowResIcon = false;
@@ -591,6 +636,7 @@ public class IconCache {
         info.title = Utilities.trim(entry.title);
         info.contentDescription = entry.contentDescription;
         info.iconBitmap = entry.icon == null ? getDefaultIcon(info.user) : entry.icon;
+        info.iconColor = entry.icon == null ? 0 : entry.iconColor;
         info.usingLowResIcon = entry.isLowResIcon;
     }
 
@@ -632,6 +678,7 @@ public class IconCache {
                     entry.icon = LauncherIcons.createBadgedIconBitmap(
                             getFullResIcon(info), info.getUser(), mContext,
                             Build.VERSION_CODES.O);
+                    entry.iconColor = findIconColor(entry.icon);
                 } else {
                     if (usePackageIcon) {
                         CacheEntry packageEntry = getEntryForPackageLocked(
@@ -640,6 +687,7 @@ public class IconCache {
                             if (DEBUG) Log.d(TAG, "using package default icon for " +
                                     componentName.toShortString());
                             entry.icon = packageEntry.icon;
+                            entry.iconColor = packageEntry.iconColor;
                             entry.isCustom = packageEntry.isCustom;
                             entry.title = packageEntry.title;
                             entry.contentDescription = packageEntry.contentDescription;
@@ -670,6 +718,9 @@ public class IconCache {
     public synchronized void clear() {
         Preconditions.assertWorkerThread();
         mIconDb.clear();
+        if (mIconAtlas != null) {
+            mIconAtlas.clear();
+        }
     }
 
     /**
@@ -692,13 +743,14 @@ public class IconCache {
         }
         if (icon != null) {
             entry.icon = LauncherIcons.createIconBitmap(icon, mContext);
+            entry.iconColor = findIconColor(entry.icon);
         }
         if (!TextUtils.isEmpty(title) && entry.icon != null) {
             mCache.put(cacheKey, entry);
         }
     }
 
-    private static ComponentKey getPackageKey(String packageName, UserHandle user) {
+    static ComponentKey getPackageKey(String packageName, UserHandle user) {
         ComponentName cn = new ComponentName(packageName, packageName + EMPTY_CLASS_NAME);
         return new ComponentKey(cn, user);
     }
@@ -748,13 +800,14 @@ public class IconCache {
                     entry.title = appInfo.loadLabel(mPackageManager);
                     entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, user);
                     entry.icon = useLowResIcon ? lowResIcon : icon;
+                    entry.iconColor = findIconColor(icon);
                     entry.isLowResIcon = useLowResIcon;
 
                     // Add the icon in the DB here, since these do not get written during
                     // package updates.
-                    ContentValues values =
-                            newContentValues(icon, lowResIcon, entry.title.toString(), packageName, entry.isCustom);
-                    addIconToDB(values, cacheKey.componentName, info,
+                    ContentValues values = newContentValues(icon, lowResIcon, entry.iconColor,
+                            entry.title.toString(), packageName, entry.isCustom);
+                    addIconToDB(values, icon, cacheKey.componentName, info,
                             mUserManager.getSerialNumberForUser(user));
 
                 } catch (NameNotFoundException e) {
@@ -772,44 +825,189 @@ public class IconCache {
     }
 
     private boolean getEntryFromDB(ComponentKey cacheKey, CacheEntry entry, boolean lowRes) {
+        String component = cacheKey.componentName.flattenToString();
+        long userSerial = mUserManager.getSerialNumberForUser(cacheKey.user);
         Cursor c = null;
         try {
-            try {
-                c = mIconDb.query(
-                new String[]{lowRes ? IconDB.COLUMN_ICON_LOW_RES : IconDB.COLUMN_ICON,
-                        IconDB.COLUMN_LABEL, IconDB.COLUMN_BOOL_CUSTOMICON},
-                IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
-                new String[]{cacheKey.componentName.flattenToString(),
-                        Long.toString(mUserManager.getSerialNumberForUser(cacheKey.user))});
-            }
-            catch (SQLiteException e){
-                if (e.getMessage().contains("no such column") && !firstErrorRebuiltDb) {
-                    firstErrorRebuiltDb = true;
-                    mIconDb.clearDB();
+            if (!lowRes && mIconAtlas != null) {
+                // The row is read without its blob, which is only read if the atlas doesn't have
+                // the icon
+                c = queryEntry(component, userSerial, IconDB.COLUMN_COMPONENT);
+                if (c == null || !c.moveToNext()) {
+                    return false;
+                }
+                Bitmap atlasIcon = mIconAtlas.get(component, userSerial);
+                if (atlasIcon != null) {
+                    entry.icon = atlasIcon;
+                    entry.isLowResIcon = false;
+                    if (readEntryInfo(c, cacheKey, entry)) {
+                        return true;
+                    }
+                    entry.icon = null;
+                    BitmapPool.getInstance().release(atlasIcon);
+                    return false;
                 }
+                c.close();
+                c = null;
+            }
+
+            c = queryEntry(component, userSerial,
+                    lowRes ? IconDB.COLUMN_ICON_LOW_RES : IconDB.COLUMN_ICON);
+            if (c == null || !c.moveToNext()) {
                 return false;
             }
-            if (c.moveToNext()) {
-                entry.icon = loadIconNoResize(c, 0, lowRes ? mLowResOptions : null);
-                entry.isLowResIcon = lowRes;
-                entry.title = c.getString(1);
-                try {
-                    entry.isCustom = c.getInt(2)!=0;
-                }catch (IllegalStateException e){
-                    if (!firstErrorRebuiltDb) {
-                        firstErrorRebuiltDb = true;
-                        mIconDb.clearDB();
+            boolean found = readEntry(c, cacheKey, entry, lowRes);
+            if (found && !lowRes && mIconAtlas != null && entry.icon != null) {
+                // Moves the icons cached before the atlas was enabled
+                mIconAtlas.put(component, userSerial, entry.icon);
+            }
+            return found;
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon cache", e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the row of the component with {@param firstColumn} followed by the columns read
+     * by {@link #readEntryInfo}, or null if the DB had to be cleared.
+     */
+    private Cursor queryEntry(String component, long userSerial, String firstColumn) {
+        try {
+            return mIconDb.query(
+                    new String[]{firstColumn,
+                            IconDB.COLUMN_LABEL, IconDB.COLUMN_BOOL_CUSTOMICON,
+                            IconDB.COLUMN_ICON_COLOR},
+                    IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
+                    new String[]{component, Long.toString(userSerial)});
+        } catch (SQLiteException e) {
+            if (e.getMessage().contains("no such column") && !firstErrorRebuiltDb) {
+                firstErrorRebuiltDb = true;
+                clearDB();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Loads the entries of the provided components from the DB into the memory cache, so that
+     * loading many items doesn't run one query per item. The rows of each user are read with a
+     * query per chunk of {@link #PRELOAD_QUERY_CHUNK_SIZE} components, and the icons are decoded
+     * in parallel. Components which already have a suitable entry in memory or don't have one
+     * in the DB are skipped, and are loaded as usual when requested.
+     */
+    public void preloadEntriesFromDB(Collection<ComponentKey> keys, boolean lowRes) {
+        Preconditions.assertWorkerThread();
+        ArrayList<PreloadedEntry> entries = new ArrayList<>();
+        int removalCount;
+        synchronized (this) {
+            removalCount = mRemovalCount;
+            HashMap<UserHandle, ArrayList<ComponentKey>> keysByUser = new HashMap<>();
+            for (ComponentKey key : keys) {
+                CacheEntry entry = mCache.get(key);
+                if (entry != null && (lowRes || !entry.isLowResIcon)) {
+                    continue;
+                }
+                ArrayList<ComponentKey> userKeys = keysByUser.get(key.user);
+                if (userKeys == null) {
+                    userKeys = new ArrayList<>();
+                    keysByUser.put(key.user, userKeys);
+                }
+                userKeys.add(key);
+            }
+
+            for (UserHandle user : keysByUser.keySet()) {
+                ArrayList<ComponentKey> userKeys = keysByUser.get(user);
+                for (int i = 0; i < userKeys.size(); i += PRELOAD_QUERY_CHUNK_SIZE) {
+                    List<ComponentKey> chunk = userKeys.subList(
+                            i, Math.min(i + PRELOAD_QUERY_CHUNK_SIZE, userKeys.size()));
+                    if (!readEntriesFromDB(user, chunk, lowRes, entries)) {
+                        return;
                     }
-                    return false;
                 }
-                if (entry.title == null) {
-                    entry.title = "";
-                    entry.contentDescription = "";
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        decodeIcons(entries, lowRes ? mLowResOptions : null);
+
+        synchronized (this) {
+            if (removalCount != mRemovalCount) {
+                // The DB rows may be older than the removed entries
+                return;
+            }
+            for (PreloadedEntry preloaded : entries) {
+                CacheEntry entry = mCache.get(preloaded.key);
+                if (preloaded.entry.icon != null
+                        && (entry == null || (entry.isLowResIcon && !lowRes))) {
+                    mCache.put(preloaded.key, preloaded.entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the rows of the components in {@param keys}, without their decoded icon, to
+     * {@param out}.
+     * @return false if the DB had to be cleared.
+     */
+    private boolean readEntriesFromDB(UserHandle user, List<ComponentKey> keys, boolean lowRes,
+            ArrayList<PreloadedEntry> out) {
+        long userSerial = mUserManager.getSerialNumberForUser(user);
+        HashMap<String, ComponentKey> keysByComponent = new HashMap<>();
+        String[] args = new String[keys.size() + 1];
+        args[0] = Long.toString(userSerial);
+        StringBuilder selection = new StringBuilder(IconDB.COLUMN_USER)
+                .append(" = ? AND ").append(IconDB.COLUMN_COMPONENT).append(" IN (");
+        for (int i = 0; i < keys.size(); i++) {
+            String component = keys.get(i).componentName.flattenToString();
+            keysByComponent.put(component, keys.get(i));
+            selection.append(i > 0 ? ",?" : "?");
+            args[i + 1] = component;
+        }
+        selection.append(')');
+
+        // With the atlas, the high-res icons are read from it instead of the blobs. Components
+        // missing from the atlas are left to the per-item path, which adds them to it.
+        boolean useAtlas = !lowRes && mIconAtlas != null;
+        Cursor c = null;
+        try {
+            c = mIconDb.query(
+                    new String[]{lowRes ? IconDB.COLUMN_ICON_LOW_RES
+                            : useAtlas ? IconDB.COLUMN_COMPONENT : IconDB.COLUMN_ICON,
+                            IconDB.COLUMN_LABEL, IconDB.COLUMN_BOOL_CUSTOMICON,
+                            IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_COMPONENT},
+                    selection.toString(), args);
+            while (c.moveToNext()) {
+                String component = c.getString(4);
+                ComponentKey key = keysByComponent.get(component);
+                if (key == null || TextUtils.isEmpty(c.getString(1))) {
+                    // Entries without a label are left to the per-item path, which falls back to
+                    // the label of the component
+                    continue;
+                }
+                PreloadedEntry preloaded;
+                if (useAtlas) {
+                    Bitmap icon = mIconAtlas.get(component, userSerial);
+                    if (icon == null) {
+                        continue;
+                    }
+                    preloaded = new PreloadedEntry(key, null);
+                    preloaded.entry.icon = icon;
                 } else {
-                    entry.contentDescription = mUserManager.getBadgedLabelForUser(
-                            entry.title, cacheKey.user);
+                    preloaded = new PreloadedEntry(key, c.getBlob(0));
+                }
+                preloaded.entry.isLowResIcon = lowRes;
+                if (!readEntryInfo(c, key, preloaded.entry)) {
+                    return false;
                 }
-                return true;
+                out.add(preloaded);
             }
         } catch (SQLiteException e) {
             Log.d(TAG, "Error reading icon cache", e);
@@ -818,20 +1016,150 @@ public class IconCache {
                 c.close();
             }
         }
-        return false;
+        return true;
     }
 
-    public static class IconLoadRequest {
-        private final Runnable mRunnable;
-        private final Handler mHandler;
+    /**
+     * Decodes the icons of {@param entries}, split between the calling thread and the thread
+     * pool. Parts which the pool hasn't started when the calling thread is done are decoded by
+     * the calling thread, so that a busy pool only makes the decoding slower.
+     */
+    private static void decodeIcons(final List<PreloadedEntry> entries,
+            final BitmapFactory.Options options) {
+        int partCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                entries.size() / MIN_ICONS_PER_DECODE_PART));
+        int partSize = (entries.size() + partCount - 1) / partCount;
+        ArrayList<FutureTask<Void>> tasks = new ArrayList<>(partCount - 1);
+        for (int start = partSize; start < entries.size(); start += partSize) {
+            FutureTask<Void> task = new FutureTask<>(new DecodeIconsTask(entries.subList(
+                    start, Math.min(start + partSize, entries.size())), options), null);
+            tasks.add(task);
+            Utilities.THREAD_POOL_EXECUTOR.execute(task);
+        }
+        new DecodeIconsTask(entries.subList(0, Math.min(partSize, entries.size())), options)
+                .run();
+        for (FutureTask<Void> task : tasks) {
+            // Does nothing if the pool already started the task
+            task.run();
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error decoding icons", e);
+            }
+        }
+    }
 
-        IconLoadRequest(Runnable runnable, Handler handler) {
-            mRunnable = runnable;
-            mHandler = handler;
+    private static class DecodeIconsTask implements Runnable {
+        private final List<PreloadedEntry> mEntries;
+        private final BitmapFactory.Options mOptions;
+
+        DecodeIconsTask(List<PreloadedEntry> entries, BitmapFactory.Options options) {
+            mEntries = entries;
+            mOptions = options;
+        }
+
+        @Override
+        public void run() {
+            for (PreloadedEntry preloaded : mEntries) {
+                if (preloaded.blob != null) {
+                    preloaded.entry.icon = decodeIcon(preloaded.blob, mOptions);
+                }
+            }
+        }
+    }
+
+    private static class PreloadedEntry {
+        final ComponentKey key;
+        final CacheEntry entry = new CacheEntry();
+        // Null if the icon was read from the atlas
+        final byte[] blob;
+
+        PreloadedEntry(ComponentKey key, byte[] blob) {
+            this.key = key;
+            this.blob = blob;
+        }
+    }
+
+    private void clearDB() {
+        mIconDb.clearDB();
+        if (mIconAtlas != null) {
+            mIconAtlas.clear();
+        }
+    }
+
+    private void removeFromAtlas(String component, long userSerial) {
+        if (mIconAtlas != null) {
+            mIconAtlas.remove(component, userSerial);
+        }
+    }
+
+    /**
+     * Reads the icon, label, custom flag and icon color, in that order from the first column,
+     * from the current row of {@param c}.
+     */
+    private boolean readEntry(Cursor c, ComponentKey cacheKey, CacheEntry entry, boolean lowRes) {
+        entry.icon = loadIconNoResize(c, 0, lowRes ? mLowResOptions : null);
+        entry.isLowResIcon = lowRes;
+        return readEntryInfo(c, cacheKey, entry);
+    }
+
+    /**
+     * Reads the label, custom flag and icon color from the columns 1 to 3 of the current row
+     * of {@param c}.
+     * @return false if the DB had to be cleared.
+     */
+    private boolean readEntryInfo(Cursor c, ComponentKey cacheKey, CacheEntry entry) {
+        entry.iconColor = c.getInt(3);
+        entry.title = c.getString(1);
+        try {
+            entry.isCustom = c.getInt(2)!=0;
+        }catch (IllegalStateException e){
+            if (!firstErrorRebuiltDb) {
+                firstErrorRebuiltDb = true;
+                clearDB();
+            }
+            return false;
+        }
+        if (entry.title == null) {
+            entry.title = "";
+            entry.contentDescription = "";
+        } else {
+            entry.contentDescription = mUserManager.getBadgedLabelForUser(
+                    entry.title, cacheKey.user);
+        }
+        return true;
+    }
+
+    public static class IconLoadRequest {
+        final IconUpgradeQueue queue;
+        final ItemInfoUpdateReceiver caller;
+        final ItemInfoWithIcon info;
+
+        // Guarded by the queue
+        IconUpgradeQueue.Load load;
+        int priority;
+        boolean cancelled;
+
+        IconLoadRequest(IconUpgradeQueue queue, ItemInfoUpdateReceiver caller,
+                ItemInfoWithIcon info, int priority) {
+            this.queue = queue;
+            this.caller = caller;
+            this.info = info;
+            this.priority = priority;
         }
 
         public void cancel() {
-            mHandler.removeCallbacks(mRunnable);
+            queue.cancel(this);
+        }
+
+        /**
+         * Moves the request in the queue, if it is not being processed already.
+         */
+        public void setPriority(int priority) {
+            queue.setPriority(this, priority);
         }
     }
 
@@ -894,7 +1222,7 @@ public class IconCache {
     }
 
     private static final class IconDB extends SQLiteCacheHelper {
-        private final static int DB_VERSION = 17;
+        private final static int DB_VERSION = 18;
 
         private final static int RELEASE_VERSION = DB_VERSION +
                 (FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION ? 0 : 1);
@@ -907,6 +1235,7 @@ public class IconCache {
         private final static String COLUMN_VERSION = "version";
         private final static String COLUMN_ICON = "icon";
         private final static String COLUMN_ICON_LOW_RES = "icon_low_res";
+        private final static String COLUMN_ICON_COLOR = "icon_color";
         private final static String COLUMN_BOOL_CUSTOMICON = "icon_custom";
         private final static String COLUMN_LABEL = "label";
         private final static String COLUMN_SYSTEM_STATE = "system_state";
@@ -926,6 +1255,7 @@ public class IconCache {
                     COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0, " +
                     COLUMN_ICON + " BLOB, " +
                     COLUMN_ICON_LOW_RES + " BLOB, " +
+                    COLUMN_ICON_COLOR + " INTEGER NOT NULL DEFAULT 0, " +
                     COLUMN_LABEL + " TEXT, " +
                     COLUMN_SYSTEM_STATE + " TEXT, " +
                     COLUMN_BOOL_CUSTOMICON + " INTEGER, " +
@@ -940,11 +1270,13 @@ public class IconCache {
         }
     }
 
-    private ContentValues newContentValues(Bitmap icon, Bitmap lowResIcon, String label,
-            String packageName, boolean isCustom) {
+    private ContentValues newContentValues(Bitmap icon, Bitmap lowResIcon, int iconColor,
+            String label, String packageName, boolean isCustom) {
         ContentValues values = new ContentValues();
-        values.put(IconDB.COLUMN_ICON, Utilities.flattenBitmap(icon));
-        values.put(IconDB.COLUMN_ICON_LOW_RES, Utilities.flattenBitmap(lowResIcon));
+        CacheBlobCodec codec = CacheBlobCodec.getDefault();
+        values.put(IconDB.COLUMN_ICON, codec.encode(icon));
+        values.put(IconDB.COLUMN_ICON_LOW_RES, codec.encode(lowResIcon));
+        values.put(IconDB.COLUMN_ICON_COLOR, iconColor);
 
         values.put(IconDB.COLUMN_LABEL, label);
         values.put(IconDB.COLUMN_SYSTEM_STATE, mIconProvider.getIconSystemState(packageName));
@@ -953,6 +1285,14 @@ public class IconCache {
         return values;
     }
 
+    /**
+     * Returns the dominant color of the icon, used for its badge and progress colors, so that it
+     * does not need to be computed when the icon is drawn.
+     */
+    private static int findIconColor(Bitmap icon) {
+        return icon == null ? 0 : Utilities.findDominantColorByHue(icon, 20);
+    }
+
     /**
      * Generates a new low-res icon given a high-res icon.
      */
@@ -963,9 +1303,12 @@ public class IconCache {
     }
 
     private static Bitmap loadIconNoResize(Cursor c, int iconIndex, BitmapFactory.Options options) {
-        byte[] data = c.getBlob(iconIndex);
+        return decodeIcon(c.getBlob(iconIndex), options);
+    }
+
+    private static Bitmap decodeIcon(byte[] data, BitmapFactory.Options options) {
         try {
-            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            return CacheBlobCodec.decode(data, options == null ? null : options.inPreferredConfig);
         } catch (Exception e) {
             return null;
         }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3;
+
+import android.content.ComponentName;
+import android.os.Handler;
+
+import com.android.launcher3.IconCache.IconLoadRequest;
+import com.android.launcher3.IconCache.ItemInfoUpdateReceiver;
+import com.android.launcher3.model.PackageItemInfo;
+import com.android.launcher3.util.ComponentKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Queue of the requests to replace low resolution icons by high resolution ones, processed on
+ * the worker thread by order of priority, then by order of arrival.
+ *
+ * Requests for the same component are merged into one load. Cancelling a request only marks
+ * it, and loads without any request left are skipped when they reach the head of the queue.
+ * The loads are processed in small batches, whose icons are read from the DB in one query.
+ */
+class IconUpgradeQueue {
+
+    private static final int BATCH_SIZE = 8;
+
+    private final IconCache mIconCache;
+    private final Handler mWorkerHandler;
+    private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
+
+    // Guarded by this
+    private final HashMap<Object, Load> mLoads = new HashMap<>();
+    private final PriorityQueue<QueueNode> mQueue = new PriorityQueue<>();
+    private long mSequence;
+    private boolean mProcessScheduled;
+
+    private final Runnable mProcessBatch = new Runnable() {
+        @Override
+        public void run() {
+            processBatch();
+        }
+    };
+
+    IconUpgradeQueue(IconCache iconCache, Handler workerHandler) {
+        mIconCache = iconCache;
+        mWorkerHandler = workerHandler;
+    }
+
+    IconLoadRequest add(ItemInfoUpdateReceiver caller, ItemInfoWithIcon info, int priority) {
+        IconLoadRequest request = new IconLoadRequest(this, caller, info, priority);
+        Object key = getKey(request);
+        synchronized (this) {
+            Load load = mLoads.get(key);
+            if (load == null) {
+                load = new Load(key);
+                mLoads.put(key, load);
+            }
+            request.load = load;
+            load.requests.add(request);
+            load.liveRequests++;
+            if (priority < load.priority) {
+                enqueueLocked(load, priority);
+            }
+            if (!mProcessScheduled) {
+                mProcessScheduled = true;
+                mWorkerHandler.post(mProcessBatch);
+            }
+        }
+        return request;
+    }
+
+    synchronized void cancel(IconLoadRequest request) {
+        if (!request.cancelled) {
+            request.cancelled = true;
+            Load load = request.load;
+            if (load != null) {
+                load.liveRequests--;
+            }
+        }
+    }
+
+    synchronized void setPriority(IconLoadRequest request, int priority) {
+        if (request.cancelled || request.priority == priority) {
+            return;
+        }
+        request.priority = priority;
+        Load load = request.load;
+        if (load == null || mLoads.get(load.key) != load) {
+            // Already being loaded
+            return;
+        }
+        int loadPriority = Integer.MAX_VALUE;
+        for (IconLoadRequest r : load.requests) {
+            if (!r.cancelled) {
+                loadPriority = Math.min(loadPriority, r.priority);
+            }
+        }
+        if (loadPriority != load.priority) {
+            enqueueLocked(load, loadPriority);
+        }
+    }
+
+    /**
+     * Queues {@param load} with a new priority. The node with the previous priority stays in the
+     * queue and is skipped when it reaches the head.
+     */
+    private void enqueueLocked(Load load, int priority) {
+        load.priority = priority;
+        load.sequence = mSequence++;
+        mQueue.add(new QueueNode(load, priority, load.sequence));
+    }
+
+    private void processBatch() {
+        ArrayList<Load> batch = new ArrayList<>(BATCH_SIZE);
+        synchronized (this) {
+            while (batch.size() < BATCH_SIZE && !mQueue.isEmpty()) {
+                QueueNode node = mQueue.poll();
+                Load load = node.load;
+                if (node.sequence != load.sequence || mLoads.get(load.key) != load) {
+                    // Stale node
+                    continue;
+                }
+                mLoads.remove(load.key);
+                if (load.liveRequests > 0) {
+                    batch.add(load);
+                }
+            }
+        }
+
+        // Items without a component, and packages, are only loaded by the per-item path below
+        ArrayList<ComponentKey> components = new ArrayList<>(batch.size());
+        for (Load load : batch) {
+            ItemInfoWithIcon info = load.requests.get(0).info;
+            if (load.key instanceof ComponentKey
+                    && (info instanceof AppInfo || info instanceof ShortcutInfo)) {
+                components.add((ComponentKey) load.key);
+            }
+        }
+        mIconCache.preloadEntriesFromDB(components, false);
+
+        final ArrayList<IconLoadRequest> done = new ArrayList<>();
+        for (Load load : batch) {
+            synchronized (this) {
+                // The requests list doesn't change once the load is out of mLoads
+                for (IconLoadRequest request : load.requests) {
+                    if (!request.cancelled) {
+                        done.add(request);
+                    }
+                }
+            }
+        }
+        for (IconLoadRequest request : done) {
+            if (request.info instanceof AppInfo || request.info instanceof ShortcutInfo) {
+                mIconCache.getTitleAndIcon(request.info, false);
+            } else if (request.info instanceof PackageItemInfo) {
+                mIconCache.getTitleAndIconForApp((PackageItemInfo) request.info, false);
+            }
+        }
+        if (!done.isEmpty()) {
+            mMainThreadExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (IconLoadRequest request : done) {
+                        if (!request.cancelled) {
+                            request.caller.reapplyItemInfo(request.info);
+                        }
+                    }
+                }
+            });
+        }
+
+        synchronized (this) {
+            // Yield the worker thread between batches
+            mProcessScheduled = !mQueue.isEmpty();
+            if (mProcessScheduled) {
+                mWorkerHandler.post(mProcessBatch);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the load shared by the requests for the same icon as {@param request}.
+     * Requests for an item without a component get their own load.
+     */
+    private static Object getKey(IconLoadRequest request) {
+        ItemInfoWithIcon info = request.info;
+        if (info instanceof PackageItemInfo) {
+            return IconCache.getPackageKey(((PackageItemInfo) info).packageName, info.user);
+        }
+        ComponentName cn = info.getTargetComponent();
+        return cn == null ? request : new ComponentKey(cn, info.user);
+    }
+
+    /**
+     * The load of the high resolution icon of a component, shared by all its requests.
+     */
+    static final class Load {
+        final Object key;
+        final ArrayList<IconLoadRequest> requests = new ArrayList<>(1);
+        int liveRequests;
+        int priority = Integer.MAX_VALUE;
+        long sequence;
+
+        Load(Object key) {
+            this.key = key;
+        }
+    }
+
+    private static final class QueueNode implements Comparable<QueueNode> {
+        final Load load;
+        final int priority;
+        final long sequence;
+
+        QueueNode(Load load, int priority, long sequence) {
+            this.load = load;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueueNode other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
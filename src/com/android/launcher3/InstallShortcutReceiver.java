@@ -42,20 +42,27 @@ import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.shortcuts.ShortcutKey;
+import com.android.launcher3.util.LongArrayMap;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.Provider;
+import com.android.launcher3.util.RecordQueueFile;
 import com.android.launcher3.util.Thunk;
 
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONStringer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -87,23 +94,70 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     private static final String APP_WIDGET_TYPE_KEY = "isAppWidget";
     private static final String USER_HANDLE_KEY = "userHandle";
 
-    // The set of shortcuts that are pending install
+    // The set of shortcuts that are pending install, as stored by older versions
     private static final String APPS_PENDING_INSTALL = "apps_to_install";
 
+    private static final byte TYPE_CUSTOM_SHORTCUT = 0;
+    private static final byte TYPE_APP_SHORTCUT = 1;
+    private static final byte TYPE_DEEP_SHORTCUT = 2;
+    private static final byte TYPE_APP_WIDGET = 3;
+
     public static final int NEW_SHORTCUT_BOUNCE_DURATION = 450;
     public static final int NEW_SHORTCUT_STAGGER_DELAY = 85;
 
     private static final Object sLock = new Object();
 
-    private static void addToInstallQueue(
-            SharedPreferences sharedPrefs, PendingInstallShortcutInfo info) {
+    // The shortcuts that are pending install, lazily loaded from disk.
+    private static RecordQueueFile sInstallQueue;
+
+    private static RecordQueueFile getInstallQueue(Context context) {
         synchronized(sLock) {
-            String encoded = info.encodeToString();
-            if (encoded != null) {
-                Set<String> strings = sharedPrefs.getStringSet(APPS_PENDING_INSTALL, null);
-                strings = (strings != null) ? new HashSet<>(strings) : new HashSet<String>(1);
-                strings.add(encoded);
-                sharedPrefs.edit().putStringSet(APPS_PENDING_INSTALL, strings).apply();
+            if (sInstallQueue == null) {
+                sInstallQueue = new RecordQueueFile(
+                        new File(context.getFilesDir(), LauncherFiles.INSTALL_QUEUE));
+                migrateLegacyInstallQueue(context, sInstallQueue);
+            }
+            return sInstallQueue;
+        }
+    }
+
+    /**
+     * Moves any shortcuts queued in shared preferences by older versions into the queue file.
+     * The shortcuts are only removed from shared preferences once written to the file.
+     */
+    private static void migrateLegacyInstallQueue(Context context, RecordQueueFile queue) {
+        SharedPreferences sharedPrefs = Utilities.getPrefs(context);
+        Set<String> strings = sharedPrefs.getStringSet(APPS_PENDING_INSTALL, null);
+        if (strings == null) {
+            return;
+        }
+        // Entries which could not be written are kept, and migrated again by the next process
+        HashSet<String> failed = new HashSet<>();
+        for (String encoded : strings) {
+            try {
+                QueueEntry entry = QueueEntry.fromLegacyString(encoded, context);
+                queue.add(entry.encode(), entry.icon);
+            } catch (JSONException | URISyntaxException e) {
+                Log.d(TAG, "Exception migrating shortcut to add: " + e);
+            } catch (IOException e) {
+                Log.e(TAG, "Exception writing migrated shortcut to add: " + e);
+                failed.add(encoded);
+            }
+        }
+        if (failed.isEmpty()) {
+            sharedPrefs.edit().remove(APPS_PENDING_INSTALL).apply();
+        } else {
+            sharedPrefs.edit().putStringSet(APPS_PENDING_INSTALL, failed).apply();
+        }
+    }
+
+    private static void addToInstallQueue(Context context, PendingInstallShortcutInfo info) {
+        synchronized(sLock) {
+            QueueEntry entry = info.toQueueEntry();
+            try {
+                getInstallQueue(context).add(entry.encode(), entry.icon);
+            } catch (IOException e) {
+                Log.e(TAG, "Exception when adding shortcut: " + e);
             }
         }
     }
@@ -113,51 +167,52 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
         if (packageNames.isEmpty()) {
             return;
         }
-        SharedPreferences sp = Utilities.getPrefs(context);
+        long userSerial = UserManagerCompat.getInstance(context).getSerialNumberForUser(user);
         synchronized(sLock) {
-            Set<String> strings = sp.getStringSet(APPS_PENDING_INSTALL, null);
-            if (DBG) {
-                Log.d(TAG, "APPS_PENDING_INSTALL: " + strings
-                        + ", removing packages: " + packageNames);
-            }
-            if (Utilities.isEmpty(strings)) {
-                return;
-            }
-            Set<String> newStrings = new HashSet<>(strings);
-            Iterator<String> newStringsIter = newStrings.iterator();
-            while (newStringsIter.hasNext()) {
-                String encoded = newStringsIter.next();
-                try {
-                    Decoder decoder = new Decoder(encoded, context);
-                    if (packageNames.contains(getIntentPackage(decoder.launcherIntent)) &&
-                            user.equals(decoder.user)) {
-                        newStringsIter.remove();
+            try {
+                RecordQueueFile queue = getInstallQueue(context);
+                LongArrayMap<byte[]> records = queue.getAll();
+                if (DBG) {
+                    Log.d(TAG, "Pending installs: " + records.size()
+                            + ", removing packages: " + packageNames);
+                }
+                for (int i = records.size() - 1; i >= 0; i--) {
+                    try {
+                        QueueEntry entry = QueueEntry.decode(records.valueAt(i));
+                        if (packageNames.contains(entry.packageName)
+                                && userSerial == entry.userSerial) {
+                            queue.remove(records.keyAt(i));
+                        }
+                    } catch (IOException e) {
+                        Log.d(TAG, "Exception reading shortcut to add: " + e);
+                        queue.remove(records.keyAt(i));
                     }
-                } catch (JSONException | URISyntaxException e) {
-                    Log.d(TAG, "Exception reading shortcut to add: " + e);
-                    newStringsIter.remove();
                 }
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to update install queue", e);
             }
-            sp.edit().putStringSet(APPS_PENDING_INSTALL, newStrings).apply();
         }
     }
 
     private static ArrayList<PendingInstallShortcutInfo> getAndClearInstallQueue(Context context) {
-        SharedPreferences sharedPrefs = Utilities.getPrefs(context);
         synchronized(sLock) {
             ArrayList<PendingInstallShortcutInfo> infos = new ArrayList<>();
-            Set<String> strings = sharedPrefs.getStringSet(APPS_PENDING_INSTALL, null);
-            if (DBG) Log.d(TAG, "Getting and clearing APPS_PENDING_INSTALL: " + strings);
-            if (strings == null) {
-                return infos;
-            }
-            for (String encoded : strings) {
-                PendingInstallShortcutInfo info = decode(encoded, context);
-                if (info != null) {
-                    infos.add(info);
+            try {
+                RecordQueueFile queue = getInstallQueue(context);
+                LongArrayMap<byte[]> records = queue.getAll();
+                if (DBG) Log.d(TAG, "Getting and clearing pending installs: " + records.size());
+                int count = records.size();
+                for (int i = 0; i < count; i++) {
+                    PendingInstallShortcutInfo info =
+                            decode(queue, records.keyAt(i), records.valueAt(i), context);
+                    if (info != null) {
+                        infos.add(info);
+                    }
                 }
+                queue.clear();
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to read install queue", e);
             }
-            sharedPrefs.edit().putStringSet(APPS_PENDING_INSTALL, new HashSet<String>()).apply();
             return infos;
         }
     }
@@ -236,18 +291,24 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     public static HashSet<ShortcutKey> getPendingShortcuts(Context context) {
         HashSet<ShortcutKey> result = new HashSet<>();
 
-        Set<String> strings = Utilities.getPrefs(context).getStringSet(APPS_PENDING_INSTALL, null);
-        if (Utilities.isEmpty(strings)) {
+        LongArrayMap<byte[]> records;
+        try {
+            records = getInstallQueue(context).getAll();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read install queue", e);
             return result;
         }
 
-        for (String encoded : strings) {
+        for (byte[] record : records) {
             try {
-                Decoder decoder = new Decoder(encoded, context);
-                if (decoder.optBoolean(DEEPSHORTCUT_TYPE_KEY)) {
-                    result.add(ShortcutKey.fromIntent(decoder.launcherIntent, decoder.user));
+                QueueEntry entry = QueueEntry.decode(record);
+                if (entry.type == TYPE_DEEP_SHORTCUT) {
+                    UserHandle user = entry.getUser(context);
+                    if (user != null) {
+                        result.add(ShortcutKey.fromIntent(entry.getLaunchIntent(), user));
+                    }
                 }
-            } catch (JSONException | URISyntaxException e) {
+            } catch (IOException | URISyntaxException e) {
                 Log.d(TAG, "Exception reading shortcut to add: " + e);
             }
         }
@@ -256,7 +317,7 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
 
     private static void queuePendingShortcutInfo(PendingInstallShortcutInfo info, Context context) {
         // Queue the item up for adding if launcher has not loaded properly yet
-        addToInstallQueue(Utilities.getPrefs(context), info);
+        addToInstallQueue(context, info);
         flushInstallQueue(context);
     }
 
@@ -378,40 +439,20 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
             label = info.label;
         }
 
-        public String encodeToString() {
-            try {
-                if (activityInfo != null) {
-                    // If it a launcher target, we only need component name, and user to
-                    // recreate this.
-                    return new JSONStringer()
-                        .object()
-                        .key(LAUNCH_INTENT_KEY).value(launchIntent.toUri(0))
-                        .key(APP_SHORTCUT_TYPE_KEY).value(true)
-                        .key(USER_HANDLE_KEY).value(UserManagerCompat.getInstance(mContext)
-                                .getSerialNumberForUser(user))
-                        .endObject().toString();
-                } else if (shortcutInfo != null) {
-                    // If it a launcher target, we only need component name, and user to
-                    // recreate this.
-                    return new JSONStringer()
-                            .object()
-                            .key(LAUNCH_INTENT_KEY).value(launchIntent.toUri(0))
-                            .key(DEEPSHORTCUT_TYPE_KEY).value(true)
-                            .key(USER_HANDLE_KEY).value(UserManagerCompat.getInstance(mContext)
-                                    .getSerialNumberForUser(user))
-                            .endObject().toString();
-                } else if (providerInfo != null) {
-                    // If it a launcher target, we only need component name, and user to
-                    // recreate this.
-                    return new JSONStringer()
-                            .object()
-                            .key(LAUNCH_INTENT_KEY).value(launchIntent.toUri(0))
-                            .key(APP_WIDGET_TYPE_KEY).value(true)
-                            .key(USER_HANDLE_KEY).value(UserManagerCompat.getInstance(mContext)
-                                    .getSerialNumberForUser(user))
-                            .endObject().toString();
-                }
-
+        public QueueEntry toQueueEntry() {
+            QueueEntry entry = new QueueEntry();
+            entry.userSerial = UserManagerCompat.getInstance(mContext)
+                    .getSerialNumberForUser(user);
+            if (activityInfo != null) {
+                // If it a launcher target, we only need component name, and user to
+                // recreate this.
+                entry.type = TYPE_APP_SHORTCUT;
+            } else if (shortcutInfo != null) {
+                entry.type = TYPE_DEEP_SHORTCUT;
+            } else if (providerInfo != null) {
+                entry.type = TYPE_APP_WIDGET;
+            } else {
+                entry.type = TYPE_CUSTOM_SHORTCUT;
                 if (launchIntent.getAction() == null) {
                     launchIntent.setAction(Intent.ACTION_VIEW);
                 } else if (launchIntent.getAction().equals(Intent.ACTION_MAIN) &&
@@ -423,32 +464,22 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
 
                 // This name is only used for comparisons and notifications, so fall back to activity
                 // name if not supplied
-                String name = ensureValidName(mContext, launchIntent, label).toString();
+                entry.name = ensureValidName(mContext, launchIntent, label).toString();
                 Bitmap icon = data.getParcelableExtra(Intent.EXTRA_SHORTCUT_ICON);
                 Intent.ShortcutIconResource iconResource =
                     data.getParcelableExtra(Intent.EXTRA_SHORTCUT_ICON_RESOURCE);
 
                 // Only encode the parameters which are supported by the API.
-                JSONStringer json = new JSONStringer()
-                    .object()
-                    .key(LAUNCH_INTENT_KEY).value(launchIntent.toUri(0))
-                    .key(NAME_KEY).value(name);
                 if (icon != null) {
-                    byte[] iconByteArray = Utilities.flattenBitmap(icon);
-                    json = json.key(ICON_KEY).value(
-                            Base64.encodeToString(
-                                    iconByteArray, 0, iconByteArray.length, Base64.DEFAULT));
+                    entry.icon = Utilities.flattenBitmap(icon);
                 }
                 if (iconResource != null) {
-                    json = json.key(ICON_RESOURCE_NAME_KEY).value(iconResource.resourceName);
-                    json = json.key(ICON_RESOURCE_PACKAGE_NAME_KEY)
-                            .value(iconResource.packageName);
+                    entry.iconResourceName = iconResource.resourceName;
+                    entry.iconResourcePackage = iconResource.packageName;
                 }
-                return json.endObject().toString();
-            } catch (JSONException e) {
-                Log.d(TAG, "Exception when adding shortcut: " + e);
-                return null;
             }
+            entry.setLaunchIntent(launchIntent);
+            return entry;
         }
 
         public Pair<ItemInfo, Object> getItemInfo() {
@@ -504,76 +535,190 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
                 ? intent.getPackage() : intent.getComponent().getPackageName();
     }
 
-    private static PendingInstallShortcutInfo decode(String encoded, Context context) {
+    private static PendingInstallShortcutInfo decode(
+            RecordQueueFile queue, long id, byte[] record, Context context) {
         try {
-            Decoder decoder = new Decoder(encoded, context);
-            if (decoder.optBoolean(APP_SHORTCUT_TYPE_KEY)) {
+            QueueEntry entry = QueueEntry.decode(record);
+            Intent launchIntent = entry.getLaunchIntent();
+            UserHandle user = entry.getUser(context);
+            if (user == null) {
+                Log.d(TAG, "Ignoring shortcut for invalid user: " + entry.userSerial);
+                return null;
+            }
+
+            if (entry.type == TYPE_APP_SHORTCUT) {
                 LauncherActivityInfo info = LauncherAppsCompat.getInstance(context)
-                        .resolveActivity(decoder.launcherIntent, decoder.user);
+                        .resolveActivity(launchIntent, user);
                 return info == null ? null : new PendingInstallShortcutInfo(info, context);
-            } else if (decoder.optBoolean(DEEPSHORTCUT_TYPE_KEY)) {
+            } else if (entry.type == TYPE_DEEP_SHORTCUT) {
                 DeepShortcutManager sm = DeepShortcutManager.getInstance(context);
                 List<ShortcutInfoCompat> si = sm.queryForFullDetails(
-                        decoder.launcherIntent.getPackage(),
-                        Arrays.asList(decoder.launcherIntent.getStringExtra(
+                        launchIntent.getPackage(),
+                        Arrays.asList(launchIntent.getStringExtra(
                                 ShortcutInfoCompat.EXTRA_SHORTCUT_ID)),
-                        decoder.user);
+                        user);
                 if (si.isEmpty()) {
                     return null;
                 } else {
                     return new PendingInstallShortcutInfo(si.get(0), context);
                 }
-            } else if (decoder.optBoolean(APP_WIDGET_TYPE_KEY)) {
-                int widgetId = decoder.launcherIntent
+            } else if (entry.type == TYPE_APP_WIDGET) {
+                int widgetId = launchIntent
                         .getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, 0);
                 AppWidgetProviderInfo info = AppWidgetManager.getInstance(context)
                         .getAppWidgetInfo(widgetId);
-                if (info == null || !info.provider.equals(decoder.launcherIntent.getComponent()) ||
-                        !info.getProfile().equals(decoder.user)) {
+                if (info == null || !info.provider.equals(launchIntent.getComponent()) ||
+                        !info.getProfile().equals(user)) {
                     return null;
                 }
                 return new PendingInstallShortcutInfo(info, widgetId, context);
             }
 
             Intent data = new Intent();
-            data.putExtra(Intent.EXTRA_SHORTCUT_INTENT, decoder.launcherIntent);
-            data.putExtra(Intent.EXTRA_SHORTCUT_NAME, decoder.getString(NAME_KEY));
-
-            String iconBase64 = decoder.optString(ICON_KEY);
-            String iconResourceName = decoder.optString(ICON_RESOURCE_NAME_KEY);
-            String iconResourcePackageName = decoder.optString(ICON_RESOURCE_PACKAGE_NAME_KEY);
-            if (iconBase64 != null && !iconBase64.isEmpty()) {
-                byte[] iconArray = Base64.decode(iconBase64, Base64.DEFAULT);
-                Bitmap b = BitmapFactory.decodeByteArray(iconArray, 0, iconArray.length);
+            data.putExtra(Intent.EXTRA_SHORTCUT_INTENT, launchIntent);
+            data.putExtra(Intent.EXTRA_SHORTCUT_NAME, entry.name);
+
+            byte[] icon = queue.getBlob(id);
+            if (icon != null) {
+                Bitmap b = BitmapFactory.decodeByteArray(icon, 0, icon.length);
                 data.putExtra(Intent.EXTRA_SHORTCUT_ICON, b);
-            } else if (iconResourceName != null && !iconResourceName.isEmpty()) {
+            } else if (!TextUtils.isEmpty(entry.iconResourceName)) {
                 Intent.ShortcutIconResource iconResource =
                     new Intent.ShortcutIconResource();
-                iconResource.resourceName = iconResourceName;
-                iconResource.packageName = iconResourcePackageName;
+                iconResource.resourceName = entry.iconResourceName;
+                iconResource.packageName = entry.iconResourcePackage;
                 data.putExtra(Intent.EXTRA_SHORTCUT_ICON_RESOURCE, iconResource);
             }
 
-            return new PendingInstallShortcutInfo(data, decoder.user, context);
-        } catch (JSONException | URISyntaxException e) {
+            return new PendingInstallShortcutInfo(data, user, context);
+        } catch (IOException | URISyntaxException e) {
             Log.d(TAG, "Exception reading shortcut to add: " + e);
         }
         return null;
     }
 
-    private static class Decoder extends JSONObject {
-        public final Intent launcherIntent;
-        public final UserHandle user;
+    /**
+     * Binary representation of a {@link PendingInstallShortcutInfo} in the install queue. The
+     * package and user are stored as plain fields so that the queue can be filtered without
+     * parsing the launch intent. Custom shortcut icons are stored as a separate blob.
+     */
+    private static class QueueEntry {
+        byte type;
+        long userSerial;
+        String packageName;
+        String launchIntentUri;
+
+        // Only used by custom shortcuts
+        String name;
+        String iconResourceName;
+        String iconResourcePackage;
+        byte[] icon;
+
+        void setLaunchIntent(Intent intent) {
+            launchIntentUri = intent.toUri(0);
+            packageName = getIntentPackage(intent);
+        }
+
+        Intent getLaunchIntent() throws URISyntaxException {
+            return Intent.parseUri(launchIntentUri, 0);
+        }
 
-        private Decoder(String encoded, Context context) throws JSONException, URISyntaxException {
-            super(encoded);
-            launcherIntent = Intent.parseUri(getString(LAUNCH_INTENT_KEY), 0);
-            user = has(USER_HANDLE_KEY) ? UserManagerCompat.getInstance(context)
-                    .getUserForSerialNumber(getLong(USER_HANDLE_KEY))
-                    : Process.myUserHandle();
-            if (user == null) {
-                throw new JSONException("Invalid user");
+        UserHandle getUser(Context context) {
+            return UserManagerCompat.getInstance(context).getUserForSerialNumber(userSerial);
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeLong(userSerial);
+            writeNullableString(out, packageName);
+            writeString(out, launchIntentUri);
+            if (type == TYPE_CUSTOM_SHORTCUT) {
+                writeNullableString(out, name);
+                writeNullableString(out, iconResourceName);
+                writeNullableString(out, iconResourcePackage);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        static QueueEntry decode(byte[] record) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            QueueEntry entry = new QueueEntry();
+            entry.type = in.readByte();
+            entry.userSerial = in.readLong();
+            entry.packageName = readNullableString(in);
+            entry.launchIntentUri = readString(in);
+            if (entry.type == TYPE_CUSTOM_SHORTCUT) {
+                entry.name = readNullableString(in);
+                entry.iconResourceName = readNullableString(in);
+                entry.iconResourcePackage = readNullableString(in);
+            }
+            return entry;
+        }
+
+        /**
+         * Parses a JSON encoded entry as stored in shared preferences by older versions.
+         */
+        static QueueEntry fromLegacyString(String encoded, Context context)
+                throws JSONException, URISyntaxException {
+            JSONObject object = new JSONObject(encoded);
+            QueueEntry entry = new QueueEntry();
+            if (object.optBoolean(APP_SHORTCUT_TYPE_KEY)) {
+                entry.type = TYPE_APP_SHORTCUT;
+            } else if (object.optBoolean(DEEPSHORTCUT_TYPE_KEY)) {
+                entry.type = TYPE_DEEP_SHORTCUT;
+            } else if (object.optBoolean(APP_WIDGET_TYPE_KEY)) {
+                entry.type = TYPE_APP_WIDGET;
+            } else {
+                entry.type = TYPE_CUSTOM_SHORTCUT;
+                entry.name = object.getString(NAME_KEY);
+                String iconBase64 = object.optString(ICON_KEY);
+                if (!TextUtils.isEmpty(iconBase64)) {
+                    entry.icon = Base64.decode(iconBase64, Base64.DEFAULT);
+                }
+                entry.iconResourceName = object.optString(ICON_RESOURCE_NAME_KEY, null);
+                entry.iconResourcePackage = object.optString(ICON_RESOURCE_PACKAGE_NAME_KEY, null);
+            }
+            entry.userSerial = object.has(USER_HANDLE_KEY) ? object.getLong(USER_HANDLE_KEY)
+                    : UserManagerCompat.getInstance(context)
+                            .getSerialNumberForUser(Process.myUserHandle());
+            entry.setLaunchIntent(Intent.parseUri(object.getString(LAUNCH_INTENT_KEY), 0));
+            return entry;
+        }
+
+        private static void writeNullableString(DataOutputStream out, String value)
+                throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                writeString(out, value);
+            }
+        }
+
+        private static String readNullableString(DataInputStream in) throws IOException {
+            return in.readBoolean() ? readString(in) : null;
+        }
+
+        /**
+         * Writes {@param value} as its UTF-8 length followed by its UTF-8 bytes. Unlike
+         * {@link DataOutputStream#writeUTF}, this is not limited to 64KB, which intent URIs with
+         * large extras can exceed.
+         */
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) {
+                throw new IOException("Invalid string length " + length);
             }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
         }
     }
 
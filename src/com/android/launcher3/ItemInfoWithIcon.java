@@ -33,11 +33,17 @@ public abstract class ItemInfoWithIcon extends ItemInfo {
      */
     public boolean usingLowResIcon;
 
+    /**
+     * The dominant color of {@link #iconBitmap}, or 0 if it has not been computed.
+     */
+    public int iconColor;
+
     protected ItemInfoWithIcon() { }
 
     protected ItemInfoWithIcon(ItemInfoWithIcon info) {
         super(info);
         iconBitmap = info.iconBitmap;
         usingLowResIcon = info.usingLowResIcon;
+        iconColor = info.iconColor;
     }
 }
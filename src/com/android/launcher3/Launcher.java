@@ -114,6 +114,9 @@ import com.android.launcher3.dynamicui.ExtractedColors;
 import com.android.launcher3.dynamicui.WallpaperColorInfo;
 import com.android.launcher3.folder.Folder;
 import com.android.launcher3.folder.FolderIcon;
+import com.android.launcher3.graphics.BitmapPool;
+import com.android.launcher3.graphics.DragOutlineRenderer;
+import com.android.launcher3.graphics.IconShadowCache;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.icons.IconPickerActivity;
 import com.android.launcher3.icons.IconsHandler;
@@ -149,6 +152,7 @@ import com.android.launcher3.util.TestingUtils;
 import com.android.launcher3.util.Themes;
 import com.android.launcher3.util.Thunk;
 import com.android.launcher3.util.ViewOnDrawExecutor;
+import com.android.launcher3.views.BubbleTextViewPool;
 import com.android.launcher3.widget.PendingAddShortcutInfo;
 import com.android.launcher3.widget.PendingAddWidgetInfo;
 import com.android.launcher3.widget.WidgetAddFlowHandler;
@@ -292,6 +296,7 @@ public class Launcher extends BaseActivity
     private final ArrayList<Runnable> mBindOnResumeCallbacks = new ArrayList<>();
     private final ArrayList<Runnable> mOnResumeCallbacks = new ArrayList<>();
     private ViewOnDrawExecutor mPendingExecutor;
+    private BubbleTextViewPool mIconViewPool;
 
     private LauncherModel mModel;
     private ModelWriter mModelWriter;
@@ -396,6 +401,12 @@ public class Launcher extends BaseActivity
         }
 
         mPredictiveAppsProvider = new PredictiveAppsProvider(this);
+        mPredictiveAppsProvider.runWhenLoaded(new Runnable() {
+            @Override
+            public void run() {
+                tryAndUpdatePredictedApps();
+            }
+        });
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.preOnCreate();
@@ -447,6 +458,8 @@ public class Launcher extends BaseActivity
 
         setupViews();
         mDeviceProfile.layout(this, false /* notifyListeners */);
+        mIconViewPool = new BubbleTextViewPool(this);
+        mIconViewPool.fillWhenIdle();
         loadExtractedColorsAndColorItems();
 
         mPopupDataProvider = new PopupDataProvider(this);
@@ -939,6 +952,7 @@ public class Launcher extends BaseActivity
     protected void onStop() {
         super.onStop();
         FirstFrameAnimatorHelper.setIsVisible(false);
+        mPredictiveAppsProvider.persistCounters();
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onStop();
@@ -1442,8 +1456,11 @@ public class Launcher extends BaseActivity
      * @return A View inflated from layoutResId.
      */
     public View createShortcut(ViewGroup parent, ShortcutInfo info) {
-        BubbleTextView favorite = (BubbleTextView) LayoutInflater.from(parent.getContext())
-                .inflate(R.layout.app_icon, parent, false);
+        BubbleTextView favorite = mIconViewPool.obtain(R.layout.app_icon);
+        if (favorite == null) {
+            favorite = (BubbleTextView) LayoutInflater.from(parent.getContext())
+                    .inflate(R.layout.app_icon, parent, false);
+        }
         favorite.applyFromShortcutInfo(info);
         favorite.setOnClickListener(this);
         favorite.setOnFocusChangeListener(mFocusHandler);
@@ -1917,6 +1934,9 @@ public class Launcher extends BaseActivity
         LauncherAnimUtils.onDestroyActivity();
 
         clearPendingBinds();
+        mIconViewPool.destroy();
+        // The cached drag outlines were generated for the views of this activity
+        DragOutlineRenderer.getInstance(this).clearCache();
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onDestroy();
@@ -2363,6 +2383,11 @@ public class Launcher extends BaseActivity
             return;
         }
 
+        if (v.isDeferred()) {
+            // The widget is about to be inflated
+            return;
+        }
+
         final LauncherAppWidgetInfo info = (LauncherAppWidgetInfo) v.getTag();
         if (v.isReadyForClickSetup()) {
             LauncherAppWidgetProviderInfo appWidgetInfo =
@@ -2919,6 +2944,8 @@ public class Launcher extends BaseActivity
             // The widget preview db can result in holding onto over
             // 3MB of memory for caching which isn't necessary.
             SQLiteDatabase.releaseMemory();
+            DragOutlineRenderer.getInstance(this).clearCache();
+            IconShadowCache.getInstance(this).clear();
 
             // This clears all widget bitmaps from the widget tray
             // TODO(hyunyoungs)
@@ -3281,6 +3308,7 @@ public class Launcher extends BaseActivity
 
         // Clear the workspace because it's going to be rebound
         mWorkspace.clearDropTargets();
+        recycleWorkspaceIcons();
         mWorkspace.removeAllWorkspaceScreens();
 
         if (mHotseat != null) {
@@ -3291,6 +3319,26 @@ public class Launcher extends BaseActivity
         }
     }
 
+    /**
+     * Removes the icons from the workspace and hotseat, and puts them back in the icon pool.
+     */
+    private void recycleWorkspaceIcons() {
+        for (CellLayout layout : mWorkspace.getWorkspaceAndHotseatCellLayouts()) {
+            ShortcutAndWidgetContainer container = layout.getShortcutsAndWidgets();
+            for (int i = container.getChildCount() - 1; i >= 0; i--) {
+                View child = container.getChildAt(i);
+                if (child instanceof BubbleTextView && child.getTag() instanceof ShortcutInfo) {
+                    layout.removeViewInLayout(child);
+                    mIconViewPool.recycle(R.layout.app_icon, child);
+                }
+            }
+        }
+    }
+
+    public BubbleTextViewPool getIconViewPool() {
+        return mIconViewPool;
+    }
+
     @Override
     public void bindScreens(ArrayList<Long> orderedScreenIds) {
         // Make sure the first screen is always at the start.
@@ -3498,6 +3546,17 @@ public class Launcher extends BaseActivity
             return view;
         }
 
+        if (FeatureFlags.LAUNCHER3_LAZY_WIDGETS
+                && item.restoreStatus == LauncherAppWidgetInfo.RESTORE_COMPLETED
+                && !item.isCustomWidget()
+                && !mWorkspace.shouldInflateWidgetsOnScreen(item.screenId)) {
+            // Show a placeholder until the page gets close to the current page
+            PendingAppWidgetHostView view =
+                    new PendingAppWidgetHostView(this, item, mIconCache, false, true);
+            prepareAppWidget(view, item);
+            return view;
+        }
+
         final long start = DEBUG_WIDGETS ? SystemClock.uptimeMillis() : 0;
         if (DEBUG_WIDGETS) {
             Log.d(TAG, "bindAppWidget: " + item);
@@ -3699,6 +3758,13 @@ public class Launcher extends BaseActivity
         mWorkspace.restoreInstanceStateForRemainingPages();
 
         setWorkspaceLoading(false);
+        // The current page may have changed since the widgets were bound
+        mWorkspace.updateDeferredWidgets();
+        // Refill the icon pool for the next binds
+        mIconViewPool.fillWhenIdle();
+        if (mAppsView != null) {
+            mAppsView.warmUp();
+        }
 
         if (mPendingActivityResult != null) {
             handleActivityResult(mPendingActivityResult.requestCode,
@@ -3767,6 +3833,9 @@ public class Launcher extends BaseActivity
             }
 
             mAppsView.setApps(apps);
+            if (!mWorkspaceLoading) {
+                mAppsView.warmUp();
+            }
         }
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.bindAllApplications(apps);
@@ -3946,6 +4015,35 @@ public class Launcher extends BaseActivity
         }
     }
 
+    @Override
+    public void bindWidgetsForPackage(final String packageName,
+            final MultiHashMap<PackageItemInfo, WidgetItem> widgets) {
+        // Not a RunnableWithId, as every package update needs to be applied
+        Runnable r = new Runnable() {
+            @Override
+            public void run() {
+                bindWidgetsForPackage(packageName, widgets);
+            }
+        };
+        if (waitUntilResume(r)) {
+            return;
+        }
+
+        if (mWidgetsView != null) {
+            Executor pendingExecutor = getPendingExecutor();
+            if (pendingExecutor != null && mState != State.WIDGETS) {
+                pendingExecutor.execute(r);
+                return;
+            }
+            mWidgetsView.updateWidgetsForPackage(packageName, widgets);
+        }
+
+        AbstractFloatingView topView = AbstractFloatingView.getTopOpenView(this);
+        if (topView != null) {
+            topView.onWidgetsBound();
+        }
+    }
+
     public List<WidgetItem> getWidgetsForPackageUser(PackageUserKey packageUserKey) {
         return mWidgetsView.getWidgetsForPackageUser(packageUserKey);
     }
@@ -4132,6 +4230,7 @@ public class Launcher extends BaseActivity
         writer.println(" mPendingActivityResult=" + mPendingActivityResult);
 
         mModel.dumpState(prefix, fd, writer, args);
+        BitmapPool.getInstance().dump(prefix, writer);
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.dump(prefix, fd, writer, args);
@@ -54,6 +54,9 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
     // Maintains a list of widget ids which are supposed to be auto advanced.
     private static final SparseBooleanArray sAutoAdvanceWidgetIds = new SparseBooleanArray();
 
+    // Incremented each time views are applied to any widget, see #getViewsGeneration()
+    private static int sViewsGeneration;
+
     protected final LayoutInflater mInflater;
 
     private final CheckLongPressHelper mLongPressHelper;
@@ -72,6 +75,20 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
     private boolean mIsAttachedToWindow;
     private boolean mIsAutoAdvanceRegistered;
     private Runnable mAutoAdvanceRunnable;
+    private int mViewsGeneration;
+
+    // The latest views received since the last frame, applied on the next frame
+    private RemoteViews mPendingRemoteViews;
+    private final Runnable mApplyPendingViewsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            RemoteViews remoteViews = mPendingRemoteViews;
+            mPendingRemoteViews = null;
+            if (remoteViews != null) {
+                applyRemoteViews(remoteViews);
+            }
+        }
+    };
 
     /**
      * The scaleX and scaleY value such that the widget fits within its cellspans, scaleX = scaleY.
@@ -118,14 +135,36 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
 
     @Override
     public void updateAppWidget(RemoteViews remoteViews) {
+        if (remoteViews != null && mIsAttachedToWindow) {
+            // Widgets can post several updates in a burst, only apply the latest one per frame.
+            // On O and above, the views are then inflated on the executor.
+            if (mPendingRemoteViews == null) {
+                postOnAnimation(mApplyPendingViewsRunnable);
+            }
+            mPendingRemoteViews = remoteViews;
+            return;
+        }
+        cancelPendingUpdate();
+        applyRemoteViews(remoteViews);
+    }
+
+    private void applyRemoteViews(RemoteViews remoteViews) {
         // Store the orientation in which the widget was inflated
         updateLastInflationOrientation();
+        mViewsGeneration = ++sViewsGeneration;
         super.updateAppWidget(remoteViews);
 
         // The provider info or the views might have changed.
         checkIfAutoAdvance();
     }
 
+    private void cancelPendingUpdate() {
+        if (mPendingRemoteViews != null) {
+            removeCallbacks(mApplyPendingViewsRunnable);
+            mPendingRemoteViews = null;
+        }
+    }
+
     private boolean checkScrollableRecursively(ViewGroup viewGroup) {
         if (viewGroup instanceof AdapterView) {
             return true;
@@ -142,6 +181,14 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
         return false;
     }
 
+    /**
+     * Returns a number which changes whenever new views are applied to this widget, and which is
+     * never shared with another widget.
+     */
+    public int getViewsGeneration() {
+        return mViewsGeneration;
+    }
+
     public boolean isReinflateRequired(int orientation) {
         // Re-inflate is required if the orientation has changed since last inflated.
         if (mPreviousOrientation != orientation) {
@@ -233,6 +280,13 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView
         // state is updated. So isAttachedToWindow() will return true until next frame.
         mIsAttachedToWindow = false;
         checkIfAutoAdvance();
+
+        // Don't leave the view out of date while it is detached, e.g. when being reparented
+        if (mPendingRemoteViews != null) {
+            RemoteViews remoteViews = mPendingRemoteViews;
+            cancelPendingUpdate();
+            applyRemoteViews(remoteViews);
+        }
     }
 
     @Override
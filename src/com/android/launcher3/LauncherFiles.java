@@ -22,7 +22,10 @@ public class LauncherFiles {
 
     public static final String WIDGET_PREVIEWS_DB = "widgetpreviews.db";
     public static final String APP_ICONS_DB = "app_icons.db";
+    public static final String APP_ICONS_ATLAS = "app_icons.atlas";
     public static final String APP_SHORTCUTS_DB = "app_shortcuts.db";
+    public static final String MANIFEST_ICONS_DB = "manifest_icons.db";
+    public static final String INSTALL_QUEUE = "install_queue";
 
     public static final List<String> ALL_FILES = Collections.unmodifiableList(Arrays.asList(
             LAUNCHER_DB,
@@ -30,5 +33,8 @@ public class LauncherFiles {
             WIDGET_PREVIEWS_DB,
             MANAGED_USER_PREFERENCES_KEY + XML,
             DEVICE_PREFERENCES_KEY + XML,
-            APP_ICONS_DB));
+            APP_ICONS_DB,
+            APP_ICONS_ATLAS,
+            MANIFEST_ICONS_DB,
+            INSTALL_QUEUE));
 }
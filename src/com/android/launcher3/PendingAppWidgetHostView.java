@@ -48,9 +48,11 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView
     private final LauncherAppWidgetInfo mInfo;
     private final int mStartState;
     private final boolean mDisabledForSafeMode;
+    private final boolean mDeferred;
     private Launcher mLauncher;
 
     private Bitmap mIcon;
+    private int mIconColor;
 
     private Drawable mCenterDrawable;
     private Drawable mSettingIconDrawable;
@@ -62,12 +64,23 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView
 
     public PendingAppWidgetHostView(Context context, LauncherAppWidgetInfo info,
             IconCache cache, boolean disabledForSafeMode) {
+        this(context, info, cache, disabledForSafeMode, false);
+    }
+
+    /**
+     * @param deferred true if the widget is ready, but is not inflated until its page gets close
+     *                 to the current page. The view then shows the app icon, and is replaced by
+     *                 the actual widget through {@link Workspace#updateDeferredWidgets()}.
+     */
+    public PendingAppWidgetHostView(Context context, LauncherAppWidgetInfo info,
+            IconCache cache, boolean disabledForSafeMode, boolean deferred) {
         super(new ContextThemeWrapper(context, R.style.WidgetContainerTheme));
 
         mLauncher = Launcher.getLauncher(context);
         mInfo = info;
         mStartState = info.restoreStatus;
         mDisabledForSafeMode = disabledForSafeMode;
+        mDeferred = deferred;
 
         mPaint = new TextPaint();
         mPaint.setColor(Themes.getAttrColor(getContext(), android.R.attr.textColorPrimary));
@@ -116,6 +129,10 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView
         return mStartState != mInfo.restoreStatus;
     }
 
+    public boolean isDeferred() {
+        return mDeferred;
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
@@ -129,6 +146,7 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView
             return;
         }
         mIcon = icon;
+        mIconColor = info.iconColor;
         if (mCenterDrawable != null) {
             mCenterDrawable.setCallback(null);
             mCenterDrawable = null;
@@ -144,14 +162,19 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView
                 disabledIcon.setIsDisabled(true);
                 mCenterDrawable = disabledIcon;
                 mSettingIconDrawable = null;
+            } else if (mDeferred) {
+                mCenterDrawable = drawableFactory.newIcon(mIcon, mInfo);
+                mSettingIconDrawable = null;
             } else if (isReadyForClickSetup()) {
                 mCenterDrawable = drawableFactory.newIcon(mIcon, mInfo);
                 mSettingIconDrawable = getResources().getDrawable(R.drawable.ic_setting).mutate();
 
                 updateSettingColor();
             } else {
-                mCenterDrawable = DrawableFactory.get(getContext())
-                        .newPendingIcon(mIcon, getContext());
+                FastBitmapDrawable pendingIcon =
+                        drawableFactory.newPendingIcon(mIcon, getContext());
+                pendingIcon.setIconColor(mIconColor);
+                mCenterDrawable = pendingIcon;
                 mCenterDrawable.setCallback(this);
                 mSettingIconDrawable = null;
                 applyState();
@@ -162,7 +185,7 @@ public class PendingAppWidgetHostView extends LauncherAppWidgetHostView
     }
 
     private void updateSettingColor() {
-        int color = Utilities.findDominantColorByHue(mIcon, 20);
+        int color = mIconColor != 0 ? mIconColor : Utilities.findDominantColorByHue(mIcon, 20);
         // Make the dominant color bright.
         float[] hsv = new float[3];
         Color.colorToHSV(color, hsv);
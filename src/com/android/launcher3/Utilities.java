@@ -311,6 +311,20 @@ public final class Utilities {
             sampleStride = 1;
         }
 
+        // Read the sampled pixels once, a row at a time, rather than one getPixel call per
+        // sample and pass.
+        int[] row = new int[width];
+        int columns = (width + sampleStride - 1) / sampleStride;
+        int rows = (height + sampleStride - 1) / sampleStride;
+        int[] pixels = new int[columns * rows];
+        int count = 0;
+        for (int y = 0; y < height; y += sampleStride) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x += sampleStride) {
+                pixels[count++] = row[x];
+            }
+        }
+
         // This is an out-param, for getting the hsv values for an rgb
         float[] hsv = new float[3];
 
@@ -320,29 +334,27 @@ public final class Utilities {
         float highScore = -1;
         int bestHue = -1;
 
-        for (int y = 0; y < height; y += sampleStride) {
-            for (int x = 0; x < width; x += sampleStride) {
-                int argb = bitmap.getPixel(x, y);
-                int alpha = 0xFF & (argb >> 24);
-                if (alpha < 0x80) {
-                    // Drop mostly-transparent pixels.
-                    continue;
-                }
-                // Remove the alpha channel.
-                int rgb = argb | 0xFF000000;
-                Color.colorToHSV(rgb, hsv);
-                // Bucket colors by the 360 integer hues.
-                int hue = (int) hsv[0];
-                if (hue < 0 || hue >= hueScoreHistogram.length) {
-                    // Defensively avoid array bounds violations.
-                    continue;
-                }
-                float score = hsv[1] * hsv[2];
-                hueScoreHistogram[hue] += score;
-                if (hueScoreHistogram[hue] > highScore) {
-                    highScore = hueScoreHistogram[hue];
-                    bestHue = hue;
-                }
+        for (int i = 0; i < count; i++) {
+            int argb = pixels[i];
+            int alpha = 0xFF & (argb >> 24);
+            if (alpha < 0x80) {
+                // Drop mostly-transparent pixels.
+                continue;
+            }
+            // Remove the alpha channel.
+            int rgb = argb | 0xFF000000;
+            Color.colorToHSV(rgb, hsv);
+            // Bucket colors by the 360 integer hues.
+            int hue = (int) hsv[0];
+            if (hue < 0 || hue >= hueScoreHistogram.length) {
+                // Defensively avoid array bounds violations.
+                continue;
+            }
+            float score = hsv[1] * hsv[2];
+            hueScoreHistogram[hue] += score;
+            if (hueScoreHistogram[hue] > highScore) {
+                highScore = hueScoreHistogram[hue];
+                bestHue = hue;
             }
         }
 
@@ -352,25 +364,23 @@ public final class Utilities {
         // Go back over the RGB colors that match the winning hue,
         // creating a histogram of weighted s*v scores, for up to 100*100 [s,v] buckets.
         // The highest-scoring RGB color wins.
-        for (int y = 0; y < height; y += sampleStride) {
-            for (int x = 0; x < width; x += sampleStride) {
-                int rgb = bitmap.getPixel(x, y) | 0xff000000;
-                Color.colorToHSV(rgb, hsv);
-                int hue = (int) hsv[0];
-                if (hue == bestHue) {
-                    float s = hsv[1];
-                    float v = hsv[2];
-                    int bucket = (int) (s * 100) + (int) (v * 10000);
-                    // Score by cumulative saturation * value.
-                    float score = s * v;
-                    Float oldTotal = rgbScores.get(bucket);
-                    float newTotal = oldTotal == null ? score : oldTotal + score;
-                    rgbScores.put(bucket, newTotal);
-                    if (newTotal > highScore) {
-                        highScore = newTotal;
-                        // All the colors in the winning bucket are very similar. Last in wins.
-                        bestColor = rgb;
-                    }
+        for (int i = 0; i < count; i++) {
+            int rgb = pixels[i] | 0xff000000;
+            Color.colorToHSV(rgb, hsv);
+            int hue = (int) hsv[0];
+            if (hue == bestHue) {
+                float s = hsv[1];
+                float v = hsv[2];
+                int bucket = (int) (s * 100) + (int) (v * 10000);
+                // Score by cumulative saturation * value.
+                float score = s * v;
+                Float oldTotal = rgbScores.get(bucket);
+                float newTotal = oldTotal == null ? score : oldTotal + score;
+                rgbScores.put(bucket, newTotal);
+                if (newTotal > highScore) {
+                    highScore = newTotal;
+                    // All the colors in the winning bucket are very similar. Last in wins.
+                    bestColor = rgb;
                 }
             }
         }
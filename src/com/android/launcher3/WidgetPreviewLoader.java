@@ -12,7 +12,6 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -29,10 +28,13 @@ import android.os.UserHandle;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import android.util.LongSparseArray;
+import android.util.LruCache;
 
 import com.android.launcher3.compat.AppWidgetManagerCompat;
 import com.android.launcher3.compat.ShortcutConfigActivityInfo;
 import com.android.launcher3.compat.UserManagerCompat;
+import com.android.launcher3.graphics.BitmapPool;
+import com.android.launcher3.graphics.CacheBlobCodec;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.graphics.ShadowGenerator;
 import com.android.launcher3.model.WidgetItem;
@@ -44,11 +46,8 @@ import com.android.launcher3.util.Thunk;
 import com.android.launcher3.widget.WidgetCell;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
@@ -60,62 +59,118 @@ public class WidgetPreviewLoader {
     private final HashMap<String, long[]> mPackageVersions = new HashMap<>();
 
     /**
-     * Weak reference objects, do not prevent their referents from being made finalizable,
-     * finalized, and then reclaimed.
-     * Note: synchronized block used for this variable is expensive and the block should always
-     * be posted to a background thread.
+     * Recently loaded previews, bounded by their size in bytes. Bitmaps in this cache can be
+     * shown by several cells at once, so they are never released to the {@link BitmapPool}.
      */
-    @Thunk final Set<Bitmap> mUnusedBitmaps =
-            Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+    @Thunk final LruCache<WidgetCacheKey, Bitmap> mMemoryCache;
+
+    /**
+     * Tasks currently loading a preview, so that concurrent requests for the same preview share
+     * a single load. Only accessed on the UI thread.
+     */
+    @Thunk final HashMap<WidgetCacheKey, PreviewLoadTask> mLoadingTasks = new HashMap<>();
 
     private final Context mContext;
     private final IconCache mIconCache;
     private final UserManagerCompat mUserManager;
     private final AppWidgetManagerCompat mWidgetManager;
     private final CacheDb mDb;
+    // Size of the previews stored in the DB, from which the requested sizes are derived
+    private final int mCanonicalSize;
 
     private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
     @Thunk final Handler mWorkerHandler;
 
-    public WidgetPreviewLoader(Context context, IconCache iconCache) {
+    public WidgetPreviewLoader(Context context, IconCache iconCache,
+            InvariantDeviceProfile idp) {
         mContext = context;
         mIconCache = iconCache;
         mWidgetManager = AppWidgetManagerCompat.getInstance(context);
         mUserManager = UserManagerCompat.getInstance(context);
         mDb = new CacheDb(context);
+        mCanonicalSize = Math.max(WidgetCell.getPresetPreviewSize(idp.landscapeProfile),
+                WidgetCell.getPresetPreviewSize(idp.portraitProfile));
         mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
+        mMemoryCache = new LruCache<WidgetCacheKey, Bitmap>(
+                (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE)) {
+            @Override
+            protected int sizeOf(WidgetCacheKey key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
     }
 
     /**
-     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}. Must be
-     * called on UI thread
+     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}, unless it is
+     * already in the memory cache, in which case it is applied immediately. Must be called on
+     * UI thread
      *
      * @return a request id which can be used to cancel the request.
      */
     public CancellationSignal getPreview(WidgetItem item, int previewWidth,
             int previewHeight, WidgetCell caller, boolean animate) {
-        String size = previewWidth + "x" + previewHeight;
-        WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user, size);
+        WidgetCacheKey key = getCacheKey(item, previewWidth, previewHeight);
+        CancellationSignal signal = new CancellationSignal();
 
-        PreviewLoadTask task = new PreviewLoadTask(key, item, previewWidth, previewHeight, caller,
-                animate);
-        task.executeOnExecutor(Utilities.THREAD_POOL_EXECUTOR);
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            caller.applyPreview(cached, animate);
+            return signal;
+        }
 
-        CancellationSignal signal = new CancellationSignal();
-        signal.setOnCancelListener(task);
+        PreviewLoadTask task = mLoadingTasks.get(key);
+        if (task == null || task.isCancelled()) {
+            task = startLoading(key, item, previewWidth, previewHeight,
+                    BaseActivity.fromContext(caller.getContext()));
+        }
+        PreviewRequest request = new PreviewRequest(task, caller, animate);
+        task.mRequests.add(request);
+        signal.setOnCancelListener(request);
         return signal;
     }
 
     /**
-     * The DB holds the generated previews for various components. Previews can also have different
-     * sizes (landscape vs portrait).
+     * Loads the widget preview into the memory cache ahead of it being requested, eg. for rows
+     * which are about to be scrolled into view. Must be called on UI thread
+     */
+    public void prefetchPreview(BaseActivity activity, WidgetItem item, int previewWidth,
+            int previewHeight) {
+        WidgetCacheKey key = getCacheKey(item, previewWidth, previewHeight);
+        PreviewLoadTask task = mLoadingTasks.get(key);
+        if (mMemoryCache.get(key) == null && (task == null || task.isCancelled())) {
+            startLoading(key, item, previewWidth, previewHeight, activity);
+        }
+    }
+
+    private PreviewLoadTask startLoading(WidgetCacheKey key, WidgetItem item, int previewWidth,
+            int previewHeight, BaseActivity activity) {
+        PreviewLoadTask task = new PreviewLoadTask(key, item, previewWidth, previewHeight,
+                activity);
+        mLoadingTasks.put(key, task);
+        task.executeOnExecutor(Utilities.THREAD_POOL_EXECUTOR);
+        return task;
+    }
+
+    private static WidgetCacheKey getCacheKey(WidgetItem item, int previewWidth,
+            int previewHeight) {
+        return new WidgetCacheKey(item.componentName, item.user,
+                previewWidth + "x" + previewHeight);
+    }
+
+    /**
+     * The DB holds the generated previews for various components, at a single canonical size.
+     * Previews for the sizes requested by the UI (landscape vs portrait, tray vs bottom sheet)
+     * are derived from it.
      */
     private static class CacheDb extends SQLiteCacheHelper {
-        private static final int DB_VERSION = 9;
+        private static final int DB_VERSION = 10;
+        // Last version which stored one preview per requested size
+        private static final int DB_VERSION_SIZED_PREVIEWS = 9;
 
         private static final String TABLE_NAME = "shortcut_and_widget_previews";
         private static final String COLUMN_COMPONENT = "componentName";
         private static final String COLUMN_USER = "profileId";
+        // Only present in DB_VERSION_SIZED_PREVIEWS
         private static final String COLUMN_SIZE = "size";
         private static final String COLUMN_PACKAGE = "packageName";
         private static final String COLUMN_LAST_UPDATED = "lastUpdated";
@@ -131,25 +186,49 @@ public class WidgetPreviewLoader {
             database.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
                     COLUMN_COMPONENT + " TEXT NOT NULL, " +
                     COLUMN_USER + " INTEGER NOT NULL, " +
-                    COLUMN_SIZE + " TEXT NOT NULL, " +
                     COLUMN_PACKAGE + " TEXT NOT NULL, " +
                     COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, " +
                     COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0, " +
                     COLUMN_PREVIEW_BITMAP + " BLOB, " +
-                    "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ", " + COLUMN_SIZE + ") " +
+                    "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") " +
                     ");");
         }
+
+        @Override
+        protected boolean onUpgradeTable(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion != DB_VERSION_SIZED_PREVIEWS || newVersion != DB_VERSION) {
+                return false;
+            }
+            // Keep the widest preview of every component. It keeps its original resolution until
+            // the package is updated and the preview is regenerated.
+            String oldTable = TABLE_NAME + "_sized";
+            String columns = COLUMN_COMPONENT + ", " + COLUMN_USER + ", " + COLUMN_PACKAGE + ", "
+                    + COLUMN_LAST_UPDATED + ", " + COLUMN_VERSION + ", " + COLUMN_PREVIEW_BITMAP;
+            // The upgrade already runs in a transaction.
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_NAME + " RENAME TO " + oldTable);
+                onCreateTable(db);
+                db.execSQL("INSERT OR IGNORE INTO " + TABLE_NAME + " (" + columns + ") SELECT "
+                        + columns + " FROM " + oldTable
+                        + " ORDER BY CAST(" + COLUMN_SIZE + " AS INTEGER) DESC");
+                db.execSQL("DROP TABLE " + oldTable);
+                return true;
+            } catch (SQLException e) {
+                Log.e(TAG, "Error migrating widget previews", e);
+                db.execSQL("DROP TABLE IF EXISTS " + oldTable);
+                return false;
+            }
+        }
     }
 
     @Thunk void writeToDb(WidgetCacheKey key, long[] versions, Bitmap preview) {
         ContentValues values = new ContentValues();
         values.put(CacheDb.COLUMN_COMPONENT, key.componentName.flattenToShortString());
         values.put(CacheDb.COLUMN_USER, mUserManager.getSerialNumberForUser(key.user));
-        values.put(CacheDb.COLUMN_SIZE, key.size);
         values.put(CacheDb.COLUMN_PACKAGE, key.componentName.getPackageName());
         values.put(CacheDb.COLUMN_VERSION, versions[0]);
         values.put(CacheDb.COLUMN_LAST_UPDATED, versions[1]);
-        values.put(CacheDb.COLUMN_PREVIEW_BITMAP, Utilities.flattenBitmap(preview));
+        values.put(CacheDb.COLUMN_PREVIEW_BITMAP, CacheBlobCodec.getDefault().encode(preview));
         mDb.insertOrReplace(values);
     }
 
@@ -161,6 +240,11 @@ public class WidgetPreviewLoader {
         synchronized(mPackageVersions) {
             mPackageVersions.remove(packageName);
         }
+        for (WidgetCacheKey key : mMemoryCache.snapshot().keySet()) {
+            if (key.componentName.getPackageName().equals(packageName) && key.user.equals(user)) {
+                mMemoryCache.remove(key);
+            }
+        }
 
         mDb.delete(
                 CacheDb.COLUMN_PACKAGE + " = ? AND " + CacheDb.COLUMN_USER + " = ?",
@@ -248,19 +332,17 @@ public class WidgetPreviewLoader {
     }
 
     /**
-     * Reads the preview bitmap from the DB or null if the preview is not in the DB.
+     * Reads the canonical preview bitmap from the DB or null if the preview is not in the DB.
      */
-    @Thunk Bitmap readFromDb(WidgetCacheKey key, Bitmap recycle, PreviewLoadTask loadTask) {
+    @Thunk Bitmap readFromDb(WidgetCacheKey key, PreviewLoadTask loadTask) {
         Cursor cursor = null;
         try {
             cursor = mDb.query(
                     new String[]{CacheDb.COLUMN_PREVIEW_BITMAP},
-                    CacheDb.COLUMN_COMPONENT + " = ? AND " + CacheDb.COLUMN_USER + " = ? AND "
-                            + CacheDb.COLUMN_SIZE + " = ?",
+                    CacheDb.COLUMN_COMPONENT + " = ? AND " + CacheDb.COLUMN_USER + " = ?",
                     new String[]{
                             key.componentName.flattenToShortString(),
-                            Long.toString(mUserManager.getSerialNumberForUser(key.user)),
-                            key.size
+                            Long.toString(mUserManager.getSerialNumberForUser(key.user))
                     });
             // If cancelled, skip getting the blob and decoding it into a bitmap
             if (loadTask.isCancelled()) {
@@ -268,11 +350,9 @@ public class WidgetPreviewLoader {
             }
             if (cursor.moveToNext()) {
                 byte[] blob = cursor.getBlob(0);
-                BitmapFactory.Options opts = new BitmapFactory.Options();
-                opts.inBitmap = recycle;
                 try {
                     if (!loadTask.isCancelled()) {
-                        return BitmapFactory.decodeByteArray(blob, 0, blob.length, opts);
+                        return CacheBlobCodec.decode(blob, null);
                     }
                 } catch (Exception e) {
                     return null;
@@ -288,6 +368,30 @@ public class WidgetPreviewLoader {
         return null;
     }
 
+    /**
+     * Scales the canonical preview down to the requested size, the same way
+     * {@link #generateWidgetPreview} fits a preview into a smaller bitmap.
+     */
+    private Bitmap derivePreview(WidgetItem item, Bitmap canonical,
+            int previewWidth, int previewHeight) {
+        if (item.widgetInfo == null) {
+            // Shortcut previews do not depend on the requested size
+            return canonical;
+        }
+        float scale = Math.min(1f, previewWidth / (float) canonical.getWidth());
+        int width = Math.max((int) (scale * canonical.getWidth()), 1);
+        int height = Math.max((int) (scale * canonical.getHeight()), 1);
+
+        Bitmap preview = BitmapPool.getInstance().acquire(
+                previewWidth, Math.min(previewHeight, height), Config.ARGB_8888);
+        Canvas c = new Canvas(preview);
+        int x = (preview.getWidth() - width) / 2;
+        c.drawBitmap(canonical, null, new Rect(x, 0, x + width, height),
+                new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG));
+        c.setBitmap(null);
+        return preview;
+    }
+
     private Bitmap generatePreview(BaseActivity launcher, WidgetItem item, Bitmap recycle,
             int previewWidth, int previewHeight) {
         if (item.widgetInfo != null) {
@@ -367,7 +471,7 @@ public class WidgetPreviewLoader {
         // If a bitmap is passed in, we use it; otherwise, we create a bitmap of the right size
         final Canvas c = new Canvas();
         if (preview == null) {
-            preview = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
+            preview = BitmapPool.getInstance().acquire(previewWidth, previewHeight, Config.ARGB_8888);
             c.setBitmap(preview);
         } else {
             // We use the preview bitmap height to determine where the badge will be drawn in the
@@ -520,27 +624,22 @@ public class WidgetPreviewLoader {
         }
     }
 
-    public class PreviewLoadTask extends AsyncTask<Void, Void, Bitmap>
-            implements CancellationSignal.OnCancelListener {
+    public class PreviewLoadTask extends AsyncTask<Void, Void, Bitmap> {
         @Thunk final WidgetCacheKey mKey;
         private final WidgetItem mInfo;
         private final int mPreviewHeight;
         private final int mPreviewWidth;
-        private final WidgetCell mCaller;
-        private final boolean mAnimatePreviewIn;
         private final BaseActivity mActivity;
-        @Thunk long[] mVersions;
-        @Thunk Bitmap mBitmapToRecycle;
+        // Cells waiting for this preview. Empty for prefetches. Only accessed on the UI thread.
+        @Thunk final ArrayList<PreviewRequest> mRequests = new ArrayList<>();
 
         PreviewLoadTask(WidgetCacheKey key, WidgetItem info, int previewWidth,
-                int previewHeight, WidgetCell caller, boolean animate) {
+                int previewHeight, BaseActivity activity) {
             mKey = key;
             mInfo = info;
             mPreviewHeight = previewHeight;
             mPreviewWidth = previewWidth;
-            mCaller = caller;
-            mAnimatePreviewIn = animate;
-            mActivity = BaseActivity.fromContext(mCaller.getContext());
+            mActivity = activity;
             if (DEBUG) {
                 Log.d(TAG, String.format("%s, %s, %d, %d",
                         mKey, mInfo, mPreviewHeight, mPreviewWidth));
@@ -549,116 +648,112 @@ public class WidgetPreviewLoader {
 
         @Override
         protected Bitmap doInBackground(Void... params) {
-            Bitmap unusedBitmap = null;
-
             // If already cancelled before this gets to run in the background, then return early
             if (isCancelled()) {
                 return null;
             }
-            synchronized (mUnusedBitmaps) {
-                // Check if we can re-use a bitmap
-                for (Bitmap candidate : mUnusedBitmaps) {
-                    if (candidate != null && candidate.isMutable() &&
-                            candidate.getWidth() == mPreviewWidth &&
-                            candidate.getHeight() == mPreviewHeight) {
-                        unusedBitmap = candidate;
-                        mUnusedBitmaps.remove(unusedBitmap);
-                        break;
-                    }
-                }
+            if (mPreviewWidth > mCanonicalSize || mPreviewHeight > mCanonicalSize) {
+                // Can not be derived without upscaling, generate it directly without storing it
+                return generatePreview(mActivity, mInfo, BitmapPool.getInstance().acquire(
+                        mPreviewWidth, mPreviewHeight, Config.ARGB_8888),
+                        mPreviewWidth, mPreviewHeight);
             }
 
-            // creating a bitmap is expensive. Do not do this inside synchronized block.
-            if (unusedBitmap == null) {
-                unusedBitmap = Bitmap.createBitmap(mPreviewWidth, mPreviewHeight, Config.ARGB_8888);
-            }
-            // If cancelled now, don't bother reading the preview from the DB
+            BitmapPool pool = BitmapPool.getInstance();
+            Bitmap canonical = readFromDb(mKey, this);
+            // Only consider generating the preview if we have not cancelled the task already
             if (isCancelled()) {
-                return unusedBitmap;
+                pool.release(canonical);
+                return null;
             }
-            Bitmap preview = readFromDb(mKey, unusedBitmap, this);
-            // Only consider generating the preview if we have not cancelled the task already
-            if (!isCancelled() && preview == null) {
+            // A canonical preview being written to the DB must not be reused.
+            boolean writing = false;
+            if (canonical == null) {
                 // Fetch the version info before we generate the preview, so that, in-case the
                 // app was updated while we are generating the preview, we use the old version info,
                 // which would gets re-written next time.
                 boolean persistable = mInfo.activityInfo == null
                         || mInfo.activityInfo.isPersistable();
-                mVersions = persistable ? getPackageVersion(mKey.componentName.getPackageName())
-                        : null;
+                final long[] versions = persistable
+                        ? getPackageVersion(mKey.componentName.getPackageName()) : null;
 
                 // it's not in the db... we need to generate it
-                preview = generatePreview(mActivity, mInfo, unusedBitmap, mPreviewWidth, mPreviewHeight);
+                final Bitmap generated = canonical = generatePreview(
+                        mActivity, mInfo, null, mCanonicalSize, mCanonicalSize);
+
+                // Write the canonical preview to the DB in the worker thread, even if this request
+                // gets cancelled, as it is never modified.
+                if (versions != null) {
+                    writing = true;
+                    mWorkerHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            writeToDb(mKey, versions, generated);
+                        }
+                    });
+                }
+            }
+            if (isCancelled()) {
+                if (!writing) {
+                    pool.release(canonical);
+                }
+                return null;
+            }
+            Bitmap preview = derivePreview(mInfo, canonical, mPreviewWidth, mPreviewHeight);
+            if (preview != canonical && !writing) {
+                pool.release(canonical);
             }
             return preview;
         }
 
         @Override
         protected void onPostExecute(final Bitmap preview) {
-            mCaller.applyPreview(preview, mAnimatePreviewIn);
-
-            // Write the generated preview to the DB in the worker thread
-            if (mVersions != null) {
-                mWorkerHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (!isCancelled()) {
-                            // If we are still using this preview, then write it to the DB and then
-                            // let the normal clear mechanism recycle the bitmap
-                            writeToDb(mKey, mVersions, preview);
-                            mBitmapToRecycle = preview;
-                        } else {
-                            // If we've already cancelled, then skip writing the bitmap to the DB
-                            // and manually add the bitmap back to the recycled set
-                            synchronized (mUnusedBitmaps) {
-                                mUnusedBitmaps.add(preview);
-                            }
-                        }
-                    }
-                });
-            } else {
-                // If we don't need to write to disk, then ensure the preview gets recycled by
-                // the normal clear mechanism
-                mBitmapToRecycle = preview;
+            if (mLoadingTasks.get(mKey) == this) {
+                mLoadingTasks.remove(mKey);
+            }
+            if (preview == null) {
+                return;
+            }
+            mMemoryCache.put(mKey, preview);
+            for (PreviewRequest request : mRequests) {
+                request.mCaller.applyPreview(preview, request.mAnimate);
             }
+            mRequests.clear();
         }
 
         @Override
         protected void onCancelled(final Bitmap preview) {
-            // If we've cancelled while the task is running, then can return the bitmap to the
-            // recycled set immediately. Otherwise, it will be recycled after the preview is written
-            // to disk.
-            if (preview != null) {
-                mWorkerHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(preview);
-                        }
-                    }
-                });
+            if (mLoadingTasks.get(mKey) == this) {
+                mLoadingTasks.remove(mKey);
+            }
+            // The preview was never shown, so it can be returned to the pool immediately.
+            // Shortcut previews are the canonical bitmap itself, which may be written to the DB.
+            if (preview != null && mInfo.widgetInfo != null) {
+                BitmapPool.getInstance().release(preview);
             }
         }
+    }
+
+    /**
+     * A cell waiting for the result of a {@link PreviewLoadTask}.
+     */
+    private static class PreviewRequest implements CancellationSignal.OnCancelListener {
+        private final PreviewLoadTask mTask;
+        @Thunk final WidgetCell mCaller;
+        @Thunk final boolean mAnimate;
+
+        PreviewRequest(PreviewLoadTask task, WidgetCell caller, boolean animate) {
+            mTask = task;
+            mCaller = caller;
+            mAnimate = animate;
+        }
 
         @Override
         public void onCancel() {
-            cancel(true);
-
-            // This only handles the case where the PreviewLoadTask is cancelled after the task has
-            // successfully completed (including having written to disk when necessary).  In the
-            // other cases where it is cancelled while the task is running, it will be cleaned up
-            // in the tasks's onCancelled() call, and if cancelled while the task is writing to
-            // disk, it will be cancelled in the task's onPostExecute() call.
-            if (mBitmapToRecycle != null) {
-                mWorkerHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(mBitmapToRecycle);
-                        }
-                        mBitmapToRecycle = null;
-                    }
-                });
+            // Only stop loading if no other cell is waiting for the same preview. A task which
+            // has already completed is unaffected, its result stays in the memory cache.
+            if (mTask.mRequests.remove(this) && mTask.mRequests.isEmpty()) {
+                mTask.cancel(true);
             }
         }
     }
@@ -101,7 +101,7 @@ import java.util.Set;
 public class Workspace extends PagedView
         implements DropTarget, DragSource, View.OnTouchListener,
         DragController.DragListener, ViewGroup.OnHierarchyChangeListener,
-        Insettable, DropTargetSource {
+        Insettable, DropTargetSource, DragPreviewProvider.DragOutlineListener {
     private static final String TAG = "Launcher.Workspace";
 
     /** The value that {@link #mTransitionProgress} must be greater than for
@@ -119,6 +119,9 @@ public class Workspace extends PagedView
 
     private static final int ADJACENT_SCREEN_DROP_DURATION = 300;
 
+    // Widgets are inflated on pages at most this many pages away from the current page
+    private static final int WIDGET_INFLATION_DISTANCE = 1;
+
     private static final boolean MAP_NO_RECURSE = false;
     private static final boolean MAP_RECURSE = true;
 
@@ -429,7 +432,7 @@ public class Workspace extends PagedView
 
         if (mOutlineProvider != null) {
             // The outline is used to visualize where the item will land if dropped
-            mOutlineProvider.generateDragOutline(mCanvas);
+            mOutlineProvider.generateDragOutline(mCanvas, this);
         }
 
         updateChildrenLayersEnabled(false);
@@ -497,6 +500,9 @@ public class Workspace extends PagedView
         mDragInfo = null;
         mDragSourceInternal = null;
         mLauncher.onInteractionEnd();
+
+        // Pages may have changed during the drag
+        updateDeferredWidgets();
     }
 
     /**
@@ -1224,6 +1230,52 @@ public class Workspace extends PagedView
         }
     }
 
+    /**
+     * Returns whether the widgets on {@param screenId} should be inflated, instead of bound as
+     * placeholders, given the current page.
+     */
+    public boolean shouldInflateWidgetsOnScreen(long screenId) {
+        int page = getPageIndexForScreenId(screenId);
+        return page < 0 || Math.abs(page - getNextPage()) <= WIDGET_INFLATION_DISTANCE;
+    }
+
+    /**
+     * Inflates the deferred widgets on the pages close to the current page. Widgets which are
+     * already inflated are kept, as the widget host keeps a reference to their views and sends
+     * them updates until they are rebound.
+     */
+    public void updateDeferredWidgets() {
+        if (!FeatureFlags.LAUNCHER3_LAZY_WIDGETS || mLauncher.isWorkspaceLoading()
+                || mDragController.isDragging()) {
+            return;
+        }
+        int currentPage = getNextPage();
+        ArrayList<View> widgets = new ArrayList<>();
+        final int clCount = getChildCount();
+        for (int i = 0; i < clCount; i++) {
+            if (Math.abs(i - currentPage) > WIDGET_INFLATION_DISTANCE) {
+                continue;
+            }
+            ShortcutAndWidgetContainer swc = ((CellLayout) getChildAt(i)).getShortcutsAndWidgets();
+            final int itemCount = swc.getChildCount();
+            for (int j = 0; j < itemCount; j++) {
+                View v = swc.getChildAt(j);
+                if (v.getTag() instanceof LauncherAppWidgetInfo
+                        && v instanceof PendingAppWidgetHostView
+                        && ((PendingAppWidgetHostView) v).isDeferred()) {
+                    widgets.add(v);
+                }
+            }
+        }
+
+        // Rebinding the widget inflates it, as its page is close to the current page
+        for (View v : widgets) {
+            LauncherAppWidgetInfo info = (LauncherAppWidgetInfo) v.getTag();
+            mLauncher.removeItem(v, info, false  /* deleteFromDb */);
+            mLauncher.bindAppWidget(info);
+        }
+    }
+
     @Override
     protected void determineScrollingStart(MotionEvent ev) {
         if (!isFinishedSwitchingState()) return;
@@ -1307,6 +1359,7 @@ public class Workspace extends PagedView
             stripEmptyScreens();
             mStripScreensOnPageStopMoving = false;
         }
+        updateDeferredWidgets();
     }
 
     protected void onScrollInteractionBegin() {
@@ -1868,6 +1921,13 @@ public class Workspace extends PagedView
         mOutlineProvider = outlineProvider;
     }
 
+    @Override
+    public void onDragOutlineUpdated(Bitmap placeholder, Bitmap outline) {
+        for (CellLayout layout : getWorkspaceAndHotseatCellLayouts()) {
+            layout.replaceDragOutline(placeholder, outline);
+        }
+    }
+
     public void exitWidgetResizeMode() {
         DragLayer dragLayer = mLauncher.getDragLayer();
         dragLayer.clearResizeFrame();
@@ -3786,6 +3846,9 @@ public class Workspace extends PagedView
                     if (child instanceof DropTarget) {
                         mDragController.removeDropTarget((DropTarget) child);
                     }
+                    if (mDragInfo == null || mDragInfo.cell != child) {
+                        mLauncher.getIconViewPool().recycle(R.layout.app_icon, child);
+                    }
                 } else if (itemToRemove.container >= 0) {
                     // The item may belong to a folder.
                     View parent = idToViewMap.get(itemToRemove.container);
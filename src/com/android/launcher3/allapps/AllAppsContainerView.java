@@ -77,6 +77,7 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
     private int mNumPredictedAppsPerRow;
 
     private SpringAnimationHandler mSpringAnimationHandler;
+    private AllAppsWarmUp mWarmUp;
 
     public AllAppsContainerView(Context context) {
         this(context, null);
@@ -128,6 +129,21 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
         mApps.setApps(apps);
     }
 
+    /**
+     * Prepares the list for its first opening over the next frames. Must be called once the
+     * workspace and the apps are bound.
+     */
+    public void warmUp() {
+        mWarmUp.start(mNumAppsPerRow);
+    }
+
+    /**
+     * Called when the list starts opening.
+     */
+    public void onOpenStarted() {
+        mWarmUp.onOpenStarted();
+    }
+
     /**
      * Adds or updates existing apps in the list
      */
@@ -227,6 +243,7 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
         FocusedItemDecorator focusedItemDecorator = new FocusedItemDecorator(mAppsRecyclerView);
         mAppsRecyclerView.addItemDecoration(focusedItemDecorator);
         mAppsRecyclerView.preMeasureViews(mAdapter);
+        mWarmUp = new AllAppsWarmUp(mLauncher, mAppsRecyclerView, mAdapter, mApps);
         mAdapter.setIconFocusListener(focusedItemDecorator.getFocusListener());
 
         getRevealView().setVisibility(View.VISIBLE);
@@ -65,6 +65,8 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
     private SwipeDetector mPullDetector;
 
     private float mContentTranslationY = 0;
+    // Run after the next time the list is drawn
+    private Runnable mOnNextDraw;
     public static final Property<AllAppsRecyclerView, Float> CONTENT_TRANS_Y =
             new Property<AllAppsRecyclerView, Float>(Float.class, "appsRecyclerViewContentTransY") {
                 @Override
@@ -212,6 +214,20 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
         canvas.translate(0, mContentTranslationY);
         super.dispatchDraw(canvas);
         canvas.translate(0, -mContentTranslationY);
+
+        if (mOnNextDraw != null) {
+            Runnable onNextDraw = mOnNextDraw;
+            mOnNextDraw = null;
+            onNextDraw.run();
+        }
+    }
+
+    /**
+     * Runs {@param r} after the next time the list is drawn, replacing the previous runnable.
+     */
+    void runOnNextDraw(Runnable r) {
+        mOnNextDraw = r;
+        invalidate();
     }
 
     public float getContentTranslationY() {
@@ -271,6 +271,7 @@ public class AllAppsTransitionController implements TouchController, SwipeDetect
             if (!mLauncher.isAllAppsVisible()) {
                 mLauncher.tryAndUpdatePredictedApps();
                 mAppsView.setVisibility(View.VISIBLE);
+                mAppsView.onOpenStarted();
                 if (!FeatureFlags.LAUNCHER3_GRADIENT_ALL_APPS) {
                     mAppsView.setRevealDrawableColor(mHotseatBackgroundColor);
                 }
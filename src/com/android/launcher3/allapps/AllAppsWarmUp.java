@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.allapps;
+
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.DeviceProfile;
+import com.android.launcher3.IconCache;
+import com.android.launcher3.ItemInfoWithIcon;
+import com.android.launcher3.Launcher;
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.allapps.AlphabeticalAppsList.AdapterItem;
+import com.android.launcher3.util.FrameBudgetScheduler;
+
+import java.util.List;
+
+/**
+ * Prepares the all apps list in the frames following the workspace bind, so that opening it the
+ * first time has less work to do: the view holders needed when the list is first scrolled are
+ * created in the recycled view pool, and the high resolution icons of the first screens of apps
+ * are loaded. With DEBUG set, also logs how long each opening takes to draw, and whether the list
+ * was warm.
+ *
+ * All the methods must be called on the main thread.
+ */
+class AllAppsWarmUp implements IconCache.ItemInfoUpdateReceiver {
+
+    private static final String TAG = "AllAppsWarmUp";
+    private static final boolean DEBUG = false;
+
+    // Rows of icons prepared below the first screen
+    private static final int WARM_UP_ROWS = 2;
+
+    private static final int PHASE_VIEW_HOLDERS = 0;
+    private static final int PHASE_HIGH_RES_ICONS = 1;
+
+    private static final int STATE_COLD = 0;
+    private static final int STATE_WARMING = 1;
+    private static final int STATE_WARM = 2;
+
+    private final Launcher mLauncher;
+    private final AllAppsRecyclerView mRecyclerView;
+    private final AllAppsGridAdapter mAdapter;
+    private final AlphabeticalAppsList mApps;
+
+    private FrameBudgetScheduler mScheduler;
+    private int mState = STATE_COLD;
+    private boolean mOpenedBefore;
+
+    AllAppsWarmUp(Launcher launcher, AllAppsRecyclerView recyclerView, AllAppsGridAdapter adapter,
+            AlphabeticalAppsList apps) {
+        mLauncher = launcher;
+        mRecyclerView = recyclerView;
+        mAdapter = adapter;
+        mApps = apps;
+    }
+
+    /**
+     * Starts warming up the list if it has apps and was never warmed up nor opened.
+     */
+    void start(int numAppsPerRow) {
+        if (mState != STATE_COLD || mOpenedBefore || numAppsPerRow <= 0
+                || mApps.getAdapterItems().isEmpty()) {
+            return;
+        }
+        mState = STATE_WARMING;
+        mScheduler = new FrameBudgetScheduler("view holders", "high res icons");
+
+        // Create the holders of the rows which come into view when the list is first scrolled,
+        // and of the predictions if they are not shown yet
+        for (int i = 0; i < WARM_UP_ROWS * numAppsPerRow; i++) {
+            mScheduler.add(newCreateViewHolderTask(AllAppsGridAdapter.VIEW_TYPE_ICON),
+                    PHASE_VIEW_HOLDERS);
+        }
+        if (!hasPredictions()) {
+            for (int i = 0; i < numAppsPerRow; i++) {
+                mScheduler.add(newCreateViewHolderTask(
+                        AllAppsGridAdapter.VIEW_TYPE_PREDICTION_ICON), PHASE_VIEW_HOLDERS);
+            }
+        }
+
+        DeviceProfile grid = mLauncher.getDeviceProfile();
+        int screenRows = grid.allAppsCellHeightPx > 0
+                ? (int) Math.ceil((float) grid.availableHeightPx / grid.allAppsCellHeightPx) : 0;
+        final int iconCount = (screenRows + WARM_UP_ROWS) * numAppsPerRow;
+        mScheduler.add(new Runnable() {
+            @Override
+            public void run() {
+                loadHighResIcons(iconCount);
+            }
+        }, PHASE_HIGH_RES_ICONS);
+
+        mScheduler.start(new Runnable() {
+            @Override
+            public void run() {
+                mState = STATE_WARM;
+                mScheduler = null;
+            }
+        });
+    }
+
+    private Runnable newCreateViewHolderTask(final int viewType) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView.ViewHolder holder = mAdapter.createViewHolder(mRecyclerView, viewType);
+                mRecyclerView.getRecycledViewPool().putRecycledView(holder);
+            }
+        };
+    }
+
+    private boolean hasPredictions() {
+        for (AdapterItem item : mApps.getAdapterItems()) {
+            if (item.viewType == AllAppsGridAdapter.VIEW_TYPE_PREDICTION_ICON) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads the high resolution icons of the first {@param count} apps, including the
+     * predictions, which are not bound to a view. The bound views load their own icons.
+     */
+    private void loadHighResIcons(int count) {
+        IconCache iconCache = LauncherAppState.getInstance(mLauncher).getIconCache();
+        List<AdapterItem> items = mApps.getAdapterItems();
+        for (int i = 0; i < items.size() && count > 0; i++) {
+            AppInfo info = items.get(i).appInfo;
+            if (info == null) {
+                continue;
+            }
+            count--;
+            if (info.usingLowResIcon && mRecyclerView.findViewHolderForAdapterPosition(i) == null) {
+                iconCache.updateIconInBackground(this, info, IconCache.PRIORITY_OFF_SCREEN);
+            }
+        }
+    }
+
+    @Override
+    public void reapplyItemInfo(ItemInfoWithIcon info) {
+        // The icon is updated in the info, which is used when a view is bound to it
+    }
+
+    /**
+     * Called when the list starts opening. Stops warming up, as the list now creates what it
+     * needs itself, and logs how long it takes to draw the list with DEBUG set.
+     */
+    void onOpenStarted() {
+        final String state = mState == STATE_WARM ? "warm"
+                : mState == STATE_WARMING ? "warming" : "cold";
+        final boolean firstOpen = !mOpenedBefore;
+        mOpenedBefore = true;
+        if (mScheduler != null) {
+            mScheduler.cancel();
+            mScheduler = null;
+            // Keep the holders and icons which are ready, but don't start again
+            mState = STATE_WARM;
+        }
+
+        if (DEBUG) {
+            final long startTime = SystemClock.uptimeMillis();
+            mRecyclerView.runOnNextDraw(new Runnable() {
+                @Override
+                public void run() {
+                    Log.d(TAG, "All apps drawn " + (SystemClock.uptimeMillis() - startTime)
+                            + "ms after opening, " + state + (firstOpen ? ", first open" : ""));
+                }
+            });
+        }
+    }
+}
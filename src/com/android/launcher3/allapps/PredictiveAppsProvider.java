@@ -9,7 +9,7 @@ import android.util.Log;
 import com.android.launcher3.AppInfo;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.discovery.suggestions.SuggestionCandidate;
-import com.android.launcher3.discovery.suggestions.SuggestionsDatabaseHelper;
+import com.android.launcher3.discovery.suggestions.SuggestionsCache;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.ComponentKeyMapper;
 
@@ -22,11 +22,25 @@ public class PredictiveAppsProvider {
     private static final String TAG = "PredictiveAppsProvider";
 
     private Context mContext;
-    private SuggestionsDatabaseHelper mHelper;
+    private SuggestionsCache mCache;
 
     public PredictiveAppsProvider(Context context) {
         mContext = context;
-        mHelper = SuggestionsDatabaseHelper.getInstance(context);
+        mCache = SuggestionsCache.getInstance(context, MAX_SUGGESTIONS);
+    }
+
+    /**
+     * Runs the callback on the main thread once the predictions are available.
+     */
+    public void runWhenLoaded(Runnable callback) {
+        mCache.runWhenLoaded(callback);
+    }
+
+    /**
+     * Writes any pending launch counts to disk in the background.
+     */
+    public void persistCounters() {
+        mCache.persist();
     }
 
     public void updateComponentCount(ComponentName component) {
@@ -40,20 +54,17 @@ public class PredictiveAppsProvider {
             return;
         }
 
-        SuggestionCandidate candidate = mHelper.getCandidate(component.getPackageName(),
-                component.getClassName());
-        mHelper.increaseCounter(mContext, candidate);
+        mCache.onLaunch(component, SuggestionCandidate.getUsageContext(mContext),
+                System.currentTimeMillis());
     }
 
     public List<ComponentKeyMapper<AppInfo>> getPredictions() {
-        List<SuggestionCandidate> candidates = mHelper.getSuggestionCandidates(mContext);
+        List<ComponentName> predictions = mCache.getPredictions(System.currentTimeMillis(),
+                SuggestionCandidate.getUsageContext(mContext), MAX_SUGGESTIONS);
         List<ComponentKeyMapper<AppInfo>> keys = new ArrayList<>();
         UserHandle handle = Process.myUserHandle();
 
-        for (SuggestionCandidate candidate : candidates) {
-            ComponentName name = new ComponentName(candidate.getPackageName(),
-                    candidate.getClassName());
-
+        for (ComponentName name : predictions) {
             keys.add(new ComponentKeyMapper<>(new ComponentKey(name, handle)));
         }
 
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps.search;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.allapps.search.DefaultAppSearchAlgorithm.StringMatcher;
+
+import java.text.CollationKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Precomputed search data for a list of apps: the word break positions of every title, and
+ * lazily computed collation keys for the title substrings starting at those positions.
+ *
+ * Matching is equivalent to {@link DefaultAppSearchAlgorithm#matches}, but does not inspect
+ * character types or allocate substrings once the keys for a query length have been computed.
+ *
+ * This class is not thread safe.
+ */
+public class AppSearchIndex {
+
+    private final StringMatcher mMatcher;
+    private final HashMap<AppInfo, Entry> mEntries = new HashMap<>();
+
+    // Snapshot of the apps and titles seen by the last update, to detect changes.
+    private AppInfo[] mApps = new AppInfo[0];
+    private CharSequence[] mTitles = new CharSequence[0];
+
+    public AppSearchIndex(StringMatcher matcher) {
+        mMatcher = matcher;
+    }
+
+    /**
+     * Brings the index up to date with {@param apps}.
+     *
+     * @return true if the apps or any of their titles changed since the last update.
+     */
+    public boolean update(List<AppInfo> apps) {
+        int count = apps.size();
+        boolean changed = count != mApps.length;
+        for (int i = 0; !changed && i < count; i++) {
+            AppInfo info = apps.get(i);
+            changed = info != mApps[i] || info.title != mTitles[i];
+        }
+        if (!changed) {
+            return false;
+        }
+
+        HashMap<AppInfo, Entry> oldEntries = new HashMap<>(mEntries);
+        mEntries.clear();
+        mApps = new AppInfo[count];
+        mTitles = new CharSequence[count];
+        for (int i = 0; i < count; i++) {
+            AppInfo info = apps.get(i);
+            mApps[i] = info;
+            mTitles[i] = info.title;
+
+            Entry entry = oldEntries.get(info);
+            if (entry == null || entry.source != info.title) {
+                entry = new Entry(info.title);
+            }
+            mEntries.put(info, entry);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the apps, from {@param candidates}, whose title matches the query.
+     */
+    public ArrayList<AppInfo> filter(List<AppInfo> candidates, StringMatcher.Query query) {
+        ArrayList<AppInfo> result = new ArrayList<>();
+        for (AppInfo info : candidates) {
+            if (matches(info, query)) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the query matches the beginning of any word in the title of the app.
+     */
+    public boolean matches(AppInfo info, StringMatcher.Query query) {
+        return matches(getEntry(info), query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns true if the query matches the beginning of the title of the app.
+     */
+    public boolean matchesPrefix(AppInfo info, StringMatcher.Query query) {
+        return matches(getEntry(info), query, 0);
+    }
+
+    private boolean matches(Entry entry, StringMatcher.Query query, int maxStart) {
+        int queryLength = query.length();
+        int titleLength = entry.title.length();
+        if (titleLength < queryLength || queryLength <= 0) {
+            return false;
+        }
+
+        int end = Math.min(titleLength - queryLength, maxStart);
+        for (int b = 0; b < entry.breaks.length && entry.breaks[b] <= end; b++) {
+            if (mMatcher.matches(query, entry.getKey(b, queryLength, mMatcher))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Entry getEntry(AppInfo info) {
+        Entry entry = mEntries.get(info);
+        if (entry == null || entry.source != info.title) {
+            // Not indexed yet, or the title changed since
+            entry = new Entry(info.title);
+            mEntries.put(info, entry);
+        }
+        return entry;
+    }
+
+    private static class Entry {
+        final CharSequence source;
+        final String title;
+        // Sorted positions in the title where a match can start
+        final int[] breaks;
+        // Collation keys of the substrings, indexed by break and length - 1
+        final CollationKey[][] keys;
+
+        Entry(CharSequence source) {
+            this.source = source;
+            title = source == null ? "" : source.toString();
+            breaks = DefaultAppSearchAlgorithm.getBreakPositions(title);
+            keys = new CollationKey[breaks.length][];
+        }
+
+        CollationKey getKey(int breakIndex, int length, StringMatcher matcher) {
+            CollationKey[] breakKeys = keys[breakIndex];
+            if (breakKeys == null) {
+                breakKeys = keys[breakIndex] =
+                        new CollationKey[title.length() - breaks[breakIndex]];
+            }
+            CollationKey key = breakKeys[length - 1];
+            if (key == null) {
+                int start = breaks[breakIndex];
+                key = breakKeys[length - 1] =
+                        matcher.getCollationKey(title.substring(start, start + length));
+            }
+            return key;
+        }
+    }
+}
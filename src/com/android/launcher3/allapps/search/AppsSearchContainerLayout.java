@@ -131,7 +131,9 @@ public class AppsSearchContainerLayout extends FrameLayout
         mAppsRecyclerView.addOnScrollListener(mElevationController);
         mAdapter = (AllAppsGridAdapter) mAppsRecyclerView.getAdapter();
         mSearchBarController.initialize(
-                new DefaultAppSearchAlgorithm(appsList.getApps()), mSearchInput, mLauncher, this);
+                new DefaultAppSearchAlgorithm(appsList.getApps(),
+                        DefaultAppSearchAlgorithm.getSearchExecutor()),
+                mSearchInput, mLauncher, this);
     }
 
     @Override
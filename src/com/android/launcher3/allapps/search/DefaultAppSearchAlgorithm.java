@@ -16,30 +16,81 @@
 package com.android.launcher3.allapps.search;
 
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 
 import com.android.launcher3.AppInfo;
 import com.android.launcher3.util.ComponentKey;
+import com.android.launcher3.util.LooperExecutor;
 
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The default search implementation.
  */
 public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
 
+    // Number of apps matched between checks for cancellation, when searching in the background
+    private static final int CANCELLATION_CHECK_INTERVAL = 32;
+
+    private static LooperExecutor sSearchExecutor;
+
     private final List<AppInfo> mApps;
     protected final Handler mResultHandler;
 
+    // Executor used for matching, or null to match synchronously on the calling thread
+    private final Executor mExecutor;
+    // Incremented for every new or cancelled request, to detect superseded requests
+    private final AtomicInteger mRequestId = new AtomicInteger();
+
+    // Created on the thread running the searches, since the matcher is not thread safe
+    private StringMatcher mMatcher;
+    private AppSearchIndex mIndex;
+
+    // The last query and its matches, used to narrow down the search when the query is extended
+    private String mLastQuery;
+    private ArrayList<AppInfo> mLastMatches;
+
     public DefaultAppSearchAlgorithm(List<AppInfo> apps) {
+        this(apps, null);
+    }
+
+    /**
+     * @param executor if not null, the apps are matched on this executor instead of the calling
+     *                 thread, and the results are delivered in ranked batches: first the apps
+     *                 whose title starts with the query, then all the matches. A new request
+     *                 cancels any request still in progress.
+     */
+    public DefaultAppSearchAlgorithm(List<AppInfo> apps, Executor executor) {
         mApps = apps;
         mResultHandler = new Handler();
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns a shared single-threaded executor suitable for background searches.
+     */
+    public static synchronized Executor getSearchExecutor() {
+        if (sSearchExecutor == null) {
+            HandlerThread thread = new HandlerThread(
+                    "launcher-search", Process.THREAD_PRIORITY_FOREGROUND);
+            thread.start();
+            sSearchExecutor = new LooperExecutor(thread.getLooper());
+        }
+        return sSearchExecutor;
     }
 
     @Override
     public void cancel(boolean interruptActiveRequests) {
         if (interruptActiveRequests) {
+            mRequestId.incrementAndGet();
             mResultHandler.removeCallbacksAndMessages(null);
         }
     }
@@ -47,6 +98,10 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
     @Override
     public void doSearch(final String query,
             final AllAppsSearchBarController.Callbacks callback) {
+        if (mExecutor != null) {
+            doSearchInBackground(query, callback);
+            return;
+        }
         final ArrayList<ComponentKey> result = getTitleMatchResult(query);
         mResultHandler.post(new Runnable() {
 
@@ -57,20 +112,129 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
         });
     }
 
+    private void doSearchInBackground(final String query,
+            final AllAppsSearchBarController.Callbacks callback) {
+        final int requestId = mRequestId.incrementAndGet();
+        // The app list is only modified on the main thread, so match against a snapshot.
+        final ArrayList<AppInfo> apps = new ArrayList<>(mApps);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                rankTitleMatches(query, apps, requestId, callback);
+            }
+        });
+    }
+
+    /**
+     * Matches the apps against the query on the background executor, delivering the apps whose
+     * title starts with the query before the other matches.
+     */
+    private void rankTitleMatches(String query, List<AppInfo> apps, int requestId,
+            AllAppsSearchBarController.Callbacks callback) {
+        if (isCancelled(requestId)) {
+            return;
+        }
+        final String queryTextLower = query.toLowerCase();
+        List<AppInfo> candidates = getCandidates(queryTextLower, apps);
+        StringMatcher.Query preparedQuery = mMatcher.newQuery(queryTextLower);
+
+        ArrayList<AppInfo> prefixMatches = new ArrayList<>();
+        ArrayList<AppInfo> remaining = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i % CANCELLATION_CHECK_INTERVAL == 0 && isCancelled(requestId)) {
+                return;
+            }
+            AppInfo info = candidates.get(i);
+            if (mIndex.matchesPrefix(info, preparedQuery)) {
+                prefixMatches.add(info);
+            } else {
+                remaining.add(info);
+            }
+        }
+        boolean postedPrefixMatches = !prefixMatches.isEmpty() && !remaining.isEmpty();
+        if (postedPrefixMatches) {
+            postResult(query, prefixMatches, requestId, callback);
+        }
+
+        ArrayList<AppInfo> matches = new ArrayList<>(prefixMatches);
+        for (int i = 0; i < remaining.size(); i++) {
+            if (i % CANCELLATION_CHECK_INTERVAL == 0 && isCancelled(requestId)) {
+                return;
+            }
+            AppInfo info = remaining.get(i);
+            if (mIndex.matches(info, preparedQuery)) {
+                matches.add(info);
+            }
+        }
+        mLastQuery = queryTextLower;
+        mLastMatches = matches;
+        if (!postedPrefixMatches || matches.size() > prefixMatches.size()) {
+            postResult(query, matches, requestId, callback);
+        }
+    }
+
+    private boolean isCancelled(int requestId) {
+        return requestId != mRequestId.get();
+    }
+
+    private void postResult(final String query, List<AppInfo> matches, final int requestId,
+            final AllAppsSearchBarController.Callbacks callback) {
+        final ArrayList<ComponentKey> result = new ArrayList<>(matches.size());
+        for (AppInfo info : matches) {
+            result.add(info.toComponentKey());
+        }
+        mResultHandler.post(new Runnable() {
+
+            @Override
+            public void run() {
+                if (!isCancelled(requestId)) {
+                    callback.onSearchResult(query, result);
+                }
+            }
+        });
+    }
+
     private ArrayList<ComponentKey> getTitleMatchResult(String query) {
         // Do an intersection of the words in the query and each title, and filter out all the
         // apps that don't match all of the words in the query.
         final String queryTextLower = query.toLowerCase();
-        final ArrayList<ComponentKey> result = new ArrayList<>();
-        StringMatcher matcher = StringMatcher.getInstance();
-        for (AppInfo info : mApps) {
-            if (matches(info, queryTextLower, matcher)) {
-                result.add(info.toComponentKey());
-            }
+        List<AppInfo> candidates = getCandidates(queryTextLower, mApps);
+        ArrayList<AppInfo> matches = mIndex.filter(candidates, mMatcher.newQuery(queryTextLower));
+        mLastQuery = queryTextLower;
+        mLastMatches = matches;
+
+        final ArrayList<ComponentKey> result = new ArrayList<>(matches.size());
+        for (AppInfo info : matches) {
+            result.add(info.toComponentKey());
         }
         return result;
     }
 
+    /**
+     * Updates the index and returns the apps which can possibly match the query.
+     */
+    private List<AppInfo> getCandidates(String queryTextLower, List<AppInfo> apps) {
+        StringMatcher matcher = StringMatcher.getInstance();
+        if (matcher != mMatcher) {
+            // First search, or the locale changed: the keys of the index are not comparable
+            mMatcher = matcher;
+            mIndex = new AppSearchIndex(matcher);
+            mLastQuery = null;
+            mLastMatches = null;
+        }
+        if (mIndex.update(apps)) {
+            // Forget the previous matches right away, as the search may still be cancelled
+            // before it records new ones
+            mLastQuery = null;
+            mLastMatches = null;
+        }
+
+        // An app which does not match a query can not match a longer version of it either, so
+        // only the previous matches need to be checked when the user keeps typing.
+        return mLastQuery != null && queryTextLower.startsWith(mLastQuery)
+                ? mLastMatches : apps;
+    }
+
     public static boolean matches(AppInfo info, String query, StringMatcher matcher) {
         int queryLength = query.length();
 
@@ -81,22 +245,43 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
             return false;
         }
 
+        int end = titleLength - queryLength;
+        for (int i : getBreakPositions(title)) {
+            if (i > end) {
+                break;
+            }
+            if (matcher.matches(query, title.substring(i, i + queryLength))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the sorted positions in {@param title} where a word starts, as defined by
+     * {@link #isBreak}.
+     */
+    static int[] getBreakPositions(String title) {
+        int titleLength = title.length();
+        if (titleLength == 0) {
+            return new int[0];
+        }
+        int[] breaks = new int[titleLength];
+        int count = 0;
+
         int lastType;
         int thisType = Character.UNASSIGNED;
         int nextType = Character.getType(title.codePointAt(0));
-
-        int end = titleLength - queryLength;
-        for (int i = 0; i <= end; i++) {
+        for (int i = 0; i < titleLength; i++) {
             lastType = thisType;
             thisType = nextType;
             nextType = i < (titleLength - 1) ?
                     Character.getType(title.codePointAt(i + 1)) : Character.UNASSIGNED;
-            if (isBreak(thisType, lastType, nextType) &&
-                    matcher.matches(query, title.substring(i, i + queryLength))) {
-                return true;
+            if (isBreak(thisType, lastType, nextType)) {
+                breaks[count++] = i;
             }
         }
-        return false;
+        return Arrays.copyOf(breaks, count);
     }
 
     /**
@@ -149,12 +334,17 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
 
         private static final char MAX_UNICODE = '\uFFFF';
 
+        // Collators are not thread safe, so every thread gets its own matcher.
+        private static final ThreadLocal<StringMatcher> sInstance = new ThreadLocal<>();
+
         private final Collator mCollator;
+        private final Locale mLocale;
 
         StringMatcher() {
             // On android N and above, Collator uses ICU implementation which has a much better
             // support for non-latin locales.
-            mCollator = Collator.getInstance();
+            mLocale = Locale.getDefault();
+            mCollator = Collator.getInstance(mLocale);
             mCollator.setStrength(Collator.PRIMARY);
             mCollator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
         }
@@ -177,8 +367,63 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm {
             }
         }
 
+        /**
+         * Returns true if {@param query} is a prefix of the string represented by
+         * {@param target}. Equivalent to {@link #matches(String, String)}.
+         */
+        public boolean matches(Query query, CollationKey target) {
+            int result = query.mKey.compareTo(target);
+            if (result == 0) {
+                return true;
+            } else if (result < 0) {
+                // See matches(String, String)
+                return query.mUpperBound.compareTo(target) > -1;
+            } else {
+                return false;
+            }
+        }
+
+        /**
+         * Precomputes the collation keys of {@param query} for repeated matching.
+         */
+        public Query newQuery(String query) {
+            return new Query(query.length(), mCollator.getCollationKey(query),
+                    mCollator.getCollationKey(query + MAX_UNICODE));
+        }
+
+        public CollationKey getCollationKey(String target) {
+            return mCollator.getCollationKey(target);
+        }
+
+        /**
+         * Returns a matcher for the current locale, shared by all the callers on this thread.
+         */
         public static StringMatcher getInstance() {
-            return new StringMatcher();
+            StringMatcher matcher = sInstance.get();
+            if (matcher == null || !matcher.mLocale.equals(Locale.getDefault())) {
+                matcher = new StringMatcher();
+                sInstance.set(matcher);
+            }
+            return matcher;
+        }
+
+        /**
+         * A query prepared by {@link #newQuery(String)}.
+         */
+        public static class Query {
+            private final int mLength;
+            private final CollationKey mKey;
+            private final CollationKey mUpperBound;
+
+            Query(int length, CollationKey key, CollationKey upperBound) {
+                mLength = length;
+                mKey = key;
+                mUpperBound = upperBound;
+            }
+
+            public int length() {
+                return mLength;
+            }
         }
     }
 }
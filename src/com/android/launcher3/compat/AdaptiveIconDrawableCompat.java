@@ -17,7 +17,6 @@
 package com.android.launcher3.compat;
 
 import android.annotation.SuppressLint;
-import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.Resources;
 import android.content.res.Resources.Theme;
@@ -40,24 +39,17 @@ import android.graphics.Shader.TileMode;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.TypedValue;
 
 import com.android.launcher3.LauncherAppState;
-import com.android.launcher3.R;
-import com.android.launcher3.Utilities;
-import com.android.launcher3.graphics.IconShapeOverride;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 /**
  * <p>This class can also be created via XML inflation using <code>&lt;adaptive-icon></code> tag
@@ -109,9 +101,9 @@ public class AdaptiveIconDrawableCompat extends Drawable implements Drawable.Cal
     private static final float DEFAULT_VIEW_PORT_SCALE = 1f / (1 + 2 * EXTRA_INSET_PERCENTAGE);
 
     /**
-     * Clip path defined in R.string.config_icon_mask.
+     * Clip path defined in R.string.config_icon_mask, shared by all the drawables.
      */
-    private static Path sMask;
+    private final Path mBaseMask;
 
     /**
      * Scaled mask based on the view bounds.
@@ -143,9 +135,6 @@ public class AdaptiveIconDrawableCompat extends Drawable implements Drawable.Cal
     private Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG |
             Paint.FILTER_BITMAP_FLAG);
 
-    private Method methodCreatePathFromPathData;
-    private Method methodExtractThemeAttrs;
-
     public boolean mUseMyUglyWorkaround = true;
 
     /**
@@ -160,64 +149,16 @@ public class AdaptiveIconDrawableCompat extends Drawable implements Drawable.Cal
      * constructors to set the state and initialize local properties.
      */
     AdaptiveIconDrawableCompat(@Nullable LayerState state, @Nullable Resources res) {
-        initReflections();
-
         mLayerState = createConstantState(state, res);
 
-        if (sMask == null) {
-            sMask = invoke(methodCreatePathFromPathData, null, getMaskPath());
-        }
-        mMask = invoke(methodCreatePathFromPathData, null, getMaskPath());
+        mBaseMask = IconMaskRegistry.getInstance(
+                LauncherAppState.getInstanceNoCreate().getContext()).getMask();
+        mMask = new Path(mBaseMask);
         mMaskMatrix = new Matrix();
         mCanvas = new Canvas();
         mTransparentRegion = new Region();
     }
 
-    private void initReflections() {
-        try {
-            Class<?> pathParser = getClass().getClassLoader().loadClass("android.util.PathParser");
-            methodCreatePathFromPathData = pathParser.getDeclaredMethod("createPathFromPathData", String.class);
-            methodExtractThemeAttrs = TypedArray.class.getDeclaredMethod("extractThemeAttrs");
-        } catch (ClassNotFoundException | NoSuchMethodException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private int getInt(Field field, Object obj) {
-        try {
-            return field.getInt(obj);
-        } catch (IllegalAccessException e) {
-            return 0;
-        }
-    }
-
-    private <T> T invoke(Method method, Object obj, Object... params) {
-        try {
-            return (T) method.invoke(obj, params);
-        } catch (IllegalAccessException | InvocationTargetException e) {
-            return null;
-        }
-    }
-
-
-    @SuppressWarnings("Duplicates")
-    private String getMaskPath() {
-        //return "M50,0L100,0 100,100 0,100 0,0z";
-        Context context = LauncherAppState.getInstanceNoCreate().getContext();
-        String mask = Utilities.getDevicePrefs(context).getString(IconShapeOverride.KEY_PREFERENCE, context.getString(R.string.icon_shape_default));
-        MASK_SIZE = 100f;
-        try {
-            /*IconShapeOverride.ShapeInfo override = IconShapeOverride.Companion.getAppliedValue(LauncherAppState.getInstance().getContext());
-            if (!TextUtils.isEmpty(override.getMaskPath())) {
-                mask = override.getMaskPath();
-                MASK_SIZE = (float) override.getSize();
-            }*/
-        } catch (Exception ignored) {
-
-        }
-        return mask;
-    }
-
     private ChildDrawable createChildDrawable(Drawable drawable) {
         final ChildDrawable layer = new ChildDrawable(mLayerState.mDensity);
         layer.mDrawable = drawable;
@@ -391,24 +332,21 @@ public class AdaptiveIconDrawableCompat extends Drawable implements Drawable.Cal
     }
 
     private void updateMaskBoundsInternal(Rect b) {
-        mMaskMatrix.setScale(b.width() / MASK_SIZE, b.height() / MASK_SIZE);
-        sMask.transform(mMaskMatrix, mMask);
-
-        if (mMaskBitmap == null || mMaskBitmap.getWidth() != b.width() ||
-                mMaskBitmap.getHeight() != b.height()) {
-            mMaskBitmap = Bitmap.createBitmap(b.width(), b.height(), Bitmap.Config.ALPHA_8);
+        if (mLayersBitmap == null || mLayersBitmap.getWidth() != b.width() ||
+                mLayersBitmap.getHeight() != b.height()) {
             mLayersBitmap = Bitmap.createBitmap(b.width(), b.height(), Bitmap.Config.ARGB_8888);
         }
-        // mMaskBitmap bound [0, w] x [0, h]
-        mCanvas.setBitmap(mMaskBitmap);
+        // mMaskBitmap bound [0, w] x [0, h], shared with the other drawables of the same size
+        mMaskBitmap = IconMaskRegistry.getInstance(LauncherAppState.getInstanceNoCreate()
+                .getContext()).getMaskBitmap(b.width(), b.height());
         mPaint.setShader(null);
         mPaint.setColor(0xFFFFFFFF);
-        mCanvas.drawPath(mMask, mPaint);
 
         // mMask bound [left, top, right, bottom]
+        mMaskMatrix.setScale(b.width() / MASK_SIZE, b.height() / MASK_SIZE);
         mMaskMatrix.postTranslate(b.left, b.top);
         mMask.reset();
-        sMask.transform(mMaskMatrix, mMask);
+        mBaseMask.transform(mMaskMatrix, mMask);
         // reset everything that depends on the view bounds
         mTransparentRegion.setEmpty();
         mLayersShader = null;
@@ -577,7 +515,7 @@ public class AdaptiveIconDrawableCompat extends Drawable implements Drawable.Cal
         state.mChildrenChangingConfigurations |= a.getChangingConfigurations();
 
         // Extract the theme attributes, if any.
-        layer.mThemeAttrs = invoke(methodExtractThemeAttrs, a);
+        layer.mThemeAttrs = IconMaskRegistry.extractThemeAttrs(a);
 
         @SuppressLint("ResourceType") Drawable dr = getDrawable(a, 0);
         if (dr != null) {
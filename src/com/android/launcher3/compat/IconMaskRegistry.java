@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.compat;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.launcher3.R;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.graphics.IconShapeOverride;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Process-wide registry of the icon shape used by {@link AdaptiveIconDrawableCompat}.
+ *
+ * The hidden methods used by the drawable are looked up once, the shape path is parsed once, and
+ * the mask bitmap is rendered once per size. The returned paths and bitmaps are shared and must
+ * not be modified. They are replaced when the icon shape preference changes.
+ */
+public class IconMaskRegistry implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    private static final String TAG = "IconMaskRegistry";
+
+    private static final int MASK_CACHE_SIZE_BYTES = 512 * 1024;
+
+    // Null if the platform does not have them
+    private static final Method CREATE_PATH_FROM_PATH_DATA =
+            findMethod("android.util.PathParser", "createPathFromPathData", String.class);
+    private static final Method EXTRACT_THEME_ATTRS =
+            findMethod("android.content.res.TypedArray", "extractThemeAttrs");
+
+    private static IconMaskRegistry sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    private Path mMask;
+    private final LruCache<Long, Bitmap> mMaskBitmaps =
+            new LruCache<Long, Bitmap>(MASK_CACHE_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(Long key, Bitmap value) {
+                    return value.getByteCount();
+                }
+            };
+
+    public static synchronized IconMaskRegistry getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new IconMaskRegistry(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private IconMaskRegistry(Context context) {
+        mContext = context;
+        mPrefs = Utilities.getDevicePrefs(context);
+        mPrefs.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    /**
+     * Returns the icon shape in a {@link AdaptiveIconDrawableCompat#MASK_SIZE} square, or null if
+     * it can't be parsed.
+     */
+    public synchronized Path getMask() {
+        if (mMask == null) {
+            String pathData = mPrefs.getString(IconShapeOverride.KEY_PREFERENCE,
+                    mContext.getString(R.string.icon_shape_default));
+            AdaptiveIconDrawableCompat.MASK_SIZE = 100f;
+            mMask = invoke(CREATE_PATH_FROM_PATH_DATA, null, pathData);
+        }
+        return mMask;
+    }
+
+    /**
+     * Returns an alpha bitmap of the icon shape scaled to the given size, or null if the shape
+     * can't be parsed.
+     */
+    public synchronized Bitmap getMaskBitmap(int width, int height) {
+        long key = ((long) width << 32) | height;
+        Bitmap bitmap = mMaskBitmaps.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        Path mask = getMask();
+        if (mask == null) {
+            return null;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.setScale(width / AdaptiveIconDrawableCompat.MASK_SIZE,
+                height / AdaptiveIconDrawableCompat.MASK_SIZE);
+        Path scaledMask = new Path();
+        mask.transform(matrix, scaledMask);
+
+        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG
+                | Paint.FILTER_BITMAP_FLAG);
+        paint.setColor(0xFFFFFFFF);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawPath(scaledMask, paint);
+        canvas.setBitmap(null);
+        mMaskBitmaps.put(key, bitmap);
+        return bitmap;
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+        if (IconShapeOverride.KEY_PREFERENCE.equals(key)) {
+            synchronized (this) {
+                mMask = null;
+                mMaskBitmaps.evictAll();
+            }
+        }
+    }
+
+    /**
+     * Calls the hidden TypedArray.extractThemeAttrs(), or returns null if it is not available.
+     */
+    static int[] extractThemeAttrs(TypedArray a) {
+        return invoke(EXTRACT_THEME_ATTRS, a);
+    }
+
+    private static Method findMethod(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return Class.forName(className).getDeclaredMethod(name, parameterTypes);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            Log.e(TAG, "Unable to find " + className + "." + name, e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T invoke(Method method, Object obj, Object... params) {
+        if (method == null) {
+            return null;
+        }
+        try {
+            return (T) method.invoke(obj, params);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+}
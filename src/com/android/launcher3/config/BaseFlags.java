@@ -47,6 +47,11 @@ abstract class BaseFlags {
     public static final boolean LAUNCHER3_PHYSICS = true;
     // When enabled allows use of spring motions on the icons.
     public static final boolean LAUNCHER3_SPRING_ICONS = true;
+    // When enabled only the widgets on the current and adjacent workspace pages are inflated.
+    public static final boolean LAUNCHER3_LAZY_WIDGETS = true;
+    // When enabled the high-res icons of the icon cache are also stored as raw pixels in a
+    // memory-mapped file, which is read instead of decoding the icons from the DB.
+    public static final boolean LAUNCHER3_ICON_ATLAS = false;
 
     // Feature flag to enable moving the QSB on the 0th screen of the workspace.
     public static final boolean QSB_ON_FIRST_SCREEN = false;
@@ -0,0 +1,20 @@
+package com.android.launcher3.discovery.suggestions;
+
+import android.content.ComponentName;
+import android.support.annotation.NonNull;
+
+/**
+ * A single app launch recorded in the launch log.
+ */
+public class LaunchEvent {
+    @NonNull
+    public final ComponentName component;
+    public final long time;
+    public final boolean headset;
+
+    public LaunchEvent(@NonNull ComponentName component, long time, boolean headset) {
+        this.component = component;
+        this.time = time;
+        this.headset = headset;
+    }
+}
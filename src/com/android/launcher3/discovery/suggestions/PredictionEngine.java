@@ -0,0 +1,275 @@
+package com.android.launcher3.discovery.suggestions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * Ranks items by how likely they are to be launched next, based on their launch history.
+ *
+ * Every launch contributes an exponentially decaying weight to a few score sets: all launches,
+ * launches in the same hour of the day, in the same hour of the week and (optionally) with a
+ * headset connected. As all weights in a set decay at the same rate, their relative order does
+ * not change with time; each set can therefore keep its items in a sorted tree which is updated
+ * in O(log n) per launch. Predictions combine the normalized scores of the best candidates of
+ * each set with a recency boost.
+ *
+ * This class is not thread safe.
+ */
+public class PredictionEngine<T> {
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final int HOURS_PER_WEEK = 7 * 24;
+    // 1 Jan 1970 was a Thursday, shift so that hour 0 of the week is Sunday midnight.
+    private static final int EPOCH_HOUR_OF_WEEK = 4 * 24;
+
+    /**
+     * Tunable parameters of the engine.
+     */
+    public static class Params {
+        public long halfLifeMs = 14 * DAY_MS;
+        public long recencyTimeConstantMs = HOUR_MS / 2;
+
+        public float globalWeight = 1f;
+        public float hourOfDayWeight = 1f;
+        public float hourOfWeekWeight = 0.5f;
+        public float headsetWeight = 1f;
+        public float recencyWeight = 0.5f;
+
+        // Number of candidates taken from each score set, as a multiple of the requested count
+        public int candidateFactor = 2;
+    }
+
+    private final Params mParams;
+    private final TimeZone mTimeZone;
+    // Decay rate in log units per ms
+    private final double mLambda;
+    // All scores are stored relative to this time, to keep the magnitudes small
+    private long mEpoch = Long.MIN_VALUE;
+
+    private final ScoreSet<T> mGlobal = new ScoreSet<>();
+    private final ScoreSet<T> mHeadset = new ScoreSet<>();
+    @SuppressWarnings("unchecked")
+    private final ScoreSet<T>[] mHourOfDay = new ScoreSet[24];
+    @SuppressWarnings("unchecked")
+    private final ScoreSet<T>[] mHourOfWeek = new ScoreSet[HOURS_PER_WEEK];
+
+    // Decays with the recency time constant, so its top items are the most recently launched
+    private final ScoreSet<T> mRecent = new ScoreSet<>();
+    private final HashMap<T, Long> mLastLaunch = new HashMap<>();
+
+    public PredictionEngine() {
+        this(new Params(), TimeZone.getDefault());
+    }
+
+    public PredictionEngine(Params params, TimeZone timeZone) {
+        mParams = params;
+        mTimeZone = timeZone;
+        mLambda = Math.log(2) / params.halfLifeMs;
+    }
+
+    /**
+     * Records a launch of {@param item} at {@param timeMillis}. Launches are expected to be
+     * recorded in chronological order.
+     */
+    public void onLaunch(T item, long timeMillis, boolean headset) {
+        if (mEpoch == Long.MIN_VALUE) {
+            mEpoch = timeMillis;
+        }
+        double logWeight = mLambda * (timeMillis - mEpoch);
+        int hourOfWeek = getHourOfWeek(timeMillis);
+
+        mGlobal.add(item, logWeight);
+        getOrCreate(mHourOfDay, hourOfWeek % 24).add(item, logWeight);
+        getOrCreate(mHourOfWeek, hourOfWeek).add(item, logWeight);
+        if (headset) {
+            mHeadset.add(item, logWeight);
+        }
+        mRecent.add(item, (double) (timeMillis - mEpoch) / mParams.recencyTimeConstantMs);
+        mLastLaunch.put(item, timeMillis);
+    }
+
+    /**
+     * Forgets everything about {@param item}, eg. after it was uninstalled.
+     */
+    public void remove(T item) {
+        mGlobal.remove(item);
+        mHeadset.remove(item);
+        for (ScoreSet<T> set : mHourOfDay) {
+            if (set != null) {
+                set.remove(item);
+            }
+        }
+        for (ScoreSet<T> set : mHourOfWeek) {
+            if (set != null) {
+                set.remove(item);
+            }
+        }
+        mRecent.remove(item);
+        mLastLaunch.remove(item);
+    }
+
+    public boolean isEmpty() {
+        return mGlobal.size() == 0;
+    }
+
+    /**
+     * Returns up to {@param count} items, most likely first, for a launch at {@param timeMillis}.
+     */
+    public List<T> getPredictions(long timeMillis, boolean headset, int count) {
+        if (isEmpty() || count <= 0) {
+            return new ArrayList<>();
+        }
+        int hourOfWeek = getHourOfWeek(timeMillis);
+        ScoreSet<T> hourOfDay = mHourOfDay[hourOfWeek % 24];
+        ScoreSet<T> hourOfWeekSet = mHourOfWeek[hourOfWeek];
+        ScoreSet<T> headsetSet = headset ? mHeadset : null;
+
+        // Collect candidates from the top of every relevant set, and score them exactly
+        int candidateCount = count * mParams.candidateFactor;
+        HashMap<T, Float> scores = new HashMap<>();
+        addCandidates(mGlobal, candidateCount, scores);
+        addCandidates(hourOfDay, candidateCount, scores);
+        addCandidates(hourOfWeekSet, candidateCount, scores);
+        addCandidates(headsetSet, candidateCount, scores);
+        addCandidates(mRecent, candidateCount, scores);
+
+        for (Map.Entry<T, Float> entry : scores.entrySet()) {
+            T item = entry.getKey();
+            float score = mParams.globalWeight * mGlobal.getProbability(item)
+                    + mParams.hourOfDayWeight * getProbability(hourOfDay, item)
+                    + mParams.hourOfWeekWeight * getProbability(hourOfWeekSet, item)
+                    + mParams.headsetWeight * getProbability(headsetSet, item);
+            Long lastLaunch = mLastLaunch.get(item);
+            if (lastLaunch != null) {
+                score += mParams.recencyWeight * (float) Math.exp(
+                        -(double) (timeMillis - lastLaunch) / mParams.recencyTimeConstantMs);
+            }
+            entry.setValue(score);
+        }
+
+        List<Map.Entry<T, Float>> ranked = new ArrayList<>(scores.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<T, Float>>() {
+            @Override
+            public int compare(Map.Entry<T, Float> a, Map.Entry<T, Float> b) {
+                return Float.compare(b.getValue(), a.getValue());
+            }
+        });
+        List<T> result = new ArrayList<>(Math.min(count, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < count; i++) {
+            result.add(ranked.get(i).getKey());
+        }
+        return result;
+    }
+
+    private int getHourOfWeek(long timeMillis) {
+        long localHours = (timeMillis + mTimeZone.getOffset(timeMillis)) / HOUR_MS;
+        return (int) ((localHours + EPOCH_HOUR_OF_WEEK) % HOURS_PER_WEEK);
+    }
+
+    private static <T> ScoreSet<T> getOrCreate(ScoreSet<T>[] sets, int index) {
+        if (sets[index] == null) {
+            sets[index] = new ScoreSet<>();
+        }
+        return sets[index];
+    }
+
+    private static <T> float getProbability(ScoreSet<T> set, T item) {
+        return set == null ? 0 : set.getProbability(item);
+    }
+
+    private static <T> void addCandidates(ScoreSet<T> set, int count, HashMap<T, Float> out) {
+        if (set == null) {
+            return;
+        }
+        Iterator<Score<T>> it = set.mOrdered.iterator();
+        for (int i = 0; i < count && it.hasNext(); i++) {
+            out.put(it.next().item, 0f);
+        }
+    }
+
+    /**
+     * Returns log(exp(a) + exp(b)) without overflowing.
+     */
+    private static double logAddExp(double a, double b) {
+        if (a == Double.NEGATIVE_INFINITY) {
+            return b;
+        }
+        double max = Math.max(a, b);
+        return max + Math.log1p(Math.exp(Math.min(a, b) - max));
+    }
+
+    private static class Score<T> {
+        final T item;
+        final long id;
+        double logValue = Double.NEGATIVE_INFINITY;
+
+        Score(T item, long id) {
+            this.item = item;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Decayed scores of a set of items, kept sorted by decreasing value.
+     */
+    private static class ScoreSet<T> {
+
+        private static final Comparator<Score<?>> COMPARATOR = new Comparator<Score<?>>() {
+            @Override
+            public int compare(Score<?> a, Score<?> b) {
+                int result = Double.compare(b.logValue, a.logValue);
+                return result != 0 ? result : Long.compare(a.id, b.id);
+            }
+        };
+
+        final HashMap<T, Score<T>> mScores = new HashMap<>();
+        final TreeSet<Score<T>> mOrdered = new TreeSet<>(COMPARATOR);
+        double mLogTotal = Double.NEGATIVE_INFINITY;
+        long mNextId = 0;
+
+        void add(T item, double logWeight) {
+            Score<T> score = mScores.get(item);
+            if (score == null) {
+                score = new Score<>(item, mNextId++);
+                mScores.put(item, score);
+            } else {
+                mOrdered.remove(score);
+            }
+            score.logValue = logAddExp(score.logValue, logWeight);
+            mOrdered.add(score);
+            mLogTotal = logAddExp(mLogTotal, logWeight);
+        }
+
+        void remove(T item) {
+            Score<T> score = mScores.remove(item);
+            if (score != null) {
+                mOrdered.remove(score);
+                // Subtract the item's share from the total
+                double remaining = 1 - Math.exp(score.logValue - mLogTotal);
+                mLogTotal = remaining > 0
+                        ? mLogTotal + Math.log(remaining) : Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        int size() {
+            return mScores.size();
+        }
+
+        /**
+         * Returns the share of the item in the total decayed weight of the set. As all weights
+         * decay at the same rate, this does not depend on the current time.
+         */
+        float getProbability(T item) {
+            Score<T> score = mScores.get(item);
+            return score == null ? 0 : (float) Math.exp(score.logValue - mLogTotal);
+        }
+    }
+}
@@ -9,6 +9,11 @@ import com.android.launcher3.Utilities;
 import java.util.Calendar;
 
 public class SuggestionCandidate {
+    public static final int CONTEXT_DAY = 0;
+    public static final int CONTEXT_NIGHT = 1;
+    public static final int CONTEXT_HEADSET = 2;
+    public static final int CONTEXT_COUNT = 3;
+
     @NonNull
     private String mPackageName;
     @NonNull
@@ -57,13 +62,46 @@ public class SuggestionCandidate {
         return mHeadphonesCounter;
     }
 
+    public int getCounter(int usageContext) {
+        switch (usageContext) {
+            case CONTEXT_HEADSET:
+                return mHeadphonesCounter;
+            case CONTEXT_DAY:
+                return mDayCounter;
+            default:
+                return mNightCounter;
+        }
+    }
+
     public void increaseCounter(Context context) {
+        increaseCounter(getUsageContext(context));
+    }
+
+    public void increaseCounter(int usageContext) {
+        switch (usageContext) {
+            case CONTEXT_HEADSET:
+                mHeadphonesCounter++;
+                break;
+            case CONTEXT_DAY:
+                mDayCounter++;
+                break;
+            default:
+                mNightCounter++;
+                break;
+        }
+    }
+
+    /**
+     * Returns the context (one of CONTEXT_DAY, CONTEXT_NIGHT and CONTEXT_HEADSET) in which
+     * launches are currently counted.
+     */
+    public static int getUsageContext(Context context) {
         if (Utilities.hasHeadset(context)) {
-            mHeadphonesCounter++;
+            return CONTEXT_HEADSET;
         } else if (Utilities.isDayTime()) {
-            mDayCounter++;
+            return CONTEXT_DAY;
         } else {
-            mNightCounter++;
+            return CONTEXT_NIGHT;
         }
     }
 }
@@ -0,0 +1,316 @@
+package com.android.launcher3.discovery.suggestions;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+
+import com.android.launcher3.LauncherModel;
+import com.android.launcher3.MainThreadExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory table of launch counters and launch history backed by
+ * {@link SuggestionsDatabaseHelper}.
+ *
+ * The table is loaded once on the worker thread, and the recent launch log is replayed into a
+ * {@link PredictionEngine}. Launches only update the in-memory state; changed counters and new
+ * launches are written back in a single batch after {@link #PERSIST_DELAY_MS}, or when
+ * {@link #persist()} is called.
+ */
+public class SuggestionsCache {
+
+    private static final long PERSIST_DELAY_MS = 10000;
+    // Launches older than this have a negligible weight in the prediction engine
+    private static final long LOG_RETENTION_MS = 60L * 24 * 60 * 60 * 1000;
+
+    private static SuggestionsCache sInstance = null;
+
+    private final SuggestionsDatabaseHelper mHelper;
+    private final Handler mWorkerHandler;
+    private final MainThreadExecutor mMainExecutor = new MainThreadExecutor();
+
+    private final HashMap<ComponentName, SuggestionCandidate> mCandidates = new HashMap<>();
+    private final TopCandidates[] mTopCandidates =
+            new TopCandidates[SuggestionCandidate.CONTEXT_COUNT];
+    private final LinkedHashSet<SuggestionCandidate> mDirtyCandidates = new LinkedHashSet<>();
+    private final PredictionEngine<ComponentName> mEngine = new PredictionEngine<>();
+    private final ArrayList<LaunchEvent> mUnsavedLaunches = new ArrayList<>();
+
+    // Launches recorded before the table was loaded, applied once loading is complete.
+    private final ArrayList<LaunchEvent> mPendingLaunches = new ArrayList<>();
+    private final ArrayList<Integer> mPendingLaunchContexts = new ArrayList<>();
+    private final ArrayList<Runnable> mOnLoadedCallbacks = new ArrayList<>();
+
+    private boolean mLoaded = false;
+    private boolean mPersistScheduled = false;
+
+    private final Runnable mPersistRunnable = new Runnable() {
+        @Override
+        public void run() {
+            persistNow();
+        }
+    };
+
+    private SuggestionsCache(Context context, int maxSuggestions) {
+        mHelper = SuggestionsDatabaseHelper.getInstance(context);
+        mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
+        for (int i = 0; i < mTopCandidates.length; i++) {
+            mTopCandidates[i] = new TopCandidates(i, maxSuggestions);
+        }
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    public static synchronized SuggestionsCache getInstance(Context context, int maxSuggestions) {
+        if (sInstance == null) {
+            sInstance = new SuggestionsCache(context.getApplicationContext(), maxSuggestions);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Runs the callback on the main thread once the counters have been loaded.
+     */
+    public void runWhenLoaded(Runnable callback) {
+        synchronized (this) {
+            if (!mLoaded) {
+                mOnLoadedCallbacks.add(callback);
+                return;
+            }
+        }
+        mMainExecutor.execute(callback);
+    }
+
+    /**
+     * Records a launch of the component at {@param time} in the given usage context.
+     */
+    public synchronized void onLaunch(
+            @NonNull ComponentName component, int usageContext, long time) {
+        LaunchEvent launch = new LaunchEvent(component, time,
+                usageContext == SuggestionCandidate.CONTEXT_HEADSET);
+        if (!mLoaded) {
+            mPendingLaunches.add(launch);
+            mPendingLaunchContexts.add(usageContext);
+            return;
+        }
+        mEngine.onLaunch(component, time, launch.headset);
+        mUnsavedLaunches.add(launch);
+
+        SuggestionCandidate candidate = mCandidates.get(component);
+        if (candidate == null) {
+            candidate = new SuggestionCandidate(
+                    component.getPackageName(), component.getClassName());
+            mCandidates.put(component, candidate);
+        }
+        candidate.increaseCounter(usageContext);
+        mTopCandidates[usageContext].onCounterIncreased(candidate);
+
+        mDirtyCandidates.add(candidate);
+        if (!mPersistScheduled) {
+            mPersistScheduled = true;
+            mWorkerHandler.postDelayed(mPersistRunnable, PERSIST_DELAY_MS);
+        }
+    }
+
+    /**
+     * Returns up to {@param count} components most likely to be launched at {@param time}.
+     * Predictions from the launch history come first, followed by the components with the
+     * highest lifetime counter in the usage context.
+     */
+    public synchronized List<ComponentName> getPredictions(
+            long time, int usageContext, int count) {
+        List<ComponentName> result = mEngine.getPredictions(
+                time, usageContext == SuggestionCandidate.CONTEXT_HEADSET, count);
+        for (SuggestionCandidate candidate : mTopCandidates[usageContext].toList()) {
+            if (result.size() >= count) {
+                break;
+            }
+            ComponentName component = new ComponentName(
+                    candidate.getPackageName(), candidate.getClassName());
+            if (!result.contains(component)) {
+                result.add(component);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the launches of the components of {@param packageName}, eg. after it was
+     * uninstalled, in memory and in the database. This is done on the worker thread, after the
+     * table is loaded.
+     */
+    public void removePackage(@NonNull final String packageName) {
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                removePackageNow(packageName);
+            }
+        });
+    }
+
+    private void removePackageNow(String packageName) {
+        synchronized (this) {
+            Iterator<Map.Entry<ComponentName, SuggestionCandidate>> it =
+                    mCandidates.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ComponentName, SuggestionCandidate> entry = it.next();
+                if (entry.getKey().getPackageName().equals(packageName)) {
+                    mEngine.remove(entry.getKey());
+                    mDirtyCandidates.remove(entry.getValue());
+                    it.remove();
+                }
+            }
+            for (int i = mUnsavedLaunches.size() - 1; i >= 0; i--) {
+                if (mUnsavedLaunches.get(i).component.getPackageName().equals(packageName)) {
+                    mUnsavedLaunches.remove(i);
+                }
+            }
+            // The top lists only handle increasing counters, so they are rebuilt
+            for (TopCandidates top : mTopCandidates) {
+                top.clear();
+                for (SuggestionCandidate candidate : mCandidates.values()) {
+                    top.onCounterIncreased(candidate);
+                }
+            }
+        }
+        mHelper.removePackage(packageName);
+    }
+
+    /**
+     * Writes any pending counter changes to the database on the worker thread.
+     */
+    public void persist() {
+        synchronized (this) {
+            if (mDirtyCandidates.isEmpty()) {
+                return;
+            }
+            mWorkerHandler.removeCallbacks(mPersistRunnable);
+            mPersistScheduled = true;
+        }
+        mWorkerHandler.post(mPersistRunnable);
+    }
+
+    private void persistNow() {
+        List<ContentValues> values = new ArrayList<>();
+        List<LaunchEvent> launches;
+        synchronized (this) {
+            mPersistScheduled = false;
+            for (SuggestionCandidate candidate : mDirtyCandidates) {
+                values.add(SuggestionsDatabaseHelper.toContentValues(candidate));
+            }
+            mDirtyCandidates.clear();
+            launches = new ArrayList<>(mUnsavedLaunches);
+            mUnsavedLaunches.clear();
+        }
+        mHelper.saveSuggestions(values, launches);
+    }
+
+    private void load() {
+        List<SuggestionCandidate> candidates = mHelper.getAllCandidates();
+        List<LaunchEvent> launches =
+                mHelper.getLaunchLog(System.currentTimeMillis() - LOG_RETENTION_MS);
+        ArrayList<Runnable> callbacks;
+        synchronized (this) {
+            for (LaunchEvent launch : launches) {
+                mEngine.onLaunch(launch.component, launch.time, launch.headset);
+            }
+            for (SuggestionCandidate candidate : candidates) {
+                mCandidates.put(new ComponentName(
+                        candidate.getPackageName(), candidate.getClassName()), candidate);
+                for (TopCandidates top : mTopCandidates) {
+                    top.onCounterIncreased(candidate);
+                }
+            }
+            mLoaded = true;
+
+            for (int i = 0; i < mPendingLaunches.size(); i++) {
+                LaunchEvent launch = mPendingLaunches.get(i);
+                onLaunch(launch.component, mPendingLaunchContexts.get(i), launch.time);
+            }
+            mPendingLaunches.clear();
+            mPendingLaunchContexts.clear();
+
+            callbacks = new ArrayList<>(mOnLoadedCallbacks);
+            mOnLoadedCallbacks.clear();
+        }
+        for (Runnable callback : callbacks) {
+            mMainExecutor.execute(callback);
+        }
+    }
+
+    /**
+     * The candidates with the highest counters for one usage context, sorted by decreasing
+     * counter. As counters only ever increase, a candidate can only enter the list by
+     * overtaking its last entry, so the list is kept exact in O(size) per launch.
+     */
+    private static class TopCandidates {
+        private final int mUsageContext;
+        private final SuggestionCandidate[] mItems;
+        private int mSize = 0;
+
+        TopCandidates(int usageContext, int maxSize) {
+            mUsageContext = usageContext;
+            mItems = new SuggestionCandidate[maxSize];
+        }
+
+        void onCounterIncreased(SuggestionCandidate candidate) {
+            int counter = candidate.getCounter(mUsageContext);
+            if (counter < 0) {
+                // Never launched in this context
+                return;
+            }
+            int index = indexOf(candidate);
+            if (index < 0) {
+                if (mSize < mItems.length) {
+                    index = mSize++;
+                } else if (counter > mItems[mSize - 1].getCounter(mUsageContext)) {
+                    index = mSize - 1;
+                } else {
+                    return;
+                }
+                mItems[index] = candidate;
+            }
+            // Move the candidate up to its new rank
+            while (index > 0 && mItems[index - 1].getCounter(mUsageContext) < counter) {
+                mItems[index] = mItems[index - 1];
+                mItems[index - 1] = candidate;
+                index--;
+            }
+        }
+
+        private int indexOf(SuggestionCandidate candidate) {
+            for (int i = 0; i < mSize; i++) {
+                if (mItems[i] == candidate) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void clear() {
+            Arrays.fill(mItems, null);
+            mSize = 0;
+        }
+
+        List<SuggestionCandidate> toList() {
+            List<SuggestionCandidate> list = new ArrayList<>(mSize);
+            for (int i = 0; i < mSize; i++) {
+                list.add(mItems[i]);
+            }
+            return list;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.android.launcher3.discovery.suggestions;
 
+import android.content.ComponentName;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -7,16 +8,12 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-
-import com.android.launcher3.Utilities;
-import com.android.launcher3.allapps.PredictiveAppsProvider;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class SuggestionsDatabaseHelper extends SQLiteOpenHelper {
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
     private static final String DATABASE_NAME = "trebuchet_suggestions_db";
 
     private static final String TABLE_NAME = "suggestion_candidates";
@@ -27,6 +24,10 @@ public class SuggestionsDatabaseHelper extends SQLiteOpenHelper {
     private static final String KEY_NIGHT_COUNTER = "nightCounter";
     private static final String KEY_HEADSET_COUNTER = "headsetCounter";
 
+    private static final String LOG_TABLE_NAME = "launch_log";
+    private static final String KEY_TIME = "time";
+    private static final String KEY_HEADSET = "headset";
+
     private static final String[] ALL_COLUMNS = {
             KEY_UID, KEY_PACKAGE_NAME, KEY_CLASS_NAME,
             KEY_DAY_COUNTER, KEY_NIGHT_COUNTER, KEY_HEADSET_COUNTER
@@ -42,6 +43,12 @@ public class SuggestionsDatabaseHelper extends SQLiteOpenHelper {
             "%6$s INTEGER NOT NULL DEFAULT -1, " + // nightCounter
             "%7$s INTEGER NOT NULL DEFAULT -1);"; // headsetCounter
 
+    private static final String CMD_CREATE_LOG_TABLE = "CREATE TABLE IF NOT EXISTS %1$s (" +
+            "%2$s INTEGER NOT NULL," + // time
+            "%3$s TEXT NOT NULL," + // packageName
+            "%4$s TEXT NOT NULL, " + // className
+            "%5$s INTEGER NOT NULL DEFAULT 0);"; // headset
+
     private static SuggestionsDatabaseHelper sInstance = null;
 
     private SuggestionsDatabaseHelper(Context context) {
@@ -59,118 +66,148 @@ public class SuggestionsDatabaseHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(String.format(CMD_CREATE_TABLE, TABLE_NAME, KEY_UID, KEY_PACKAGE_NAME,
                 KEY_CLASS_NAME, KEY_DAY_COUNTER, KEY_NIGHT_COUNTER, KEY_HEADSET_COUNTER));
+        createLogTable(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            createLogTable(db);
+        }
     }
 
-    public void increaseCounter(Context context, @NonNull SuggestionCandidate candidate) {
-        candidate.increaseCounter(context);
-        saveSuggestion(candidate);
+    private void createLogTable(SQLiteDatabase db) {
+        db.execSQL(String.format(CMD_CREATE_LOG_TABLE, LOG_TABLE_NAME, KEY_TIME,
+                KEY_PACKAGE_NAME, KEY_CLASS_NAME, KEY_HEADSET));
     }
 
-    public List<SuggestionCandidate> getSuggestionCandidates(Context context) {
+    /**
+     * Returns all the candidates stored in the database, in no particular order.
+     */
+    public List<SuggestionCandidate> getAllCandidates() {
         List<SuggestionCandidate> candidates = new ArrayList<>();
-        int i = 0;
-
-        String counterColumn;
-        if (Utilities.hasHeadset(context)) {
-            counterColumn = KEY_HEADSET_COUNTER;
-        } else if (Utilities.isDayTime()) {
-            counterColumn = KEY_DAY_COUNTER;
-        } else {
-            counterColumn = KEY_NIGHT_COUNTER;
-        }
-
         SQLiteDatabase db = getReadableDatabase();
-        Cursor cursor = db.query(TABLE_NAME, ALL_COLUMNS, null, null,
-                null, null, counterColumn + " DESC");
-        if (cursor == null) {
-            return candidates;
-        }
+        try (Cursor cursor = db.query(TABLE_NAME, ALL_COLUMNS, null, null,
+                null, null, null)) {
+            if (cursor == null) {
+                return candidates;
+            }
 
-        if (!cursor.moveToFirst()) {
-            cursor.close();
-            return candidates;
+            int packageIndex = cursor.getColumnIndex(KEY_PACKAGE_NAME);
+            int classIndex = cursor.getColumnIndex(KEY_CLASS_NAME);
+            int dayIndex = cursor.getColumnIndex(KEY_DAY_COUNTER);
+            int nightIndex = cursor.getColumnIndex(KEY_NIGHT_COUNTER);
+            int headsetIndex = cursor.getColumnIndex(KEY_HEADSET_COUNTER);
+            while (cursor.moveToNext()) {
+                candidates.add(new SuggestionCandidate(
+                        cursor.getString(packageIndex),
+                        cursor.getString(classIndex),
+                        cursor.getInt(dayIndex),
+                        cursor.getInt(nightIndex),
+                        cursor.getInt(headsetIndex)));
+            }
         }
-
-        do {
-            candidates.add(new SuggestionCandidate(
-                    cursor.getString(cursor.getColumnIndex(KEY_PACKAGE_NAME)),
-                    cursor.getString(cursor.getColumnIndex(KEY_CLASS_NAME)),
-                    cursor.getInt(cursor.getColumnIndex(KEY_DAY_COUNTER)),
-                    cursor.getInt(cursor.getColumnIndex(KEY_NIGHT_COUNTER)),
-                    cursor.getInt(cursor.getColumnIndex(KEY_HEADSET_COUNTER))));
-            i++;
-        } while (i < PredictiveAppsProvider.MAX_SUGGESTIONS && cursor.moveToNext());
-
         return candidates;
     }
 
-    private void saveSuggestion(@NonNull SuggestionCandidate candidate) {
-        boolean shouldUpdate = hasCandidate(candidate.getPackageName(), candidate.getClassName());
+    /**
+     * Deletes launches older than {@param minTime} and returns the remaining ones in
+     * chronological order.
+     */
+    public List<LaunchEvent> getLaunchLog(long minTime) {
+        List<LaunchEvent> events = new ArrayList<>();
+        SQLiteDatabase db = getWritableDatabase();
+        try {
+            db.delete(LOG_TABLE_NAME, KEY_TIME + " < ?",
+                    new String[] { Long.toString(minTime) });
+        } catch (SQLiteFullException sfe) {
+            // prevent crash
+        }
+        try (Cursor cursor = db.query(LOG_TABLE_NAME,
+                new String[] { KEY_TIME, KEY_PACKAGE_NAME, KEY_CLASS_NAME, KEY_HEADSET },
+                null, null, null, null, KEY_TIME)) {
+            if (cursor == null) {
+                return events;
+            }
+            while (cursor.moveToNext()) {
+                events.add(new LaunchEvent(
+                        new ComponentName(cursor.getString(1), cursor.getString(2)),
+                        cursor.getLong(0), cursor.getInt(3) != 0));
+            }
+        }
+        return events;
+    }
 
+    /**
+     * Deletes the candidates and the launches of the components of {@param packageName}.
+     */
+    public void removePackage(@NonNull String packageName) {
+        String[] arguments = new String[] { packageName };
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(TABLE_NAME, KEY_PACKAGE_NAME + " = ?", arguments);
+                db.delete(LOG_TABLE_NAME, KEY_PACKAGE_NAME + " = ?", arguments);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteFullException sfe) {
+            // prevent crash
+        }
+    }
+
+    /**
+     * Returns the values to be persisted for the candidate, as expected by
+     * {@link #saveSuggestions(List, List)}.
+     */
+    public static ContentValues toContentValues(@NonNull SuggestionCandidate candidate) {
         ContentValues values = new ContentValues();
         values.put(KEY_PACKAGE_NAME, candidate.getPackageName());
         values.put(KEY_CLASS_NAME, candidate.getClassName());
         values.put(KEY_DAY_COUNTER, candidate.getDayCounter());
         values.put(KEY_NIGHT_COUNTER, candidate.getNightCounter());
         values.put(KEY_HEADSET_COUNTER, candidate.getHeadsetCounter());
+        return values;
+    }
 
-        try (SQLiteDatabase db = getWritableDatabase()) {
-            if (shouldUpdate) {
-                String[] arguments = new String[] {
-                        candidate.getPackageName(), candidate.getClassName()
-                };
-                db.update(TABLE_NAME, values, QUERY_FILTER, arguments);
-            } else {
-                db.insert(TABLE_NAME, null, values);
+    /**
+     * Inserts or updates all the candidates and appends the launches to the launch log in a
+     * single transaction.
+     */
+    public void saveSuggestions(@NonNull List<ContentValues> candidates,
+            @NonNull List<LaunchEvent> launches) {
+        if (candidates.isEmpty() && launches.isEmpty()) {
+            return;
+        }
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                for (ContentValues values : candidates) {
+                    String[] arguments = new String[] {
+                            values.getAsString(KEY_PACKAGE_NAME),
+                            values.getAsString(KEY_CLASS_NAME)
+                    };
+                    if (db.update(TABLE_NAME, values, QUERY_FILTER, arguments) == 0) {
+                        db.insert(TABLE_NAME, null, values);
+                    }
+                }
+                for (LaunchEvent launch : launches) {
+                    ContentValues values = new ContentValues();
+                    values.put(KEY_TIME, launch.time);
+                    values.put(KEY_PACKAGE_NAME, launch.component.getPackageName());
+                    values.put(KEY_CLASS_NAME, launch.component.getClassName());
+                    values.put(KEY_HEADSET, launch.headset ? 1 : 0);
+                    db.insert(LOG_TABLE_NAME, null, values);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
         } catch (SQLiteFullException sfe) {
             // prevent crash
         }
     }
-
-    @NonNull
-    public SuggestionCandidate getCandidate(@NonNull String packageName,
-                                            @NonNull String className) {
-        SQLiteDatabase db = getReadableDatabase();
-        String[] arguments = new String[] { packageName, className };
-        Cursor cursor = db.query(TABLE_NAME, ALL_COLUMNS, QUERY_FILTER, arguments,
-                null, null, null, null);
-        if (cursor == null) {
-            return new SuggestionCandidate(packageName, className);
-        }
-
-        if (!cursor.moveToFirst()) {
-            cursor.close();
-            return new SuggestionCandidate(packageName, className);
-        }
-
-        SuggestionCandidate result = new SuggestionCandidate(
-                cursor.getString(cursor.getColumnIndex(KEY_PACKAGE_NAME)),
-                cursor.getString(cursor.getColumnIndex(KEY_CLASS_NAME)),
-                cursor.getInt(cursor.getColumnIndex(KEY_DAY_COUNTER)),
-                cursor.getInt(cursor.getColumnIndex(KEY_NIGHT_COUNTER)),
-                cursor.getInt(cursor.getColumnIndex(KEY_HEADSET_COUNTER))
-        );
-        cursor.close();
-        return result;
-    }
-
-    private boolean hasCandidate(@NonNull String packageName,
-                                 @NonNull String className) {
-        SQLiteDatabase db = getReadableDatabase();
-        String[] columns = new String[]{KEY_PACKAGE_NAME, KEY_CLASS_NAME};
-        String[] arguments = new String[]{packageName, className};
-        Cursor cursor = db.query(TABLE_NAME, columns, QUERY_FILTER, arguments,
-                null, null, null, null);
-
-        boolean result = cursor != null && cursor.getCount() > 0;
-        if (cursor != null) {
-            cursor.close();
-        }
-        return result;
-    }
 }
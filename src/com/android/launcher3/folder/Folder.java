@@ -1469,6 +1469,7 @@ public class Folder extends AbstractFloatingView implements DragSource, View.OnC
         mItemsInvalidated = true;
         View v = getViewForInfo(item);
         mContent.removeItem(v);
+        mLauncher.getIconViewPool().recycle(R.layout.folder_application, v);
         if (mState == STATE_ANIMATING) {
             mRearrangeOnClose = true;
         } else {
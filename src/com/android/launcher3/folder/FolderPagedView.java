@@ -245,8 +245,12 @@ public class FolderPagedView extends PagedView {
 
     @SuppressLint("InflateParams")
     public View createNewView(ShortcutInfo item) {
-        final BubbleTextView textView = (BubbleTextView) mInflater.inflate(
-                R.layout.folder_application, null, false);
+        BubbleTextView textView = mFolder.mLauncher.getIconViewPool()
+                .obtain(R.layout.folder_application);
+        if (textView == null) {
+            textView = (BubbleTextView) mInflater.inflate(
+                    R.layout.folder_application, null, false);
+        }
         textView.applyFromShortcutInfo(item);
         textView.setHapticFeedbackEnabled(false);
         textView.setOnClickListener(mFolder);
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Process-wide pool of mutable bitmaps which are no longer used, so that temporary bitmaps used
+ * while generating icons and previews can be reused instead of allocated.
+ *
+ * Bitmaps are grouped in buckets by their allocation size (rounded up to a power of two), and
+ * are reconfigured to the requested size and config when reused. The pool is bounded by a byte
+ * budget; the bitmaps released the longest time ago are dropped first.
+ *
+ * A bitmap must only be released once nothing draws it anymore.
+ */
+public class BitmapPool {
+
+    private static final String TAG = "BitmapPool";
+
+    private static BitmapPool sInstance;
+
+    private final long mMaxBytes;
+    private final SparseArray<ArrayList<Bitmap>> mBuckets = new SparseArray<>();
+    // All pooled bitmaps, least recently released first. Bitmaps are compared by identity.
+    private final LinkedHashSet<Bitmap> mLru = new LinkedHashSet<>();
+    private long mBytes;
+
+    private int mAllocations;
+    private int mReuses;
+    private int mDecodeReuses;
+    private int mEvictions;
+
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / 32);
+        }
+        return sInstance;
+    }
+
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a transparent mutable bitmap of the given size, reusing a pooled bitmap if one is
+     * large enough.
+     */
+    public Bitmap acquire(int width, int height, Config config) {
+        Bitmap bitmap = take(width * height * getBytesPerPixel(config));
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, config);
+            bitmap.eraseColor(Color.TRANSPARENT);
+            synchronized (this) {
+                mReuses++;
+            }
+            return bitmap;
+        }
+        synchronized (this) {
+            mAllocations++;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Decodes a compressed bitmap, reusing the memory of a pooled bitmap if one is large enough.
+     * The returned bitmap is mutable.
+     *
+     * @param config the config to decode to, or null for the default config
+     * @return the decoded bitmap, or null if the data could not be decoded
+     */
+    public Bitmap decode(byte[] data, @Nullable Config config) {
+        return decode(data, 0, data.length, config);
+    }
+
+    /**
+     * Same as {@link #decode(byte[], Config)} for the {@param length} bytes of {@param data}
+     * starting at {@param offset}.
+     */
+    public Bitmap decode(byte[] data, int offset, int length, @Nullable Config config) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        if (config != null) {
+            opts.inPreferredConfig = config;
+        }
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, offset, length, opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+            return null;
+        }
+        opts.inJustDecodeBounds = false;
+        opts.inMutable = true;
+        opts.inBitmap = take(opts.outWidth * opts.outHeight
+                * getBytesPerPixel(config == null ? Config.ARGB_8888 : config));
+
+        Bitmap result;
+        try {
+            result = BitmapFactory.decodeByteArray(data, offset, length, opts);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be used for this image
+            release(opts.inBitmap);
+            opts.inBitmap = null;
+            result = BitmapFactory.decodeByteArray(data, offset, length, opts);
+        }
+        if (opts.inBitmap != null && result != opts.inBitmap) {
+            // The data could not be decoded
+            release(opts.inBitmap);
+        }
+        synchronized (this) {
+            if (opts.inBitmap != null && result == opts.inBitmap) {
+                mDecodeReuses++;
+            } else if (result != null) {
+                mAllocations++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the bitmap to the pool. Immutable or recycled bitmaps are ignored.
+     */
+    public void release(@Nullable Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > mMaxBytes) {
+            return;
+        }
+        synchronized (this) {
+            if (mLru.contains(bitmap)) {
+                Log.w(TAG, "Bitmap released twice");
+                return;
+            }
+            int bucket = getBucket(size);
+            ArrayList<Bitmap> bitmaps = mBuckets.get(bucket);
+            if (bitmaps == null) {
+                bitmaps = new ArrayList<>();
+                mBuckets.put(bucket, bitmaps);
+            }
+            bitmaps.add(bitmap);
+            mLru.add(bitmap);
+            mBytes += size;
+
+            while (mBytes > mMaxBytes) {
+                Iterator<Bitmap> oldest = mLru.iterator();
+                Bitmap evicted = oldest.next();
+                oldest.remove();
+                mBuckets.get(getBucket(evicted.getAllocationByteCount())).remove(evicted);
+                mBytes -= evicted.getAllocationByteCount();
+                mEvictions++;
+            }
+        }
+    }
+
+    /**
+     * Removes all the bitmaps from the pool.
+     */
+    public synchronized void clear() {
+        mBuckets.clear();
+        mLru.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * Removes and returns a pooled bitmap with at least {@param bytes} allocated, or null.
+     */
+    private synchronized Bitmap take(int bytes) {
+        if (bytes <= 0) {
+            return null;
+        }
+        int bucket = getBucket(bytes);
+        // Bitmaps in the next bucket are always large enough, and waste less than 4x the memory
+        for (int b = bucket; b <= bucket + 1; b++) {
+            ArrayList<Bitmap> bitmaps = mBuckets.get(b);
+            if (bitmaps == null) {
+                continue;
+            }
+            for (Iterator<Bitmap> it = bitmaps.iterator(); it.hasNext(); ) {
+                Bitmap bitmap = it.next();
+                int size = bitmap.getAllocationByteCount();
+                if (size >= bytes) {
+                    it.remove();
+                    mLru.remove(bitmap);
+                    mBytes -= size;
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "BitmapPool: size=" + mLru.size() + " bytes=" + mBytes
+                + "/" + mMaxBytes + " allocations=" + mAllocations + " reuses=" + mReuses
+                + " decodeReuses=" + mDecodeReuses + " evictions=" + mEvictions);
+    }
+
+    /**
+     * Returns the index of the smallest power of two which is at least {@param bytes}.
+     */
+    private static int getBucket(int bytes) {
+        return 32 - Integer.numberOfLeadingZeros(bytes - 1);
+    }
+
+    private static int getBytesPerPixel(Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
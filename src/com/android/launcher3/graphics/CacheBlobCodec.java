@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Serializes bitmaps stored in the cache DBs.
+ *
+ * Every blob starts with {@link #MAGIC} followed by the tag of the codec which wrote it, so that
+ * the format can change without invalidating existing rows. Blobs without the header are plain
+ * compressed images, as written before codecs were introduced.
+ */
+public abstract class CacheBlobCodec {
+
+    private static final String TAG = "CacheBlobCodec";
+
+    private static final byte[] MAGIC = {'L', '3', 'B'};
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+
+    public static final int TAG_PNG = 1;
+    public static final int TAG_RAW_DEFLATE = 2;
+
+    /** PNG at quality 100, slow to encode and decode, but compact. */
+    public static final CacheBlobCodec PNG = new PngCodec();
+    /** Raw premultiplied pixels compressed with a fast deflate. */
+    public static final CacheBlobCodec RAW_DEFLATE = new RawDeflateCodec();
+
+    private static final CacheBlobCodec[] CODECS = {PNG, RAW_DEFLATE};
+
+    /**
+     * Returns the codec used for new cache entries.
+     */
+    public static CacheBlobCodec getDefault() {
+        return RAW_DEFLATE;
+    }
+
+    public final int tag;
+
+    protected CacheBlobCodec(int tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Serializes the bitmap, or returns null on failure.
+     */
+    public byte[] encode(Bitmap bitmap) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                HEADER_SIZE + bitmap.getWidth() * bitmap.getHeight());
+        try {
+            out.write(MAGIC);
+            out.write(tag);
+            encodeBody(bitmap, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write bitmap", e);
+            return null;
+        }
+    }
+
+    /**
+     * Deserializes a blob written by any codec, or a plain compressed image.
+     *
+     * @param config the preferred config. As with compressed images, RGB_565 is only used for
+     *               opaque bitmaps.
+     * @return the bitmap, or null if the blob could not be read
+     */
+    public static Bitmap decode(byte[] data, @Nullable Config config) {
+        if (data == null) {
+            return null;
+        }
+        CacheBlobCodec codec = PNG;
+        int offset = 0;
+        if (hasHeader(data)) {
+            codec = getCodec(data[MAGIC.length]);
+            offset = HEADER_SIZE;
+            if (codec == null) {
+                Log.w(TAG, "Unknown blob format " + data[MAGIC.length]);
+                return null;
+            }
+        }
+        try {
+            return codec.decodeBody(data, offset, config);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read bitmap", e);
+            return null;
+        }
+    }
+
+    private static boolean hasHeader(byte[] data) {
+        if (data.length < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CacheBlobCodec getCodec(int tag) {
+        for (CacheBlobCodec codec : CODECS) {
+            if (codec.tag == tag) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    protected abstract void encodeBody(Bitmap bitmap, ByteArrayOutputStream out)
+            throws IOException;
+
+    protected abstract Bitmap decodeBody(byte[] data, int offset, @Nullable Config config)
+            throws IOException;
+
+    private static class PngCodec extends CacheBlobCodec {
+
+        PngCodec() {
+            super(TAG_PNG);
+        }
+
+        @Override
+        protected void encodeBody(Bitmap bitmap, ByteArrayOutputStream out) throws IOException {
+            if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                throw new IOException("Could not compress bitmap");
+            }
+        }
+
+        @Override
+        protected Bitmap decodeBody(byte[] data, int offset, @Nullable Config config) {
+            return BitmapPool.getInstance().decode(data, offset, data.length - offset, config);
+        }
+    }
+
+    /**
+     * Stores the width and height, followed by the ARGB_8888 pixels in the bitmap's memory
+     * layout, deflated at the fastest level. Every byte is stored as the difference with the same
+     * channel of the pixel to its left, which makes gradients and flat areas compress better.
+     *
+     * Opaque bitmaps are decoded to RGB_565 when it is the preferred config.
+     */
+    static class RawDeflateCodec extends CacheBlobCodec {
+
+        private static final int BYTES_PER_PIXEL = 4;
+        // Offset of the alpha in the memory layout of an ARGB_8888 pixel
+        private static final int ALPHA_OFFSET = 3;
+        // Larger buffers are not kept between calls
+        private static final int MAX_CACHED_BUFFER_SIZE = 256 * 1024;
+
+        private static final ThreadLocal<byte[]> sBuffer = new ThreadLocal<>();
+
+        RawDeflateCodec() {
+            super(TAG_RAW_DEFLATE);
+        }
+
+        @Override
+        protected void encodeBody(Bitmap bitmap, ByteArrayOutputStream out) throws IOException {
+            if (bitmap.getConfig() != Config.ARGB_8888) {
+                bitmap = bitmap.copy(Config.ARGB_8888, false);
+            }
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            byte[] pixels = getBuffer(width * height * BYTES_PER_PIXEL);
+            bitmap.copyPixelsToBuffer(ByteBuffer.wrap(pixels));
+            filter(pixels, width, height);
+
+            writeInt(out, width);
+            writeInt(out, height);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(pixels, 0, width * height * BYTES_PER_PIXEL);
+                deflater.finish();
+                byte[] chunk = new byte[8192];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(chunk);
+                    out.write(chunk, 0, count);
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        protected Bitmap decodeBody(byte[] data, int offset, @Nullable Config config)
+                throws IOException {
+            if (data.length - offset < 8) {
+                throw new IOException("Truncated blob");
+            }
+            int width = readInt(data, offset);
+            int height = readInt(data, offset + 4);
+            if (width <= 0 || height <= 0
+                    || (long) width * height * BYTES_PER_PIXEL > Integer.MAX_VALUE) {
+                throw new IOException("Invalid size " + width + "x" + height);
+            }
+            int length = width * height * BYTES_PER_PIXEL;
+            byte[] pixels = getBuffer(length);
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data, offset + 8, data.length - offset - 8);
+                int count = 0;
+                while (count < length && !inflater.finished()) {
+                    int read = inflater.inflate(pixels, count, length - count);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    count += read;
+                }
+                if (count != length) {
+                    throw new IOException("Truncated blob");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.end();
+            }
+            unfilter(pixels, width, height);
+
+            if (config == Config.RGB_565 && isOpaque(pixels, length)) {
+                int rgb565Length = toRgb565(pixels, length);
+                Bitmap bitmap = BitmapPool.getInstance().acquire(width, height, Config.RGB_565);
+                bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels, 0, rgb565Length));
+                return bitmap;
+            }
+            Bitmap bitmap = BitmapPool.getInstance().acquire(width, height, Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels, 0, length));
+            return bitmap;
+        }
+
+        private static boolean isOpaque(byte[] pixels, int length) {
+            for (int i = ALPHA_OFFSET; i < length; i += BYTES_PER_PIXEL) {
+                if (pixels[i] != (byte) 0xFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Converts the opaque ARGB_8888 pixels in place to the memory layout of RGB_565, and
+         * returns the length of the result.
+         */
+        private static int toRgb565(byte[] pixels, int length) {
+            ByteBuffer out = ByteBuffer.wrap(pixels).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < length; i += BYTES_PER_PIXEL) {
+                int r = pixels[i] & 0xFF;
+                int g = pixels[i + 1] & 0xFF;
+                int b = pixels[i + 2] & 0xFF;
+                // Each pixel is written behind the one being read
+                out.putShort((short) (((r >> 3) << 11) | ((g >> 2) << 5) | (b >> 3)));
+            }
+            return out.position();
+        }
+
+        static void filter(byte[] pixels, int width, int height) {
+            int stride = width * BYTES_PER_PIXEL;
+            for (int row = 0; row < height; row++) {
+                int start = row * stride;
+                // Right to left, so that every byte is compared with the original on its left
+                for (int i = start + stride - 1; i >= start + BYTES_PER_PIXEL; i--) {
+                    pixels[i] -= pixels[i - BYTES_PER_PIXEL];
+                }
+            }
+        }
+
+        static void unfilter(byte[] pixels, int width, int height) {
+            int stride = width * BYTES_PER_PIXEL;
+            for (int row = 0; row < height; row++) {
+                int start = row * stride;
+                for (int i = start + BYTES_PER_PIXEL; i < start + stride; i++) {
+                    pixels[i] += pixels[i - BYTES_PER_PIXEL];
+                }
+            }
+        }
+
+        private static byte[] getBuffer(int size) {
+            byte[] buffer = sBuffer.get();
+            if (buffer != null && buffer.length >= size) {
+                return buffer;
+            }
+            buffer = new byte[size];
+            if (size <= MAX_CACHED_BUFFER_SIZE) {
+                sBuffer.set(buffer);
+            }
+            return buffer;
+        }
+
+        private static void writeInt(ByteArrayOutputStream out, int value) {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+
+        private static int readInt(byte[] data, int offset) {
+            return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                    | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.android.launcher3.MainThreadExecutor;
+import com.android.launcher3.util.LooperExecutor;
+import com.android.launcher3.util.Preconditions;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Applies the blurred outline effect to drag outlines on a background thread, and keeps the
+ * results so that dragging the same item again does not need to generate its outline.
+ *
+ * All the methods must be called on the main thread, and callbacks are delivered on it.
+ */
+public class DragOutlineRenderer {
+
+    // Enough for a few screens worth of icons and widgets, outlines only have an alpha channel
+    private static final int CACHE_SIZE_BYTES = 4 * 1024 * 1024;
+
+    private static DragOutlineRenderer sInstance;
+
+    private final HolographicOutlineHelper mOutlineHelper;
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainThreadExecutor = new MainThreadExecutor();
+
+    private final LruCache<OutlineKey, Bitmap> mCache =
+            new LruCache<OutlineKey, Bitmap>(CACHE_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(OutlineKey key, Bitmap value) {
+                    return value.getByteCount();
+                }
+            };
+
+    public static DragOutlineRenderer getInstance(Context context) {
+        Preconditions.assertUIThread();
+        if (sInstance == null) {
+            sInstance = new DragOutlineRenderer(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DragOutlineRenderer(Context context) {
+        mOutlineHelper = HolographicOutlineHelper.getInstance(context);
+        HandlerThread thread = new HandlerThread(
+                "launcher-drag-outline", Process.THREAD_PRIORITY_FOREGROUND);
+        thread.start();
+        mBackgroundExecutor = new LooperExecutor(thread.getLooper());
+    }
+
+    /**
+     * Returns the outline cached for {@param key}, or null.
+     */
+    public Bitmap getCachedOutline(@Nullable OutlineKey key) {
+        return key == null ? null : mCache.get(key);
+    }
+
+    /**
+     * Applies the outline effect to a copy of {@param shape} in the background. The shape itself
+     * is left untouched, so that it can be drawn as a placeholder meanwhile.
+     *
+     * @param key the key to cache the result under, or null to not cache it.
+     */
+    public void renderOutline(Bitmap shape, @Nullable final OutlineKey key,
+            final OutlineCallback callback) {
+        final Bitmap outline = shape.copy(Bitmap.Config.ALPHA_8, true);
+        mBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mOutlineHelper.applyExpensiveOutlineWithBlur(outline, new Canvas());
+                mMainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (key != null) {
+                            mCache.put(key, outline);
+                        }
+                        callback.onOutlineReady(outline);
+                    }
+                });
+            }
+        });
+    }
+
+    public void clearCache() {
+        mCache.evictAll();
+    }
+
+    public interface OutlineCallback {
+        void onOutlineReady(Bitmap outline);
+    }
+
+    /**
+     * Identifies the outline of an item drawn at a given size. The source is a value which
+     * changes whenever the appearance of the item changes, typically its icon bitmap. It must
+     * not reference a view, since the cache outlives the activity.
+     */
+    public static final class OutlineKey {
+        private final long mId;
+        private final int mWidth;
+        private final int mHeight;
+        private final Object mSource;
+
+        public OutlineKey(long id, int width, int height, Object source) {
+            mId = id;
+            mWidth = width;
+            mHeight = height;
+            mSource = source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OutlineKey)) {
+                return false;
+            }
+            OutlineKey other = (OutlineKey) o;
+            return mId == other.mId && mWidth == other.mWidth && mHeight == other.mHeight
+                    && mSource.equals(other.mSource);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((((int) (mId ^ (mId >>> 32))) * 31 + mWidth) * 31 + mHeight) * 31
+                    + mSource.hashCode();
+        }
+    }
+}
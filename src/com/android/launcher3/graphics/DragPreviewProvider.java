@@ -16,20 +16,26 @@
 
 package com.android.launcher3.graphics;
 
+import android.appwidget.AppWidgetProviderInfo;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.graphics.Region.Op;
 import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
 import android.view.View;
 
 import com.android.launcher3.BubbleTextView;
+import com.android.launcher3.FastBitmapDrawable;
+import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.LauncherAppWidgetHostView;
 import com.android.launcher3.R;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.folder.FolderIcon;
+import com.android.launcher3.graphics.DragOutlineRenderer.OutlineCallback;
+import com.android.launcher3.graphics.DragOutlineRenderer.OutlineKey;
 
 /**
  * A utility class to generate preview bitmap for dragging.
@@ -136,19 +142,72 @@ public class DragPreviewProvider {
         return b;
     }
 
-    public final void generateDragOutline(Canvas canvas) {
+    /**
+     * Sets {@link #generatedDragOutline} to the cached outline of {@link #mView} if there is one.
+     * Otherwise sets it to the plain shape of the view, and generates the outline in the
+     * background; {@param listener} is notified when it replaces the shape.
+     */
+    public final void generateDragOutline(Canvas canvas,
+            @Nullable final DragOutlineListener listener) {
         if (FeatureFlags.IS_DOGFOOD_BUILD && generatedDragOutline != null) {
             throw new RuntimeException("Drag outline generated twice");
         }
 
-        generatedDragOutline = createDragOutline(canvas);
+        DragOutlineRenderer renderer = DragOutlineRenderer.getInstance(mView.getContext());
+        OutlineKey key = getOutlineKey();
+        generatedDragOutline = renderer.getCachedOutline(key);
+        if (generatedDragOutline != null) {
+            return;
+        }
+
+        generatedDragOutline = createDragOutlineShape(canvas);
+        renderer.renderOutline(generatedDragOutline, key, new OutlineCallback() {
+            @Override
+            public void onOutlineReady(Bitmap outline) {
+                Bitmap placeholder = generatedDragOutline;
+                generatedDragOutline = outline;
+                if (listener != null) {
+                    listener.onDragOutlineUpdated(placeholder, outline);
+                }
+            }
+        });
     }
 
     /**
-     * Returns a new bitmap to be used as the object outline, e.g. to visualize the drop location.
-     * Responsibility for the bitmap is transferred to the caller.
+     * Returns the key under which the outline of {@link #mView} is cached, or null if it should
+     * not be cached.
      */
-    public Bitmap createDragOutline(Canvas canvas) {
+    protected OutlineKey getOutlineKey() {
+        if (!(mView.getTag() instanceof ItemInfo)) {
+            return null;
+        }
+        long id = ((ItemInfo) mView.getTag()).id;
+        if (id == ItemInfo.NO_ID) {
+            return null;
+        }
+        if (mView instanceof BubbleTextView) {
+            Drawable icon = ((BubbleTextView) mView).getIcon();
+            if (icon instanceof FastBitmapDrawable) {
+                return new OutlineKey(id, mView.getWidth(), mView.getHeight(),
+                        ((FastBitmapDrawable) icon).getBitmap());
+            }
+        } else if (mView instanceof LauncherAppWidgetHostView) {
+            LauncherAppWidgetHostView widget = (LauncherAppWidgetHostView) mView;
+            AppWidgetProviderInfo info = widget.getAppWidgetInfo();
+            if (info != null && info.provider != null) {
+                return new OutlineKey(id, mView.getWidth(), mView.getHeight(),
+                        info.provider.flattenToShortString() + "#" + widget.getViewsGeneration());
+            }
+        }
+        // The appearance of other views, like folders, can change without notice
+        return null;
+    }
+
+    /**
+     * Returns a new bitmap with the shape of the object, to which the outline effect is applied
+     * to visualize the drop location. Responsibility for the bitmap is transferred to the caller.
+     */
+    public Bitmap createDragOutlineShape(Canvas canvas) {
         float scale = 1f;
         int width = mView.getWidth();
         int height = mView.getHeight();
@@ -168,9 +227,6 @@ public class DragPreviewProvider {
         drawDragView(canvas);
         canvas.restore();
 
-        HolographicOutlineHelper.getInstance(mView.getContext())
-                .applyExpensiveOutlineWithBlur(b, canvas);
-
         canvas.setBitmap(null);
         return b;
     }
@@ -186,6 +242,13 @@ public class DragPreviewProvider {
         return bounds;
     }
 
+    /**
+     * Notified on the main thread when the generated outline replaces its placeholder.
+     */
+    public interface DragOutlineListener {
+        void onDragOutlineUpdated(Bitmap placeholder, Bitmap outline);
+    }
+
     public float getScaleAndPosition(Bitmap preview, int[] outPos) {
         float scale = Launcher.getLauncher(mView.getContext())
                 .getDragLayer().getLocationInDragLayer(mView, outPos);
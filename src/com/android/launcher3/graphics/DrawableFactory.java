@@ -32,6 +32,7 @@ import android.util.ArrayMap;
 import android.util.Log;
 import com.android.launcher3.FastBitmapDrawable;
 import com.android.launcher3.ItemInfo;
+import com.android.launcher3.ItemInfoWithIcon;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.allapps.AllAppsBackgroundDrawable;
@@ -65,7 +66,11 @@ public class DrawableFactory {
      * Returns a FastBitmapDrawable with the icon.
      */
     public FastBitmapDrawable newIcon(Bitmap icon, ItemInfo info) {
-        return new FastBitmapDrawable(icon);
+        FastBitmapDrawable drawable = new FastBitmapDrawable(icon);
+        if (info instanceof ItemInfoWithIcon && ((ItemInfoWithIcon) info).iconBitmap == icon) {
+            drawable.setIconColor(((ItemInfoWithIcon) info).iconColor);
+        }
+        return drawable;
     }
 
     /**
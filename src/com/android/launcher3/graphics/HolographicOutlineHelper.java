@@ -21,13 +21,11 @@ import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BlurMaskFilter;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
-import android.util.SparseArray;
 
 import com.android.launcher3.BubbleTextView;
 import com.android.launcher3.R;
@@ -43,9 +41,17 @@ public class HolographicOutlineHelper {
 
     private static HolographicOutlineHelper sInstance;
 
+    // Used on the main thread, guarded by this
     private final Canvas mCanvas = new Canvas();
-    private final Paint mDrawPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     private final Paint mBlurPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+
+    // Used by the methods called in the background, guarded by mBackgroundLock so that the main
+    // thread never waits for them
+    private final Object mBackgroundLock = new Object();
+    private final Canvas mBackgroundCanvas = new Canvas();
+    private final Paint mBackgroundBlurPaint =
+            new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final Paint mDrawPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     private final Paint mErasePaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
 
     private final BlurMaskFilter mMediumOuterBlurMaskFilter;
@@ -55,9 +61,6 @@ public class HolographicOutlineHelper {
     private final float mShadowBitmapShift;
     private final BlurMaskFilter mShadowBlurMaskFilter;
 
-    // We have 4 different icon sizes: homescreen, hotseat, folder & all-apps
-    private final SparseArray<Bitmap> mBitmapCache = new SparseArray<>(4);
-
     private HolographicOutlineHelper(Context context) {
         Resources res = context.getResources();
 
@@ -83,13 +86,18 @@ public class HolographicOutlineHelper {
 
     /**
      * Applies a more expensive and accurate outline to whatever is currently drawn in a specified
-     * bitmap.
+     * bitmap. This can be called from any thread.
      */
     public void applyExpensiveOutlineWithBlur(Bitmap srcDst, Canvas srcDstCanvas) {
         if (FeatureFlags.IS_DOGFOOD_BUILD && srcDst.getConfig() != Bitmap.Config.ALPHA_8) {
             throw new RuntimeException("Outline blue is only supported on alpha bitmaps");
         }
+        synchronized (mBackgroundLock) {
+            applyExpensiveOutlineWithBlurLocked(srcDst, srcDstCanvas);
+        }
+    }
 
+    private void applyExpensiveOutlineWithBlurLocked(Bitmap srcDst, Canvas srcDstCanvas) {
         // We start by removing most of the alpha channel so as to ignore shadows, and
         // other types of partial transparency when defining the shape of the object
         byte[] pixels = new byte[srcDst.getWidth() * srcDst.getHeight()];
@@ -107,20 +115,20 @@ public class HolographicOutlineHelper {
         srcDst.copyPixelsFromBuffer(buffer);
 
         // calculate the outer blur first
-        mBlurPaint.setMaskFilter(mMediumOuterBlurMaskFilter);
+        mBackgroundBlurPaint.setMaskFilter(mMediumOuterBlurMaskFilter);
         int[] outerBlurOffset = new int[2];
-        Bitmap thickOuterBlur = srcDst.extractAlpha(mBlurPaint, outerBlurOffset);
+        Bitmap thickOuterBlur = srcDst.extractAlpha(mBackgroundBlurPaint, outerBlurOffset);
 
-        mBlurPaint.setMaskFilter(mThinOuterBlurMaskFilter);
+        mBackgroundBlurPaint.setMaskFilter(mThinOuterBlurMaskFilter);
         int[] brightOutlineOffset = new int[2];
-        Bitmap brightOutline = srcDst.extractAlpha(mBlurPaint, brightOutlineOffset);
+        Bitmap brightOutline = srcDst.extractAlpha(mBackgroundBlurPaint, brightOutlineOffset);
 
         // calculate the inner blur
         srcDstCanvas.setBitmap(srcDst);
         srcDstCanvas.drawColor(0xFF000000, PorterDuff.Mode.SRC_OUT);
-        mBlurPaint.setMaskFilter(mMediumInnerBlurMaskFilter);
+        mBackgroundBlurPaint.setMaskFilter(mMediumInnerBlurMaskFilter);
         int[] thickInnerBlurOffset = new int[2];
-        Bitmap thickInnerBlur = srcDst.extractAlpha(mBlurPaint, thickInnerBlurOffset);
+        Bitmap thickInnerBlur = srcDst.extractAlpha(mBackgroundBlurPaint, thickInnerBlurOffset);
 
         // mask out the inner blur
         srcDstCanvas.setBitmap(thickInnerBlur);
@@ -150,7 +158,10 @@ public class HolographicOutlineHelper {
         thickInnerBlur.recycle();
     }
 
-    public Bitmap createMediumDropShadow(BubbleTextView view) {
+    /**
+     * Returns the shadow of the icon of {@param view}, at the view's current scale.
+     */
+    public synchronized Bitmap createMediumDropShadow(BubbleTextView view) {
         Drawable drawable = view.getIcon();
         if (drawable == null) {
             return null;
@@ -166,16 +177,9 @@ public class HolographicOutlineHelper {
             return null;
         }
 
-        int key = (bitmapWidth << 16) | bitmapHeight;
-        Bitmap cache = mBitmapCache.get(key);
-        if (cache == null) {
-            cache = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ALPHA_8);
-            mCanvas.setBitmap(cache);
-            mBitmapCache.put(key, cache);
-        } else {
-            mCanvas.setBitmap(cache);
-            mCanvas.drawColor(Color.BLACK, PorterDuff.Mode.CLEAR);
-        }
+        Bitmap cache = BitmapPool.getInstance().acquire(
+                bitmapWidth, bitmapHeight, Bitmap.Config.ALPHA_8);
+        mCanvas.setBitmap(cache);
 
         int saveCount = mCanvas.save();
         mCanvas.scale(scaleX, scaleY);
@@ -184,31 +188,40 @@ public class HolographicOutlineHelper {
         mCanvas.restoreToCount(saveCount);
         mCanvas.setBitmap(null);
 
-        mBlurPaint.setMaskFilter(mShadowBlurMaskFilter);
-
-        int extraSize = (int) (2 * mShadowBitmapShift);
+        return blurShadow(cache, mCanvas, mBlurPaint);
+    }
 
-        int resultWidth = bitmapWidth + extraSize;
-        int resultHeight = bitmapHeight + extraSize;
-        key = (resultWidth << 16) | resultHeight;
-        Bitmap result = mBitmapCache.get(key);
-        if (result == null) {
-            result = Bitmap.createBitmap(resultWidth, resultHeight, Bitmap.Config.ALPHA_8);
-            mCanvas.setBitmap(result);
-        } else {
-            // Use put instead of delete, to avoid unnecessary shrinking of cache array
-            mBitmapCache.put(key, null);
-            mCanvas.setBitmap(result);
-            mCanvas.drawColor(Color.BLACK, PorterDuff.Mode.CLEAR);
+    /**
+     * Returns the shadow of {@param icon} drawn at the given size. This can be called from any
+     * thread.
+     */
+    public Bitmap createMediumDropShadow(Bitmap icon, int width, int height) {
+        synchronized (mBackgroundLock) {
+            Bitmap cache = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ALPHA_8);
+            mBackgroundCanvas.setBitmap(cache);
+            mBackgroundCanvas.drawBitmap(icon, null, new Rect(0, 0, width, height), mDrawPaint);
+            mBackgroundCanvas.setBitmap(null);
+
+            return blurShadow(cache, mBackgroundCanvas, mBackgroundBlurPaint);
         }
-        mCanvas.drawBitmap(cache, mShadowBitmapShift, mShadowBitmapShift, mBlurPaint);
-        mCanvas.setBitmap(null);
-        return result;
     }
 
-    public void recycleShadowBitmap(Bitmap bitmap) {
-        if (bitmap != null) {
-            mBitmapCache.put((bitmap.getWidth() << 16) | bitmap.getHeight(), bitmap);
-        }
+    /**
+     * Returns the blurred shadow of the alpha bitmap, which is released to the pool.
+     */
+    private Bitmap blurShadow(Bitmap cache, Canvas canvas, Paint blurPaint) {
+        blurPaint.setMaskFilter(mShadowBlurMaskFilter);
+
+        int extraSize = (int) (2 * mShadowBitmapShift);
+
+        int resultWidth = cache.getWidth() + extraSize;
+        int resultHeight = cache.getHeight() + extraSize;
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap result = pool.acquire(resultWidth, resultHeight, Bitmap.Config.ALPHA_8);
+        canvas.setBitmap(result);
+        canvas.drawBitmap(cache, mShadowBitmapShift, mShadowBitmapShift, blurPaint);
+        canvas.setBitmap(null);
+        pool.release(cache);
+        return result;
     }
 }
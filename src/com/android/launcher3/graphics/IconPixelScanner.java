@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import com.android.launcher3.Utilities;
+
+/**
+ * Pixel checks on icons which scan the pixels row by row into reused buffers and stop at the
+ * first difference, instead of allocating bitmaps to compare against.
+ */
+public class IconPixelScanner {
+
+    // Number of pixels sampled on each axis for the fingerprint of the reference icon
+    private static final int FINGERPRINT_GRID_SIZE = 4;
+
+    private static final ThreadLocal<int[]> sRowBuffer = new ThreadLocal<>();
+
+    /**
+     * Returns true if every pixel of the bitmap is fully transparent.
+     */
+    public static boolean isEmpty(Bitmap bitmap) {
+        if (Utilities.ATLEAST_OREO && bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            // The pixels can't be read
+            return false;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] row = getRowBuffer(width);
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                if (Color.alpha(row[x]) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[] getRowBuffer(int width) {
+        int[] row = sRowBuffer.get();
+        if (row == null || row.length < width) {
+            row = new int[width];
+            sRowBuffer.set(row);
+        }
+        return row;
+    }
+
+    /**
+     * Checks whether drawables look the same as a reference icon. Drawables which are not
+     * bitmaps are drawn into a bitmap kept between calls, and drawables with a different size
+     * than the reference don't match without being drawn.
+     */
+    public static class IconMatcher {
+
+        private final Drawable.ConstantState mReferenceState;
+        private final Bitmap mReference;
+        private final int mWidth;
+        private final int mHeight;
+        // Pixels of the reference at the points of a grid, to reject most icons quickly
+        private final int[] mFingerprint;
+
+        private final int[] mRow;
+        private final int[] mReferenceRow;
+        private final Canvas mCanvas = new Canvas();
+        private Bitmap mScratch;
+
+        public IconMatcher(Drawable reference) {
+            mReferenceState = reference.getConstantState();
+            mReference = toBitmap(reference);
+            mWidth = mReference.getWidth();
+            mHeight = mReference.getHeight();
+            mRow = new int[mWidth];
+            mReferenceRow = new int[mWidth];
+            mFingerprint = new int[FINGERPRINT_GRID_SIZE * FINGERPRINT_GRID_SIZE];
+            readFingerprint(mReference, mFingerprint);
+        }
+
+        public synchronized boolean matches(Drawable drawable) {
+            Drawable.ConstantState state = drawable.getConstantState();
+            if (state != null && state.equals(mReferenceState)) {
+                return true;
+            }
+            Bitmap bitmap;
+            if (drawable instanceof BitmapDrawable) {
+                bitmap = ((BitmapDrawable) drawable).getBitmap();
+                if (bitmap == mReference) {
+                    return true;
+                }
+                if (bitmap == null || bitmap.getWidth() != mWidth
+                        || bitmap.getHeight() != mHeight
+                        || (Utilities.ATLEAST_OREO
+                                && bitmap.getConfig() == Bitmap.Config.HARDWARE)) {
+                    return false;
+                }
+            } else {
+                if (getIntrinsicSize(drawable.getIntrinsicWidth()) != mWidth
+                        || getIntrinsicSize(drawable.getIntrinsicHeight()) != mHeight) {
+                    return false;
+                }
+                if (mScratch == null) {
+                    mScratch = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+                } else {
+                    mScratch.eraseColor(Color.TRANSPARENT);
+                }
+                mCanvas.setBitmap(mScratch);
+                drawable.setBounds(0, 0, mWidth, mHeight);
+                drawable.draw(mCanvas);
+                mCanvas.setBitmap(null);
+                bitmap = mScratch;
+            }
+
+            int step = 0;
+            for (int i = 0; i < FINGERPRINT_GRID_SIZE; i++) {
+                for (int j = 0; j < FINGERPRINT_GRID_SIZE; j++) {
+                    if (bitmap.getPixel(getGridPoint(j, mWidth), getGridPoint(i, mHeight))
+                            != mFingerprint[step++]) {
+                        return false;
+                    }
+                }
+            }
+            for (int y = 0; y < mHeight; y++) {
+                bitmap.getPixels(mRow, 0, mWidth, 0, y, mWidth, 1);
+                mReference.getPixels(mReferenceRow, 0, mWidth, 0, y, mWidth, 1);
+                for (int x = 0; x < mWidth; x++) {
+                    if (mRow[x] != mReferenceRow[x]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static void readFingerprint(Bitmap bitmap, int[] out) {
+            int step = 0;
+            for (int i = 0; i < FINGERPRINT_GRID_SIZE; i++) {
+                for (int j = 0; j < FINGERPRINT_GRID_SIZE; j++) {
+                    out[step++] = bitmap.getPixel(getGridPoint(j, bitmap.getWidth()),
+                            getGridPoint(i, bitmap.getHeight()));
+                }
+            }
+        }
+
+        /**
+         * Returns the coordinate of the point {@param index} of the grid along a side of the
+         * given size, the points being centered in equal cells.
+         */
+        private static int getGridPoint(int index, int size) {
+            return (2 * index + 1) * size / (2 * FINGERPRINT_GRID_SIZE);
+        }
+
+        // Some drawables have no intrinsic size - e.g. solid colours.
+        private static int getIntrinsicSize(int size) {
+            return size <= 0 ? 1 : size;
+        }
+
+        private static Bitmap toBitmap(Drawable drawable) {
+            if (drawable instanceof BitmapDrawable) {
+                Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+                if (bitmap != null && !(Utilities.ATLEAST_OREO
+                        && bitmap.getConfig() == Bitmap.Config.HARDWARE)) {
+                    return bitmap;
+                }
+            }
+            int width = getIntrinsicSize(drawable.getIntrinsicWidth());
+            int height = getIntrinsicSize(drawable.getIntrinsicHeight());
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            drawable.setBounds(0, 0, width, height);
+            drawable.draw(canvas);
+            canvas.setBitmap(null);
+            return bitmap;
+        }
+    }
+}
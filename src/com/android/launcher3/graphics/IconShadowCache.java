@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import com.android.launcher3.BubbleTextView;
+import com.android.launcher3.FastBitmapDrawable;
+import com.android.launcher3.MainThreadExecutor;
+import com.android.launcher3.Utilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Cache of the shadows drawn behind pressed icons, keyed by icon bitmap and size. Shadows of
+ * bitmap icons are generated in the background the first time the icon is pressed, so that
+ * the blur never runs on the input path. Shadows of other icons are not cached.
+ *
+ * Shadows are shared between views and are never recycled. Apart from {@link #getInstance}, all
+ * the methods must be called on the main thread, and callbacks are delivered on it.
+ */
+public class IconShadowCache {
+
+    private static final int CACHE_SIZE_BYTES = 2 * 1024 * 1024;
+
+    private static IconShadowCache sInstance;
+
+    private final HolographicOutlineHelper mOutlineHelper;
+    private final Executor mMainThreadExecutor = new MainThreadExecutor();
+
+    private final LruCache<ShadowKey, Bitmap> mCache =
+            new LruCache<ShadowKey, Bitmap>(CACHE_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(ShadowKey key, Bitmap value) {
+                    return value.getByteCount();
+                }
+            };
+    // Callbacks waiting for a shadow being generated
+    private final HashMap<ShadowKey, ArrayList<Runnable>> mPending = new HashMap<>();
+
+    public static synchronized IconShadowCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new IconShadowCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private IconShadowCache(Context context) {
+        mOutlineHelper = HolographicOutlineHelper.getInstance(context);
+    }
+
+    /**
+     * Returns the shadow of the icon of {@param view} at its current scale, or null if there is
+     * no icon. If the icon is a bitmap whose shadow is not generated yet, this also returns null
+     * and generates it in the background, then runs {@param onShadowReady}.
+     */
+    public Bitmap getShadow(BubbleTextView view, @Nullable Runnable onShadowReady) {
+        Drawable drawable = view.getIcon();
+        if (drawable == null) {
+            return null;
+        }
+        Rect rect = drawable.getBounds();
+        final int width = (int) (rect.width() * view.getScaleX());
+        final int height = (int) (rect.height() * view.getScaleY());
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        if (!(drawable instanceof FastBitmapDrawable)) {
+            // Other drawables can't be drawn off the main thread, and are not cached since they
+            // can reference the view
+            return mOutlineHelper.createMediumDropShadow(view);
+        }
+
+        final Bitmap icon = ((FastBitmapDrawable) drawable).getBitmap();
+        final ShadowKey key = new ShadowKey(icon, width, height);
+        Bitmap shadow = mCache.get(key);
+        if (shadow != null) {
+            return shadow;
+        }
+
+        ArrayList<Runnable> callbacks = mPending.get(key);
+        if (callbacks == null) {
+            callbacks = new ArrayList<>();
+            mPending.put(key, callbacks);
+            Utilities.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Bitmap result =
+                            mOutlineHelper.createMediumDropShadow(icon, width, height);
+                    mMainThreadExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            mCache.put(key, result);
+                            for (Runnable callback : mPending.remove(key)) {
+                                callback.run();
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        if (onShadowReady != null) {
+            callbacks.add(onShadowReady);
+        }
+        return null;
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    private static final class ShadowKey {
+        private final Bitmap mSource;
+        private final int mWidth;
+        private final int mHeight;
+
+        ShadowKey(Bitmap source, int width, int height) {
+            mSource = source;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ShadowKey)) {
+                return false;
+            }
+            ShadowKey other = (ShadowKey) o;
+            return mSource == other.mSource && mWidth == other.mWidth && mHeight == other.mHeight;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(mSource) * 31 + mWidth) * 31 + mHeight;
+        }
+    }
+}
@@ -126,7 +126,7 @@ public class LauncherIcons {
         Bitmap bitmap = createIconBitmap(icon, context, scale);
         if (FeatureFlags.ADAPTIVE_ICON_SHADOW && Utilities.ATLEAST_OREO &&
                 icon instanceof AdaptiveIconDrawable) {
-            bitmap = ShadowGenerator.getInstance(context).recreateIcon(bitmap);
+            bitmap = addShadowAndRelease(bitmap, context);
         }
         return badgeIconForUser(bitmap, user, context);
     }
@@ -229,11 +229,21 @@ public class LauncherIcons {
         Bitmap bitmap =  createIconBitmap(icon, context, scale);
         if (FeatureFlags.ADAPTIVE_ICON_SHADOW && Utilities.ATLEAST_OREO &&
                 icon instanceof AdaptiveIconDrawable) {
-            bitmap = ShadowGenerator.getInstance(context).recreateIcon(bitmap);
+            bitmap = addShadowAndRelease(bitmap, context);
         }
         return bitmap;
     }
 
+    /**
+     * Returns a copy of {@param icon} with a shadow, and returns {@param icon} to the
+     * {@link BitmapPool} as it is not referenced anywhere else.
+     */
+    private static Bitmap addShadowAndRelease(Bitmap icon, Context context) {
+        Bitmap result = ShadowGenerator.getInstance(context).recreateIcon(icon);
+        BitmapPool.getInstance().release(icon);
+        return result;
+    }
+
     /**
      * @param scale the scale to apply before drawing {@param icon} on the canvas
      */
@@ -271,7 +281,7 @@ public class LauncherIcons {
             int textureWidth = iconBitmapSize;
             int textureHeight = iconBitmapSize;
 
-            Bitmap bitmap = Bitmap.createBitmap(textureWidth, textureHeight,
+            Bitmap bitmap = BitmapPool.getInstance().acquire(textureWidth, textureHeight,
                     Bitmap.Config.ARGB_8888);
             final Canvas canvas = sCanvas;
             canvas.setBitmap(bitmap);
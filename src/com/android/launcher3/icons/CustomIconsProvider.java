@@ -18,14 +18,12 @@ package com.android.launcher3.icons;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.LauncherActivityInfo;
 import android.content.pm.LauncherApps;
 import android.content.pm.PackageManager;
-import android.content.res.AssetManager;
 import android.content.res.Resources;
-import android.content.res.XmlResourceParser;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.drawable.AdaptiveIconDrawable;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
@@ -38,11 +36,13 @@ import com.android.launcher3.IconProvider;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.R;
+import com.android.launcher3.SettingsActivity;
 import com.android.launcher3.ShortcutInfo;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.compat.AdaptiveIconDrawableCompat;
 import com.android.launcher3.compat.FixedScaleDrawableCompat;
 import com.android.launcher3.graphics.IconNormalizer;
+import com.android.launcher3.graphics.IconPixelScanner;
 import com.android.launcher3.graphics.IconShapeOverride;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.util.DrawableHack;
@@ -50,17 +50,24 @@ import com.android.launcher3.util.ResourceHack;
 
 import org.xmlpull.v1.XmlPullParser;
 
-public class CustomIconsProvider extends IconProvider {
+public class CustomIconsProvider extends IconProvider
+        implements SharedPreferences.OnSharedPreferenceChangeListener {
     private static final boolean flag_bypass_roundicons = false;
 
     private Context mContext;
     private IconsHandler mHandler;
+    private ManifestIconIndex mIconIndex;
+    // Settings used to render icons, read again on the next icon after an update of the cache
+    private volatile IconRenderConfig mConfig;
     private boolean existsAdaptive = false;
 
     public CustomIconsProvider(Context context) {
         super();
         mContext = context;
         mHandler = IconCache.getIconsHandler(context);
+        mIconIndex = ManifestIconIndex.getInstance(context);
+        Utilities.getPrefs(context).registerOnSharedPreferenceChangeListener(this);
+        Utilities.getDevicePrefs(context).registerOnSharedPreferenceChangeListener(this);
 
         try {
             Class.forName( "android.graphics.drawable.AdaptiveIconDrawable");
@@ -68,98 +75,63 @@ public class CustomIconsProvider extends IconProvider {
         } catch( ClassNotFoundException e ) {}
     }
 
-    public static Drawable defaultIcon = null;
-    public static Drawable.ConstantState defaultIconConstantState = null;
-    public static Bitmap defaultIconBitmap = null;
-    public static boolean isIconDefault(Drawable drawableA) {
-        Drawable.ConstantState stateA = drawableA.getConstantState();
-        if (defaultIcon==null) defaultIcon = LauncherAppState.getInstanceNoCreate().getContext().getPackageManager().getDefaultActivityIcon();
-        if (defaultIconConstantState==null) defaultIconConstantState = defaultIcon.getConstantState();
-        return (stateA != null && defaultIconConstantState != null && stateA.equals(defaultIconConstantState))
-                || getBitmap(drawableA).sameAs((defaultIconBitmap!=null)?defaultIconBitmap:(defaultIconBitmap=getBitmap(defaultIcon)));
+    @Override
+    public void updateSystemStateString() {
+        super.updateSystemStateString();
+        mConfig = null;
     }
 
-    public static Bitmap getBitmap(Drawable drawable) {
-        Bitmap result;
-        if (drawable instanceof BitmapDrawable) {
-            result = ((BitmapDrawable) drawable).getBitmap();
-        } else {
-            int width = drawable.getIntrinsicWidth();
-            int height = drawable.getIntrinsicHeight();
-            // Some drawables have no intrinsic width - e.g. solid colours.
-            if (width <= 0) {
-                width = 1;
-            }
-            if (height <= 0) {
-                height = 1;
-            }
+    @Override
+    public String getIconSystemState(String packageName) {
+        // Icons rendered with different settings are replaced on the next icon cache update
+        return super.getIconSystemState(packageName) + "," + getConfig().hash;
+    }
 
-            result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(result);
-            drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-            drawable.draw(canvas);
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+        if (key == null) {
+            return;
+        }
+        switch (key) {
+            case SettingsActivity.KEY_ICON_PACK:
+            case SettingsActivity.KEY_ADAPTIVE_ICONS:
+            case SettingsActivity.KEY_THEME_BUILTIN_ICONS:
+            case IconShapeOverride.KEY_PREFERENCE:
+                mConfig = null;
+                break;
         }
-        return result;
     }
 
-    private int inflateIconId(Resources resourcesForApplication, String activityName, boolean roundIcon, boolean[] roundIconFlag) {
-        int resId = 0;
-        int resIdGlobal = 0;
-        roundIconFlag[0] = false;
-        boolean roundIconFlagActivity = false;
-        boolean roundIconFlagApplication = false;
-        String activityString;
-        AssetManager assets = resourcesForApplication.getAssets();
-        try (XmlResourceParser parseXml = assets.openXmlResourceParser("AndroidManifest.xml")) {
-            String attribute = null;
-            int eventType;
-            while ((eventType = parseXml.nextToken()) != XmlPullParser.END_DOCUMENT) {
-                boolean activityFound = false;
-                String tagName = parseXml.getName();
-                if (activityName!=null && !activityName.isEmpty() && eventType == XmlPullParser.START_TAG && tagName.equals("activity"))
-                    for (int i = 0; i < parseXml.getAttributeCount(); i++) {
-                        attribute = parseXml.getAttributeName(i);
-                        if (attribute.equals("name")) {
-                            activityString = parseXml.getAttributeValue(i);
-                            if (activityString!=null && !activityString.isEmpty() && activityName.endsWith(activityString)) activityFound = true;
-                            else activityFound = false;
-                        }
-                        else if ((!roundIcon || resId == 0) && attribute.equals("icon")) {
-                            resId = Integer.parseInt(parseXml.getAttributeValue(i).substring(1));
-                            roundIconFlagActivity=false;
-                        }
-                        else if (roundIcon && attribute.equals("roundIcon")) {
-                            resId = Integer.parseInt(parseXml.getAttributeValue(i).substring(1));
-                            roundIconFlagActivity=true;
-                        }
-                    }
-                else if (eventType == XmlPullParser.START_TAG && tagName.equals("application"))
-                    for (int i = 0; i < parseXml.getAttributeCount(); i++) {
-                        attribute = parseXml.getAttributeName(i);
-                        if ((!roundIcon || resIdGlobal == 0) && attribute.equals("icon")) {
-                            resIdGlobal = Integer.parseInt(parseXml.getAttributeValue(i).substring(1));
-                            roundIconFlagApplication=false;
-                        }
-                        else if (roundIcon && attribute.equals("roundIcon")) {
-                            resIdGlobal = Integer.parseInt(parseXml.getAttributeValue(i).substring(1));
-                            roundIconFlagApplication=true;
-                            break;
-                        }
-                    }
-                if (resId!=0 && activityFound) break;
-                else if (resId!=0 && !activityFound) resId=0;
-            }
-        } catch (Exception ex) {
-            android.util.Log.e("CustomIconsProvider", "Error parsing xml", ex);
+    private IconRenderConfig getConfig() {
+        IconRenderConfig config = mConfig;
+        if (config == null) {
+            config = IconRenderConfig.capture(mContext);
+            mConfig = config;
         }
-        roundIconFlag[0] = roundIconFlagActivity;
-        if (resId==0) {resId=resIdGlobal; roundIconFlag[0]=roundIconFlagApplication;}
-        if (resId==0) roundIconFlag[0]=false;
-        return resId;
+        return config;
     }
 
-    private int inflateIconId(Resources resourcesForApplication, String activityName, boolean roundIcon) {
-        return inflateIconId(resourcesForApplication, activityName, roundIcon, new boolean[1]);
+    private static IconPixelScanner.IconMatcher sDefaultIconMatcher;
+
+    public static boolean isIconDefault(Drawable drawableA) {
+        return getDefaultIconMatcher().matches(drawableA);
+    }
+
+    private static synchronized IconPixelScanner.IconMatcher getDefaultIconMatcher() {
+        if (sDefaultIconMatcher == null) {
+            sDefaultIconMatcher = new IconPixelScanner.IconMatcher(LauncherAppState
+                    .getInstanceNoCreate().getContext().getPackageManager()
+                    .getDefaultActivityIcon());
+        }
+        return sDefaultIconMatcher;
+    }
+
+    private int inflateIconId(Resources resourcesForApplication, String packageName, String activityName, boolean roundIcon, boolean[] roundIconFlag) {
+        return mIconIndex.getIconId(resourcesForApplication, packageName, activityName, roundIcon, roundIconFlag);
+    }
+
+    private int inflateIconId(Resources resourcesForApplication, String packageName, String activityName, boolean roundIcon) {
+        return inflateIconId(resourcesForApplication, packageName, activityName, roundIcon, new boolean[1]);
     }
 
     public Drawable getLegacyIcon(LauncherActivityInfo info, int iconDpi) {
@@ -172,7 +144,7 @@ public class CustomIconsProvider extends IconProvider {
             mPackageManager = mContext.getPackageManager();
             resourcesForApplication = mPackageManager.getResourcesForApplication(packageName);
 
-            int resId = inflateIconId(resourcesForApplication, activityName, false);
+            int resId = inflateIconId(resourcesForApplication, packageName, activityName, false);
             if (resId!=0) {
                 resourcesForApplication = ResourceHack.setResSdk(resourcesForApplication, 25);
                 return resourcesForApplication.getDrawableForDensity(resId, iconDpi);
@@ -198,8 +170,12 @@ public class CustomIconsProvider extends IconProvider {
     }
 
     public Drawable getRoundIconBackport(String packageName, String activityName, int iconDpi) {
-        boolean isBypassingBuiltin = Utilities.isBuiltinAdaptiveIconBypassed(mContext);
-        boolean isBypassingOEMTheme = Utilities.isBuiltinThemeBypassed(mContext);
+        return getRoundIconBackport(packageName, activityName, iconDpi, getConfig());
+    }
+
+    private Drawable getRoundIconBackport(String packageName, String activityName, int iconDpi, IconRenderConfig config) {
+        boolean isBypassingBuiltin = config.builtinAdaptiveIconBypassed;
+        boolean isBypassingOEMTheme = config.builtinThemeBypassed;
         boolean[] roundIconFlag = new boolean[] {false};
         Drawable legacyIcon = null;
         PackageManager mPackageManager = mContext.getPackageManager();
@@ -207,7 +183,7 @@ public class CustomIconsProvider extends IconProvider {
         try {resourcesForApplication = mPackageManager.getResourcesForApplication(packageName);}
         catch (PackageManager.NameNotFoundException e) {return null;}
 
-        int resId = inflateIconId(resourcesForApplication, activityName, true, roundIconFlag);
+        int resId = inflateIconId(resourcesForApplication, packageName, activityName, true, roundIconFlag);
 
         if (resId!=0) try {
             if (!Utilities.ATLEAST_OREO) resourcesForApplication = ResourceHack.setResSdk(resourcesForApplication, 26);
@@ -284,7 +260,11 @@ public class CustomIconsProvider extends IconProvider {
     }
 
     public Drawable wrapToAdaptiveIconBackport(Drawable drawable) {
-        if ((Utilities.ATLEAST_OREO && !Utilities.isBuiltinAdaptiveIconBypassed(mContext)) || !(Utilities.isAdaptiveIconForced(mContext))) {
+        return wrapToAdaptiveIconBackport(drawable, getConfig());
+    }
+
+    private Drawable wrapToAdaptiveIconBackport(Drawable drawable, IconRenderConfig config) {
+        if ((Utilities.ATLEAST_OREO && !config.builtinAdaptiveIconBypassed) || !config.adaptiveIconForced) {
             return drawable;
         }
 
@@ -307,35 +287,36 @@ public class CustomIconsProvider extends IconProvider {
 
     @Override
     public Drawable getIcon(LauncherActivityInfo info, int iconDpi, boolean flattenDrawable) {
-        boolean isBuiltinThemeBypassed = Utilities.isBuiltinThemeBypassed(mContext);
+        IconRenderConfig config = getConfig();
+        boolean isBuiltinThemeBypassed = config.builtinThemeBypassed;
         Drawable portedIcon = null;
         Drawable adaptiveBypassIcon = null;
 
-        if (Utilities.ATLEAST_OREO && IconShapeOverride.isSupported(mContext) && Utilities.isAdaptiveIconDisabled(mContext))
+        if (Utilities.ATLEAST_OREO && config.shapeOverrideSupported && config.adaptiveIconDisabled)
             portedIcon = getLegacyIcon(info, iconDpi);
-        if (((Utilities.ATLEAST_OREO && !IconShapeOverride.isSupported(mContext)) || (!Utilities.ATLEAST_OREO)) && !Utilities.isAdaptiveIconDisabled(mContext))
-            portedIcon = getRoundIconBackport(info.getComponentName().getPackageName(), info.getName(), iconDpi);
+        if (((Utilities.ATLEAST_OREO && !config.shapeOverrideSupported) || (!Utilities.ATLEAST_OREO)) && !config.adaptiveIconDisabled)
+            portedIcon = getRoundIconBackport(info.getComponentName().getPackageName(), info.getName(), iconDpi, config);
 
-        if (Utilities.isUsingIconPack(mContext)) {
+        if (config.usingIconPack) {
             final Bitmap bm = mHandler.getThemedDrawableIconForPackage(info.getComponentName());
-            if (bm != null && !bm.sameAs(Bitmap.createBitmap(bm.getWidth(), bm.getHeight(), bm.getConfig())))
-                return wrapToAdaptiveIconBackport(new BitmapDrawable(mContext.getResources(), bm));
+            if (bm != null && !IconPixelScanner.isEmpty(bm))
+                return wrapToAdaptiveIconBackport(new BitmapDrawable(mContext.getResources(), bm), config);
         }
 
-        if (portedIcon!=null && (isBuiltinThemeBypassed || !Utilities.ATLEAST_OREO)) return wrapToAdaptiveIconBackport(portedIcon);
-        if (Utilities.ATLEAST_OREO && Utilities.isBuiltinAdaptiveIconBypassed(mContext))
-            adaptiveBypassIcon = getRoundIconBackport(info.getComponentName().getPackageName(), info.getName(), iconDpi);
-        if (adaptiveBypassIcon!=null) return wrapToAdaptiveIconBackport(adaptiveBypassIcon);
-        if (isBuiltinThemeBypassed) return wrapToAdaptiveIconBackport(info.getIcon(iconDpi));
+        if (portedIcon!=null && (isBuiltinThemeBypassed || !Utilities.ATLEAST_OREO)) return wrapToAdaptiveIconBackport(portedIcon, config);
+        if (Utilities.ATLEAST_OREO && config.builtinAdaptiveIconBypassed)
+            adaptiveBypassIcon = getRoundIconBackport(info.getComponentName().getPackageName(), info.getName(), iconDpi, config);
+        if (adaptiveBypassIcon!=null) return wrapToAdaptiveIconBackport(adaptiveBypassIcon, config);
+        if (isBuiltinThemeBypassed) return wrapToAdaptiveIconBackport(info.getIcon(iconDpi), config);
 
         Drawable icon = null;
         try {
             icon = mContext.getPackageManager().getActivityIcon(info.getComponentName());
-            if (icon!=null && (portedIcon==null || !isIconDefault(icon))) return wrapToAdaptiveIconBackport(icon);
+            if (icon!=null && (portedIcon==null || !isIconDefault(icon))) return wrapToAdaptiveIconBackport(icon, config);
         }
         catch (Exception e) {}
         icon = mContext.getPackageManager().getApplicationIcon(info.getApplicationInfo());
-        if (icon!=null && (portedIcon==null || !isIconDefault(icon))) return wrapToAdaptiveIconBackport(icon);
-        return wrapToAdaptiveIconBackport(portedIcon!=null?portedIcon:info.getIcon(iconDpi));
+        if (icon!=null && (portedIcon==null || !isIconDefault(icon))) return wrapToAdaptiveIconBackport(icon, config);
+        return wrapToAdaptiveIconBackport(portedIcon!=null?portedIcon:info.getIcon(iconDpi), config);
     }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.icons;
+
+import android.content.Context;
+
+import com.android.launcher3.LauncherAppState;
+import com.android.launcher3.R;
+import com.android.launcher3.SettingsActivity;
+import com.android.launcher3.Utilities;
+import com.android.launcher3.graphics.IconShapeOverride;
+
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the settings which affect how {@link CustomIconsProvider} renders icons,
+ * so that they are read once per icon cache update instead of once per icon.
+ */
+public final class IconRenderConfig {
+
+    public final String iconPack;
+    public final boolean usingIconPack;
+    public final boolean adaptiveIconDisabled;
+    public final boolean adaptiveIconForced;
+    public final boolean builtinAdaptiveIconBypassed;
+    public final boolean builtinThemeBypassed;
+    public final boolean shapeOverrideSupported;
+    public final String iconShape;
+    public final int iconDpi;
+
+    /**
+     * Hash of all the settings, which is the same in every process for the same settings.
+     */
+    public final String hash;
+
+    private IconRenderConfig(Context context) {
+        iconPack = Utilities.getPrefs(context).getString(SettingsActivity.KEY_ICON_PACK,
+                context.getString(R.string.icon_pack_default));
+        usingIconPack = Utilities.isUsingIconPack(context);
+        adaptiveIconDisabled = Utilities.isAdaptiveIconDisabled(context);
+        adaptiveIconForced = Utilities.isAdaptiveIconForced(context);
+        builtinAdaptiveIconBypassed = Utilities.isBuiltinAdaptiveIconBypassed(context);
+        builtinThemeBypassed = Utilities.isBuiltinThemeBypassed(context);
+        shapeOverrideSupported = IconShapeOverride.isSupported(context);
+        iconShape = Utilities.getDevicePrefs(context).getString(IconShapeOverride.KEY_PREFERENCE,
+                context.getString(R.string.icon_shape_default));
+        iconDpi = LauncherAppState.getIDP(context).fillResIconDpi;
+
+        hash = Integer.toHexString(Arrays.hashCode(new Object[] {
+                iconPack, usingIconPack, adaptiveIconDisabled, adaptiveIconForced,
+                builtinAdaptiveIconBypassed, builtinThemeBypassed, shapeOverrideSupported,
+                iconShape, iconDpi}));
+    }
+
+    /**
+     * Reads the current settings.
+     */
+    public static IconRenderConfig capture(Context context) {
+        return new IconRenderConfig(context.getApplicationContext());
+    }
+}
@@ -34,6 +34,7 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
@@ -56,6 +57,7 @@ import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.SettingsActivity;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.graphics.BitmapPool;
 import com.android.launcher3.graphics.LauncherIcons;
 
 import org.xmlpull.v1.XmlPullParser;
@@ -409,23 +411,29 @@ public class IconsHandler {
         int w = backImage.getWidth();
         int h = backImage.getHeight();
 
-        Bitmap result = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap result = pool.acquire(w, h, Bitmap.Config.ARGB_8888);
         Canvas canvas = new Canvas(result);
         canvas.drawBitmap(backImage, 0, 0, null);
 
-        Bitmap scaledBitmap = Bitmap.createScaledBitmap(defaultBitmap,
-                (int) (w * mFactor), (int) (h * mFactor), false);
+        // Draw the icon scaled into the center, without allocating a scaled copy
+        int scaledWidth = (int) (w * mFactor);
+        int scaledHeight = (int) (h * mFactor);
+        int left = (w - scaledWidth) / 2;
+        int top = (h - scaledHeight) / 2;
+        Rect scaledBounds = new Rect(left, top, left + scaledWidth, top + scaledHeight);
 
-        Bitmap mutableMask = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        Bitmap mutableMask = pool.acquire(w, h, Bitmap.Config.ARGB_8888);
         Canvas maskCanvas = new Canvas(mutableMask);
         Bitmap targetBitmap = mMaskImage == null ? mutableMask : mMaskImage;
         maskCanvas.drawBitmap(targetBitmap, 0, 0, new Paint());
 
         Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
-        canvas.drawBitmap(scaledBitmap, (w - scaledBitmap.getWidth()) / 2,
-                (h - scaledBitmap.getHeight()) / 2, null);
+        canvas.drawBitmap(defaultBitmap, null, scaledBounds, null);
         canvas.drawBitmap(mutableMask, 0, 0, paint);
+        maskCanvas.setBitmap(null);
+        pool.release(mutableMask);
 
         if (mFrontImage != null) {
             canvas.drawBitmap(mFrontImage, 0, 0, null);
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.icons;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.android.launcher3.LauncherFiles;
+import com.android.launcher3.util.SQLiteCacheHelper;
+
+import org.xmlpull.v1.XmlPullParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Index of the icon and round icon resource ids declared in package manifests, so that finding
+ * the icon of an activity does not parse the manifest of its package every time.
+ *
+ * A manifest is parsed once for all its activities. The result is kept in memory, and persisted
+ * with the last update time of the package so that it is only parsed again after an update.
+ */
+public class ManifestIconIndex {
+
+    private static final String TAG = "ManifestIconIndex";
+
+    private static ManifestIconIndex sInstance;
+
+    private final PackageManager mPackageManager;
+    private final ManifestIconDB mDb;
+    private final HashMap<String, PackageIcons> mPackages = new HashMap<>();
+
+    public static synchronized ManifestIconIndex getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ManifestIconIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ManifestIconIndex(Context context) {
+        mPackageManager = context.getPackageManager();
+        mDb = new ManifestIconDB(context);
+    }
+
+    /**
+     * Returns the icon declared for {@param activityName}, or the application icon if the
+     * activity does not declare one, or 0 if neither is declared.
+     *
+     * @param res the resources of the package
+     * @param roundIcon true to return the round icon when one is declared
+     * @param outRoundIcon set to whether the returned icon is a round icon
+     */
+    public synchronized int getIconId(Resources res, String packageName, String activityName,
+            boolean roundIcon, boolean[] outRoundIcon) {
+        PackageIcons icons = mPackages.get(packageName);
+        if (icons == null) {
+            long lastUpdateTime = getLastUpdateTime(packageName);
+            icons = loadFromDb(packageName, lastUpdateTime);
+            if (icons == null) {
+                icons = parseManifest(res);
+                if (icons.complete && lastUpdateTime != 0) {
+                    saveToDb(packageName, lastUpdateTime, icons);
+                }
+            }
+            mPackages.put(packageName, icons);
+        }
+        return icons.getIconId(activityName, roundIcon, outRoundIcon);
+    }
+
+    /**
+     * Removes the entries of a package which was updated or removed.
+     */
+    public synchronized void invalidate(String packageName) {
+        mPackages.remove(packageName);
+        mDb.delete(ManifestIconDB.COLUMN_PACKAGE + " = ?", new String[] {packageName});
+    }
+
+    private long getLastUpdateTime(String packageName) {
+        try {
+            return mPackageManager.getPackageInfo(packageName,
+                    PackageManager.GET_UNINSTALLED_PACKAGES).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private PackageIcons loadFromDb(String packageName, long lastUpdateTime) {
+        if (lastUpdateTime == 0) {
+            return null;
+        }
+        Cursor c = null;
+        try {
+            c = mDb.query(new String[] {
+                    ManifestIconDB.COLUMN_POSITION,
+                    ManifestIconDB.COLUMN_ACTIVITY,
+                    ManifestIconDB.COLUMN_ICON,
+                    ManifestIconDB.COLUMN_ROUND_ICON,
+                    ManifestIconDB.COLUMN_LAST_UPDATED},
+                    ManifestIconDB.COLUMN_PACKAGE + " = ?", new String[] {packageName});
+            if (c.getCount() == 0) {
+                return null;
+            }
+            PackageIcons icons = new PackageIcons();
+            ActivityIcons[] activities = new ActivityIcons[c.getCount() - 1];
+            while (c.moveToNext()) {
+                if (c.getLong(4) != lastUpdateTime) {
+                    return null;
+                }
+                int position = c.getInt(0);
+                if (position == ManifestIconDB.POSITION_APPLICATION) {
+                    icons.appIcon = c.getInt(2);
+                    icons.appRoundIcon = c.getInt(3);
+                } else if (position >= 0 && position < activities.length) {
+                    activities[position] =
+                            new ActivityIcons(c.getString(1), c.getInt(2), c.getInt(3));
+                } else {
+                    return null;
+                }
+            }
+            for (ActivityIcons activity : activities) {
+                if (activity == null) {
+                    return null;
+                }
+                icons.activities.add(activity);
+            }
+            icons.complete = true;
+            return icons;
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading manifest icons", e);
+            return null;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    private void saveToDb(String packageName, long lastUpdateTime, PackageIcons icons) {
+        try {
+            SQLiteDatabase db = mDb.getDb();
+            db.beginTransaction();
+            try {
+                mDb.delete(ManifestIconDB.COLUMN_PACKAGE + " = ?", new String[] {packageName});
+                mDb.insertOrReplace(newContentValues(packageName, lastUpdateTime,
+                        ManifestIconDB.POSITION_APPLICATION, "", icons.appIcon,
+                        icons.appRoundIcon));
+                for (int i = 0; i < icons.activities.size(); i++) {
+                    ActivityIcons activity = icons.activities.get(i);
+                    mDb.insertOrReplace(newContentValues(packageName, lastUpdateTime, i,
+                            activity.name, activity.icon, activity.roundIcon));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error saving manifest icons", e);
+        }
+    }
+
+    private static ContentValues newContentValues(String packageName, long lastUpdateTime,
+            int position, String activityName, int icon, int roundIcon) {
+        ContentValues values = new ContentValues();
+        values.put(ManifestIconDB.COLUMN_PACKAGE, packageName);
+        values.put(ManifestIconDB.COLUMN_POSITION, position);
+        values.put(ManifestIconDB.COLUMN_ACTIVITY, activityName);
+        values.put(ManifestIconDB.COLUMN_ICON, icon);
+        values.put(ManifestIconDB.COLUMN_ROUND_ICON, roundIcon);
+        values.put(ManifestIconDB.COLUMN_LAST_UPDATED, lastUpdateTime);
+        return values;
+    }
+
+    /**
+     * Reads the icons of the application and of all its activities, in declaration order. If the
+     * manifest can't be read completely, returns what was read until then.
+     */
+    private static PackageIcons parseManifest(Resources res) {
+        PackageIcons icons = new PackageIcons();
+        try (XmlResourceParser parser =
+                     res.getAssets().openXmlResourceParser("AndroidManifest.xml")) {
+            int eventType;
+            while ((eventType = parser.nextToken()) != XmlPullParser.END_DOCUMENT) {
+                if (eventType != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                String tagName = parser.getName();
+                if ("application".equals(tagName)) {
+                    icons.appIcon = getResourceId(parser, "icon");
+                    icons.appRoundIcon = getResourceId(parser, "roundIcon");
+                } else if ("activity".equals(tagName)) {
+                    String name = getAttributeValue(parser, "name");
+                    if (name != null && !name.isEmpty()) {
+                        icons.activities.add(new ActivityIcons(name,
+                                getResourceId(parser, "icon"),
+                                getResourceId(parser, "roundIcon")));
+                    }
+                }
+            }
+            icons.complete = true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing xml", e);
+        }
+        return icons;
+    }
+
+    private static String getAttributeValue(XmlResourceParser parser, String attribute) {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            if (attribute.equals(parser.getAttributeName(i))) {
+                return parser.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the id of a reference attribute, written as "@<id>" in compiled manifests.
+     */
+    private static int getResourceId(XmlResourceParser parser, String attribute) {
+        String value = getAttributeValue(parser, attribute);
+        if (value == null || value.length() < 2) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.substring(1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class PackageIcons {
+        int appIcon;
+        int appRoundIcon;
+        final ArrayList<ActivityIcons> activities = new ArrayList<>();
+        // False if the manifest could not be read entirely
+        boolean complete;
+
+        int getIconId(String activityName, boolean roundIcon, boolean[] outRoundIcon) {
+            if (activityName != null && !activityName.isEmpty()) {
+                // Manifests can declare relative names, use the first match declaring an icon
+                for (ActivityIcons activity : activities) {
+                    if (activityName.endsWith(activity.name)) {
+                        int resId = pickIcon(activity.icon, activity.roundIcon, roundIcon,
+                                outRoundIcon);
+                        if (resId != 0) {
+                            return resId;
+                        }
+                    }
+                }
+            }
+            return pickIcon(appIcon, appRoundIcon, roundIcon, outRoundIcon);
+        }
+
+        private static int pickIcon(int icon, int roundIconId, boolean roundIcon,
+                boolean[] outRoundIcon) {
+            if (roundIcon && roundIconId != 0) {
+                outRoundIcon[0] = true;
+                return roundIconId;
+            }
+            outRoundIcon[0] = false;
+            return icon;
+        }
+    }
+
+    private static final class ActivityIcons {
+        final String name;
+        final int icon;
+        final int roundIcon;
+
+        ActivityIcons(String name, int icon, int roundIcon) {
+            this.name = name;
+            this.icon = icon;
+            this.roundIcon = roundIcon;
+        }
+    }
+
+    private static final class ManifestIconDB extends SQLiteCacheHelper {
+        private final static int DB_VERSION = 1;
+
+        private final static String TABLE_NAME = "manifest_icons";
+        private final static String COLUMN_PACKAGE = "packageName";
+        private final static String COLUMN_POSITION = "position";
+        private final static String COLUMN_ACTIVITY = "activityName";
+        private final static String COLUMN_ICON = "icon";
+        private final static String COLUMN_ROUND_ICON = "roundIcon";
+        private final static String COLUMN_LAST_UPDATED = "lastUpdated";
+
+        // Position of the row holding the application icons
+        private final static int POSITION_APPLICATION = -1;
+
+        public ManifestIconDB(Context context) {
+            super(context, LauncherFiles.MANIFEST_ICONS_DB, DB_VERSION, TABLE_NAME);
+        }
+
+        @Override
+        protected void onCreateTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                    COLUMN_PACKAGE + " TEXT NOT NULL, " +
+                    COLUMN_POSITION + " INTEGER NOT NULL, " +
+                    COLUMN_ACTIVITY + " TEXT NOT NULL, " +
+                    COLUMN_ICON + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_ROUND_ICON + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (" + COLUMN_PACKAGE + ", " + COLUMN_POSITION + ") " +
+                    ");");
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package com.android.launcher3.model;
 
 import android.os.UserHandle;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.android.launcher3.AllAppsList;
@@ -28,6 +29,7 @@ import com.android.launcher3.ShortcutInfo;
 import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.MultiHashMap;
+import com.android.launcher3.util.PackageUserKey;
 
 import java.util.ArrayList;
 import java.util.concurrent.Executor;
@@ -116,6 +118,26 @@ public abstract class BaseModelUpdateTask implements ModelUpdateTask {
         });
     }
 
+    /**
+     * Binds the widgets of the package if {@param packageUser} is not null, otherwise all the
+     * widgets.
+     */
+    public void bindUpdatedWidgets(BgDataModel dataModel, @Nullable PackageUserKey packageUser) {
+        if (packageUser == null) {
+            bindUpdatedWidgets(dataModel);
+            return;
+        }
+        final String packageName = packageUser.mPackageName;
+        final MultiHashMap<PackageItemInfo, WidgetItem> widgets =
+                dataModel.widgetsModel.getWidgetsMap(packageName);
+        scheduleCallbackTask(new CallbackTask() {
+            @Override
+            public void execute(Callbacks callbacks) {
+                callbacks.bindWidgetsForPackage(packageName, widgets);
+            }
+        });
+    }
+
     public void bindUpdatedWidgets(BgDataModel dataModel) {
         final MultiHashMap<PackageItemInfo, WidgetItem> widgets
                 = dataModel.widgetsModel.getWidgetsMap();
@@ -271,7 +271,10 @@ public class LoaderCursor extends CursorWrapper {
         mIconCache.getTitleAndIcon(info, lai, useLowResIcon);
         if (mIconCache.isDefaultIcon(info.iconBitmap, user)) {
             Bitmap icon = loadIcon(info);
-            info.iconBitmap = icon != null ? icon : info.iconBitmap;
+            if (icon != null) {
+                info.iconBitmap = icon;
+                info.iconColor = 0;
+            }
         }
 
         if (lai != null && PackageManagerHelper.isAppSuspended(lai.getApplicationInfo())) {
@@ -160,7 +160,7 @@ public class LoaderResults {
         // This ensures that the first screen is immediately visible (eg. during rotation)
         // In case of !validFirstPage, bind all pages one after other.
         final Executor deferredExecutor =
-                validFirstPage ? new ViewOnDrawExecutor(mUiExecutor) : mainExecutor;
+                validFirstPage ? new ViewOnDrawExecutor() : mainExecutor;
 
         mainExecutor.execute(new Runnable() {
             @Override
@@ -173,7 +173,12 @@ public class LoaderResults {
             }
         });
 
-        bindWorkspaceItems(otherWorkspaceItems, otherAppWidgets, deferredExecutor);
+        if (validFirstPage) {
+            bindDeferredWorkspaceItems(otherWorkspaceItems, otherAppWidgets, orderedScreenIds,
+                    currentScreen, (ViewOnDrawExecutor) deferredExecutor);
+        } else {
+            bindWorkspaceItems(otherWorkspaceItems, otherAppWidgets, deferredExecutor);
+        }
 
         // Tell the workspace that we're done binding items
         r = new Runnable() {
@@ -328,6 +333,34 @@ public class LoaderResults {
         }
     }
 
+    /**
+     * Binds the items of the pages other than the current one one at a time, so that the
+     * executor can spread them over frames. The items of the pages next to the current one are
+     * bound first.
+     */
+    private void bindDeferredWorkspaceItems(ArrayList<ItemInfo> workspaceItems,
+            ArrayList<LauncherAppWidgetInfo> appWidgets, ArrayList<Long> orderedScreenIds,
+            int currentScreen, ViewOnDrawExecutor executor) {
+        ArrayList<ItemInfo> items = new ArrayList<>(workspaceItems);
+        items.addAll(appWidgets);
+        for (final ItemInfo item : items) {
+            int priority = ViewOnDrawExecutor.PRIORITY_OTHER_PAGES;
+            if (item.container == LauncherSettings.Favorites.CONTAINER_DESKTOP
+                    && Math.abs(orderedScreenIds.indexOf(item.screenId) - currentScreen) <= 1) {
+                priority = ViewOnDrawExecutor.PRIORITY_ADJACENT_PAGES;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Callbacks callbacks = mCallbacks.get();
+                    if (callbacks != null) {
+                        callbacks.bindItems(Collections.singletonList(item), false);
+                    }
+                }
+            }, priority);
+        }
+    }
+
     public void bindDeepShortcuts() {
         final MultiHashMap<ComponentKey, String> shortcutMapCopy;
         synchronized (mBgDataModel) {
@@ -314,6 +314,7 @@ public class LoaderTask implements Runnable {
 
                 FolderIconPreviewVerifier verifier =
                         new FolderIconPreviewVerifier(mApp.getInvariantDeviceProfile());
+                preloadAppIcons(c, verifier, rankIndex);
                 while (!mStopped && c.moveToNext()) {
                     try {
                         if (c.user == null) {
@@ -791,6 +792,38 @@ public class LoaderTask implements Runnable {
         mIconCache.updateDbIcons(packagesToIgnore);
     }
 
+    /**
+     * Reads the cached icons of the apps in the workspace at once, rather than when each item
+     * is loaded. Leaves the cursor before the first row.
+     */
+    private void preloadAppIcons(LoaderCursor c, FolderIconPreviewVerifier verifier,
+            int rankIndex) {
+        ArrayList<ComponentKey> highResKeys = new ArrayList<>();
+        ArrayList<ComponentKey> lowResKeys = new ArrayList<>();
+        while (!mStopped && c.moveToNext()) {
+            if (c.user == null || c.restoreFlag != 0
+                    || c.itemType != LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
+                continue;
+            }
+            Intent intent = c.parseIntent();
+            ComponentName cn = intent == null ? null : intent.getComponent();
+            if (cn == null) {
+                continue;
+            }
+            // Same resolution as the one used when loading the item
+            boolean useLowResIcon = !c.isOnWorkspaceOrHotseat() &&
+                    !verifier.isItemInPreview(c.getInt(rankIndex));
+            if (useLowResIcon) {
+                lowResKeys.add(new ComponentKey(cn, c.user));
+            } else {
+                highResKeys.add(new ComponentKey(cn, c.user));
+            }
+        }
+        c.moveToPosition(-1);
+        mIconCache.preloadEntriesFromDB(highResKeys, false /* lowRes */);
+        mIconCache.preloadEntriesFromDB(lowResKeys, true /* lowRes */);
+    }
+
     private void loadAllApps() {
         final long loadTime = DEBUG_LOADERS ? SystemClock.uptimeMillis() : 0;
 
@@ -813,6 +846,12 @@ public class LoaderTask implements Runnable {
                 return;
             }
             boolean quietMode = mUserManager.isQuietModeEnabled(user);
+            // Read the cached icons of all the apps at once, rather than one by one
+            ArrayList<ComponentKey> iconKeys = new ArrayList<>(apps.size());
+            for (LauncherActivityInfo app : apps) {
+                iconKeys.add(new ComponentKey(app.getComponentName(), user));
+            }
+            mIconCache.preloadEntriesFromDB(iconKeys, true /* lowRes */);
             // Create the ApplicationInfos
             for (int i = 0; i < apps.size(); i++) {
                 LauncherActivityInfo app = apps.get(i);
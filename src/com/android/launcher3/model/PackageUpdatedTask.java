@@ -37,9 +37,11 @@ import com.android.launcher3.LauncherSettings.Favorites;
 import com.android.launcher3.SessionCommitReceiver;
 import com.android.launcher3.ShortcutInfo;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.allapps.PredictiveAppsProvider;
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.discovery.suggestions.SuggestionsCache;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.backport.DeepShortcutManagerBackport;
@@ -136,6 +138,11 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
                 for (int i = 0; i < N; i++) {
                     iconCache.removeIconsForPkg(packages[i], mUser);
                     if (shortcutCache != null) shortcutCache.parsePackage(context, packages[i]);
+                    // Predictions are only made for the apps of the main user
+                    if (Process.myUserHandle().equals(mUser)) {
+                        SuggestionsCache.getInstance(context,
+                                PredictiveAppsProvider.MAX_SUGGESTIONS).removePackage(packages[i]);
+                    }
                 }
                 // Fall through
             }
@@ -210,6 +217,7 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
                             Bitmap icon = LauncherIcons.createIconBitmap(si.iconResource, context);
                             if (icon != null) {
                                 si.iconBitmap = icon;
+                                si.iconColor = 0;
                                 infoUpdated = true;
                             }
                         }
@@ -366,9 +374,10 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
             // Load widgets for the new package. Changes due to app updates are handled through
             // AppWidgetHost events, this is just to initialize the long-press options.
             for (int i = 0; i < N; i++) {
-                dataModel.widgetsModel.update(app, new PackageUserKey(packages[i], mUser));
+                PackageUserKey packageUser = new PackageUserKey(packages[i], mUser);
+                dataModel.widgetsModel.update(app, packageUser);
+                bindUpdatedWidgets(dataModel, packageUser);
             }
-            bindUpdatedWidgets(dataModel);
         }
     }
 }
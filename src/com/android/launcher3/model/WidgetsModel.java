@@ -39,6 +39,8 @@ public class WidgetsModel {
 
     /* Map of widgets and shortcuts that are tracked per package. */
     private final MultiHashMap<PackageItemInfo, WidgetItem> mWidgetsList = new MultiHashMap<>();
+    /* The keys of {@link #mWidgetsList}, indexed by package name. */
+    private final HashMap<String, PackageItemInfo> mPackageItemInfos = new HashMap<>();
 
     private AppFilter mAppFilter;
 
@@ -46,6 +48,20 @@ public class WidgetsModel {
         return mWidgetsList.clone();
     }
 
+    /**
+     * Returns a copy of the widgets and shortcuts of the package, for all users. The map is empty
+     * if the package has none.
+     */
+    public synchronized MultiHashMap<PackageItemInfo, WidgetItem> getWidgetsMap(
+            String packageName) {
+        MultiHashMap<PackageItemInfo, WidgetItem> result = new MultiHashMap<>(1);
+        PackageItemInfo packageItem = mPackageItemInfos.get(packageName);
+        if (packageItem != null) {
+            result.put(packageItem, new ArrayList<>(mWidgetsList.get(packageItem)));
+        }
+        return result;
+    }
+
     /**
      * @param packageUser If null, all widgets and shortcuts are updated and returned, otherwise
      *                    only widgets and shortcuts associated with the package/user are.
@@ -99,15 +115,10 @@ public class WidgetsModel {
         // clear the lists.
         if (packageUser == null) {
             mWidgetsList.clear();
+            mPackageItemInfos.clear();
         } else {
             // Only clear the widgets for the given package/user.
-            PackageItemInfo packageItem = null;
-            for (PackageItemInfo item : mWidgetsList.keySet()) {
-                if (item.packageName.equals(packageUser.mPackageName)) {
-                    packageItem = item;
-                    break;
-                }
-            }
+            PackageItemInfo packageItem = mPackageItemInfos.get(packageUser.mPackageName);
             if (packageItem != null) {
                 // We want to preserve the user that was on the packageItem previously,
                 // so add it to tmpPackageItemInfos here to avoid creating a new entry.
@@ -165,11 +176,19 @@ public class WidgetsModel {
                 pInfo.user = item.user;
             }
             mWidgetsList.addToList(pInfo, item);
+            mPackageItemInfos.put(packageName, pInfo);
         }
 
         // Update each package entry
         IconCache iconCache = app.getIconCache();
         for (PackageItemInfo p : tmpPackageItemInfos.values()) {
+            ArrayList<WidgetItem> widgets = mWidgetsList.get(p);
+            if (widgets == null || widgets.isEmpty()) {
+                // All the widgets of the package were removed
+                mWidgetsList.remove(p);
+                mPackageItemInfos.remove(p.packageName);
+                continue;
+            }
             iconCache.getTitleAndIconForApp(p, true /* userLowResIcon */);
         }
     }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Runs tasks on the main thread at the start of the following frames, as many per frame as fit
+ * in a time budget, so that a long list of tasks doesn't block the rendering of any frame.
+ *
+ * Tasks are run by increasing phase, and in the order they were added within a phase. The
+ * duration of the next task is estimated from the previous ones, and at least one task runs in
+ * each frame. Tasks can be added from any thread before the scheduler is started, the other
+ * methods must be called on the main thread.
+ */
+public class FrameBudgetScheduler implements Choreographer.FrameCallback {
+
+    private static final String TAG = "FrameBudgetScheduler";
+    private static final boolean DEBUG = false;
+
+    // Time which can be spent running tasks in a frame, counted from the vsync, which leaves
+    // about half of a 60fps frame to layout and draw their results
+    private static final long FRAME_BUDGET_NANOS = 8 * 1000 * 1000;
+    // Weight of the last task in the estimated duration of the next one
+    private static final float ESTIMATE_WEIGHT = 0.25f;
+
+    private final ArrayList<Task> mTasks = new ArrayList<>();
+    private final PhaseMetrics[] mMetrics;
+
+    private Choreographer mChoreographer;
+    private Runnable mOnComplete;
+    private int mNextTask;
+    private boolean mRunning;
+    private long mStartTime;
+    private long mEstimateNanos;
+    private int mFrameCount;
+
+    /**
+     * @param phaseNames the names of the phases used in the metrics, phase i being named
+     *                   phaseNames[i]
+     */
+    public FrameBudgetScheduler(String... phaseNames) {
+        mMetrics = new PhaseMetrics[phaseNames.length];
+        for (int i = 0; i < phaseNames.length; i++) {
+            mMetrics[i] = new PhaseMetrics(phaseNames[i]);
+        }
+    }
+
+    /**
+     * Adds a task to run in the given phase. Must be called before {@link #start}.
+     */
+    public void add(Runnable task, int phase) {
+        mTasks.add(new Task(task, phase));
+    }
+
+    /**
+     * Starts running the tasks from the next frame, and then runs {@param onComplete} in the
+     * frame where the last task ran.
+     */
+    public void start(Runnable onComplete) {
+        // The sort is stable, which keeps the order of the tasks within a phase
+        Collections.sort(mTasks, new Comparator<Task>() {
+            @Override
+            public int compare(Task lhs, Task rhs) {
+                return Integer.compare(lhs.phase, rhs.phase);
+            }
+        });
+        mOnComplete = onComplete;
+        mRunning = true;
+        mStartTime = System.nanoTime();
+        mChoreographer = Choreographer.getInstance();
+        mChoreographer.postFrameCallback(this);
+    }
+
+    /**
+     * Drops the tasks which haven't run yet. The completion callback is not run.
+     */
+    public void cancel() {
+        if (mRunning) {
+            mRunning = false;
+            mChoreographer.removeFrameCallback(this);
+        }
+        mTasks.clear();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        mFrameCount++;
+        int tasksRun = 0;
+        while (mNextTask < mTasks.size()) {
+            long start = System.nanoTime();
+            if (tasksRun > 0 && start - frameTimeNanos + mEstimateNanos > FRAME_BUDGET_NANOS) {
+                mChoreographer.postFrameCallback(this);
+                return;
+            }
+            Task task = mTasks.get(mNextTask++);
+            task.runnable.run();
+            if (!mRunning) {
+                // The task cancelled the remaining ones
+                return;
+            }
+            long end = System.nanoTime();
+            long duration = end - start;
+            mEstimateNanos = mEstimateNanos == 0 ? duration
+                    : mEstimateNanos + (long) (ESTIMATE_WEIGHT * (duration - mEstimateNanos));
+            if (task.phase < mMetrics.length) {
+                mMetrics[task.phase].onTaskRun(mFrameCount, duration, end - mStartTime);
+            }
+            tasksRun++;
+        }
+
+        mRunning = false;
+        mTasks.clear();
+        if (DEBUG) {
+            logMetrics();
+        }
+        if (mOnComplete != null) {
+            mOnComplete.run();
+        }
+    }
+
+    private void logMetrics() {
+        for (PhaseMetrics metrics : mMetrics) {
+            if (metrics.taskCount > 0) {
+                Log.d(TAG, String.format("%s: %d tasks in %d frames, %.1fms running,"
+                        + " completed %.1fms after start", metrics.name, metrics.taskCount,
+                        metrics.frameCount, metrics.runNanos / 1e6f, metrics.latencyNanos / 1e6f));
+            }
+        }
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final int phase;
+
+        Task(Runnable runnable, int phase) {
+            this.runnable = runnable;
+            this.phase = phase;
+        }
+    }
+
+    private static final class PhaseMetrics {
+        final String name;
+        int taskCount;
+        int frameCount;
+        int lastFrame;
+        // Total time spent running the tasks
+        long runNanos;
+        // Time from the start of the scheduler to the end of the last task of the phase
+        long latencyNanos;
+
+        PhaseMetrics(String name) {
+            this.name = name;
+        }
+
+        void onTaskRun(int frame, long duration, long elapsed) {
+            taskCount++;
+            if (frame != lastFrame) {
+                frameCount++;
+                lastFrame = frame;
+            }
+            runNanos += duration;
+            latencyNanos = elapsed;
+        }
+    }
+}
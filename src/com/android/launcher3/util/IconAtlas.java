@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.android.launcher3.graphics.BitmapPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A memory-mapped file of square icons of a fixed size, stored as raw premultiplied ARGB_8888
+ * pixels in fixed-size slots, so that reading an icon is a single copy into a bitmap instead of
+ * a cursor read and a decode.
+ *
+ * File layout: a header (magic, version, icon size) followed by slots of the form
+ * [int state][long sequence][long userSerial][short keyLength][key][pixels], the slot header
+ * having a fixed size. The index of the icons by component is rebuilt from the slot headers on
+ * load.
+ *
+ * An icon is never overwritten in place: the new pixels are written to a free slot and synced,
+ * then the slot is committed by writing its state, and only then is the previous slot of the
+ * component freed. After a crash, a slot which was being written is not committed and is
+ * ignored, and if two committed slots have the same component, the one with the highest
+ * sequence wins. Removals are synced before returning, so that a removed icon doesn't come
+ * back after a crash.
+ */
+public class IconAtlas {
+
+    private static final String TAG = "IconAtlas";
+
+    private static final int MAGIC = 0x4c334941; // L3IA
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private static final int STATE_FREE = 0;
+    private static final int STATE_COMMITTED = 1;
+
+    // [state][sequence][userSerial][keyLength] followed by the key
+    private static final int SLOT_HEADER_SIZE = 256;
+    private static final int SLOT_KEY_OFFSET = 22;
+    private static final int MAX_KEY_LENGTH = SLOT_HEADER_SIZE - SLOT_KEY_OFFSET;
+
+    // The file at least doubles each time it is full, so that it is remapped only a few times:
+    // the previous mappings are only released when they are garbage collected
+    private static final int MIN_GROWTH_SLOTS = 64;
+
+    private final File mFile;
+    private final int mIconSize;
+    private final int mPixelBytes;
+    private final int mSlotSize;
+    private final int mMaxSlots;
+
+    private RandomAccessFile mRaf;
+    private MappedByteBuffer mBuffer;
+    private int mSlotCount;
+    // Slot of each committed icon, by key
+    private HashMap<String, Integer> mIndex;
+    private final ArrayList<Integer> mFreeSlots = new ArrayList<>();
+    private long mSequence;
+    // Set if the file could not be opened, until it is cleared
+    private boolean mDisabled;
+
+    /**
+     * @param iconSize the width and height of the icons, other icons are not stored
+     * @param maxBytes the maximum size of the file
+     */
+    public IconAtlas(File file, int iconSize, long maxBytes) {
+        mFile = file;
+        mIconSize = iconSize;
+        mPixelBytes = iconSize * iconSize * 4;
+        mSlotSize = SLOT_HEADER_SIZE + mPixelBytes;
+        mMaxSlots = (int) Math.min((maxBytes - HEADER_SIZE) / mSlotSize,
+                (Integer.MAX_VALUE - HEADER_SIZE) / mSlotSize);
+    }
+
+    /**
+     * Returns a new bitmap with the icon of the component, or null if there is none.
+     */
+    public synchronized Bitmap get(String component, long userSerial) {
+        if (!ensureLoaded()) {
+            return null;
+        }
+        Integer slot = mIndex.get(getKey(component, userSerial));
+        if (slot == null) {
+            return null;
+        }
+        ByteBuffer pixels = mBuffer.duplicate();
+        int offset = getSlotOffset(slot) + SLOT_HEADER_SIZE;
+        pixels.limit(offset + mPixelBytes).position(offset);
+        Bitmap icon = BitmapPool.getInstance().acquire(mIconSize, mIconSize,
+                Bitmap.Config.ARGB_8888);
+        icon.copyPixelsFromBuffer(pixels);
+        return icon;
+    }
+
+    /**
+     * Stores the icon of the component, replacing the previous one.
+     * @return false if the icon could not be stored, in which case the previous one is removed.
+     */
+    public synchronized boolean put(String component, long userSerial, Bitmap icon) {
+        if (!ensureLoaded()) {
+            return false;
+        }
+        String key = getKey(component, userSerial);
+        byte[] keyBytes = component.getBytes(StandardCharsets.UTF_8);
+        if (icon == null || icon.getConfig() != Bitmap.Config.ARGB_8888
+                || icon.getWidth() != mIconSize || icon.getHeight() != mIconSize
+                || keyBytes.length > MAX_KEY_LENGTH) {
+            removeLocked(key);
+            return false;
+        }
+
+        int slot = -1;
+        try {
+            slot = obtainFreeSlot();
+            if (slot < 0) {
+                removeLocked(key);
+                return false;
+            }
+            int offset = getSlotOffset(slot);
+            mBuffer.putInt(offset, STATE_FREE);
+            mBuffer.putLong(offset + 12, userSerial);
+            mBuffer.putShort(offset + 20, (short) keyBytes.length);
+            ByteBuffer slotBuffer = mBuffer.duplicate();
+            slotBuffer.position(offset + SLOT_KEY_OFFSET);
+            slotBuffer.put(keyBytes);
+            slotBuffer.limit(offset + SLOT_HEADER_SIZE + mPixelBytes)
+                    .position(offset + SLOT_HEADER_SIZE);
+            icon.copyPixelsToBuffer(slotBuffer);
+            mBuffer.force();
+
+            // Commit the slot, with the state written last
+            mBuffer.putLong(offset + 4, ++mSequence);
+            mBuffer.putInt(offset, STATE_COMMITTED);
+            mBuffer.force();
+
+            Integer previous = mIndex.put(key, slot);
+            if (previous != null) {
+                // Not synced, on load the slot with the highest sequence wins
+                freeSlot(previous);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to store icon of " + key, e);
+            if (slot >= 0) {
+                freeSlot(slot);
+            }
+            removeLocked(key);
+            return false;
+        }
+    }
+
+    public synchronized void remove(String component, long userSerial) {
+        if (ensureLoaded()) {
+            removeLocked(getKey(component, userSerial));
+        }
+    }
+
+    /**
+     * Removes the icons of all the components of the package.
+     */
+    public synchronized void removePackage(String packageName, long userSerial) {
+        if (!ensureLoaded()) {
+            return;
+        }
+        String prefix = packageName + "/";
+        String suffix = "#" + userSerial;
+        boolean removed = false;
+        Iterator<Map.Entry<String, Integer>> it = mIndex.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> entry = it.next();
+            if (entry.getKey().startsWith(prefix) && entry.getKey().endsWith(suffix)) {
+                freeSlot(entry.getValue());
+                it.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            mBuffer.force();
+        }
+    }
+
+    /**
+     * Removes all the icons and shrinks the file.
+     */
+    public synchronized void clear() {
+        close();
+        mFile.delete();
+        mDisabled = false;
+    }
+
+    private void removeLocked(String key) {
+        Integer slot = mIndex.remove(key);
+        if (slot != null) {
+            freeSlot(slot);
+            mBuffer.force();
+        }
+    }
+
+    /**
+     * Marks {@param slot} as free. The caller syncs the buffer if the slot must not be committed
+     * again after a crash.
+     */
+    private void freeSlot(int slot) {
+        mBuffer.putInt(getSlotOffset(slot), STATE_FREE);
+        mFreeSlots.add(slot);
+    }
+
+    /**
+     * Returns a free slot, growing the file if needed, or -1 if the file can't grow anymore.
+     */
+    private int obtainFreeSlot() throws IOException {
+        if (mFreeSlots.isEmpty()) {
+            if (mSlotCount >= mMaxSlots) {
+                return -1;
+            }
+            int newCount = Math.min(mSlotCount + Math.max(mSlotCount, MIN_GROWTH_SLOTS),
+                    mMaxSlots);
+            map(newCount);
+            // Added backwards, so that the new slots are used in order
+            for (int i = newCount - 1; i >= mSlotCount; i--) {
+                mFreeSlots.add(i);
+            }
+            mSlotCount = newCount;
+        }
+        return mFreeSlots.remove(mFreeSlots.size() - 1);
+    }
+
+    private boolean ensureLoaded() {
+        if (mIndex != null) {
+            return true;
+        }
+        if (mDisabled) {
+            return false;
+        }
+        try {
+            load();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to open " + mFile, e);
+            close();
+            mFile.delete();
+            mDisabled = true;
+            return false;
+        }
+    }
+
+    private void load() throws IOException {
+        mIndex = new HashMap<>();
+        mFreeSlots.clear();
+        mSequence = 0;
+        mRaf = new RandomAccessFile(mFile, "rw");
+
+        long length = mRaf.length();
+        if (length < HEADER_SIZE || mRaf.readInt() != MAGIC || mRaf.readInt() != VERSION
+                || mRaf.readInt() != mIconSize) {
+            if (length > 0) {
+                Log.e(TAG, "Invalid header, discarding " + mFile);
+            }
+            mRaf.setLength(0);
+            mRaf.writeInt(MAGIC);
+            mRaf.writeInt(VERSION);
+            mRaf.writeInt(mIconSize);
+            length = HEADER_SIZE;
+        }
+        mSlotCount = (int) Math.min((length - HEADER_SIZE) / mSlotSize, mMaxSlots);
+        map(mSlotCount);
+
+        HashMap<String, Long> sequences = new HashMap<>();
+        byte[] keyBytes = new byte[MAX_KEY_LENGTH];
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            int offset = getSlotOffset(slot);
+            int keyLength = mBuffer.getShort(offset + 20);
+            if (mBuffer.getInt(offset) != STATE_COMMITTED
+                    || keyLength <= 0 || keyLength > MAX_KEY_LENGTH) {
+                freeSlot(slot);
+                continue;
+            }
+            long sequence = mBuffer.getLong(offset + 4);
+            ByteBuffer slotBuffer = mBuffer.duplicate();
+            slotBuffer.position(offset + SLOT_KEY_OFFSET);
+            slotBuffer.get(keyBytes, 0, keyLength);
+            String key = getKey(new String(keyBytes, 0, keyLength, StandardCharsets.UTF_8),
+                    mBuffer.getLong(offset + 12));
+
+            Integer other = mIndex.get(key);
+            if (other != null && sequences.get(key) > sequence) {
+                // A newer slot was committed before this one could be freed
+                freeSlot(slot);
+                continue;
+            }
+            if (other != null) {
+                freeSlot(other);
+            }
+            mIndex.put(key, slot);
+            sequences.put(key, sequence);
+            mSequence = Math.max(mSequence, sequence);
+        }
+    }
+
+    /**
+     * Maps the header and {@param slotCount} slots, growing the file if needed.
+     */
+    private void map(int slotCount) throws IOException {
+        long length = HEADER_SIZE + (long) slotCount * mSlotSize;
+        if (mRaf.length() != length) {
+            mRaf.setLength(length);
+        }
+        mBuffer = mRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+
+    private void close() {
+        mIndex = null;
+        mBuffer = null;
+        mSlotCount = 0;
+        mFreeSlots.clear();
+        if (mRaf != null) {
+            try {
+                mRaf.close();
+            } catch (IOException e) { }
+            mRaf = null;
+        }
+    }
+
+    private int getSlotOffset(int slot) {
+        return HEADER_SIZE + slot * mSlotSize;
+    }
+
+    private static String getKey(String component, long userSerial) {
+        return component + "#" + userSerial;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of length-prefixed binary records, each identified by an id which is
+ * unique among the live records.
+ *
+ * Adding or removing a record only appends a few bytes to the end of the file. Removed records
+ * leave garbage behind, which is reclaimed by rewriting the live records once the garbage
+ * outweighs them. Larger payloads (like icons) can be stored as separate blobs next to the file,
+ * so that they are never copied during compaction.
+ *
+ * File layout: a header (magic, version) followed by records of the form
+ * [int bodyLength][int crc32(body)][body], where body is [byte op][long id][payload].
+ * A truncated or corrupt tail (eg, from a crash during a write) is dropped on load.
+ */
+public class RecordQueueFile {
+
+    private static final String TAG = "RecordQueueFile";
+
+    private static final int MAGIC = 0x4c525146; // LRQF
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    // Size of [bodyLength][crc] preceding every record body
+    private static final int RECORD_PREFIX_SIZE = 8;
+    // Size of [op][id] at the start of every record body
+    private static final int BODY_PREFIX_SIZE = 9;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+
+    // Don't bother compacting until there is at least this much garbage
+    private static final int MIN_COMPACTION_BYTES = 16 * 1024;
+
+    private final File mFile;
+    private final File mBlobDir;
+
+    private LongArrayMap<byte[]> mRecords;
+    private long mNextId;
+    private long mLiveBytes;
+    private long mDeadBytes;
+
+    public RecordQueueFile(File file) {
+        mFile = file;
+        mBlobDir = new File(file.getPath() + ".blobs");
+    }
+
+    /**
+     * Appends a new record and returns its id.
+     */
+    public synchronized long add(byte[] payload) throws IOException {
+        return add(payload, null);
+    }
+
+    /**
+     * Appends a new record with an associated blob and returns its id. The blob is written
+     * before the record, so that a record never refers to a missing blob.
+     */
+    public synchronized long add(byte[] payload, byte[] blob) throws IOException {
+        ensureLoaded();
+        long id = mNextId++;
+        if (blob != null) {
+            writeFully(getBlobFile(id), blob);
+        }
+        int size = appendRecord(OP_ADD, id, payload);
+        mRecords.put(id, payload);
+        mLiveBytes += size;
+        return id;
+    }
+
+    /**
+     * Removes the record with the given id by appending a tombstone.
+     */
+    public synchronized void remove(long id) throws IOException {
+        ensureLoaded();
+        byte[] payload = mRecords.get(id);
+        if (payload == null) {
+            return;
+        }
+        int size = appendRecord(OP_REMOVE, id, null);
+        mRecords.remove(id);
+        getBlobFile(id).delete();
+
+        long recordSize = RECORD_PREFIX_SIZE + BODY_PREFIX_SIZE + payload.length;
+        mLiveBytes -= recordSize;
+        mDeadBytes += recordSize + size;
+        maybeCompact();
+    }
+
+    /**
+     * Returns a copy of all the live records keyed by their ids, in insertion order.
+     */
+    public synchronized LongArrayMap<byte[]> getAll() throws IOException {
+        ensureLoaded();
+        return mRecords.clone();
+    }
+
+    /**
+     * Returns the blob associated with the record, or null if there is none.
+     */
+    public synchronized byte[] getBlob(long id) {
+        File blob = getBlobFile(id);
+        if (!blob.exists()) {
+            return null;
+        }
+        try {
+            return IOUtils.toByteArray(blob);
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading blob " + id, e);
+            return null;
+        }
+    }
+
+    public synchronized boolean isEmpty() throws IOException {
+        ensureLoaded();
+        return mRecords.isEmpty();
+    }
+
+    /**
+     * Removes all the records.
+     */
+    public synchronized void clear() throws IOException {
+        ensureLoaded();
+        if (mRecords.isEmpty() && mDeadBytes == 0) {
+            return;
+        }
+        writeHeader(mFile);
+        deleteBlobs(null);
+        mRecords.clear();
+        mLiveBytes = 0;
+        mDeadBytes = 0;
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (mRecords != null) {
+            return;
+        }
+        mRecords = new LongArrayMap<>();
+        mNextId = 0;
+        mLiveBytes = 0;
+        mDeadBytes = 0;
+
+        if (!mFile.exists()) {
+            writeHeader(mFile);
+            deleteBlobs(null);
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            long length = raf.length();
+            if (length < HEADER_SIZE || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                Log.e(TAG, "Invalid header, discarding " + mFile);
+                raf.setLength(0);
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                deleteBlobs(null);
+                return;
+            }
+
+            CRC32 crc = new CRC32();
+            long offset = HEADER_SIZE;
+            while (offset + RECORD_PREFIX_SIZE <= length) {
+                raf.seek(offset);
+                int bodyLength = raf.readInt();
+                int checksum = raf.readInt();
+                if (bodyLength < BODY_PREFIX_SIZE
+                        || offset + RECORD_PREFIX_SIZE + bodyLength > length) {
+                    break;
+                }
+                byte[] body = new byte[bodyLength];
+                raf.readFully(body);
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                long id = readLong(body, 1);
+                int recordSize = RECORD_PREFIX_SIZE + bodyLength;
+                if (body[0] == OP_ADD) {
+                    byte[] payload = new byte[bodyLength - BODY_PREFIX_SIZE];
+                    System.arraycopy(body, BODY_PREFIX_SIZE, payload, 0, payload.length);
+                    mRecords.put(id, payload);
+                    mLiveBytes += recordSize;
+                } else if (body[0] == OP_REMOVE) {
+                    byte[] removed = mRecords.get(id);
+                    if (removed != null) {
+                        mRecords.remove(id);
+                        long removedSize = RECORD_PREFIX_SIZE + BODY_PREFIX_SIZE + removed.length;
+                        mLiveBytes -= removedSize;
+                        mDeadBytes += removedSize;
+                    }
+                    mDeadBytes += recordSize;
+                } else {
+                    break;
+                }
+                mNextId = Math.max(mNextId, id + 1);
+                offset += recordSize;
+            }
+
+            if (offset != length) {
+                Log.e(TAG, "Dropping " + (length - offset) + " bytes of corrupt data");
+                raf.setLength(offset);
+            }
+        }
+        deleteBlobs(mRecords);
+        maybeCompact();
+    }
+
+    private int appendRecord(byte op, long id, byte[] payload) throws IOException {
+        int bodyLength = BODY_PREFIX_SIZE + (payload == null ? 0 : payload.length);
+        byte[] body = new byte[bodyLength];
+        body[0] = op;
+        writeLong(body, 1, id);
+        if (payload != null) {
+            System.arraycopy(payload, 0, body, BODY_PREFIX_SIZE, payload.length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(mFile, true)))) {
+            out.writeInt(bodyLength);
+            out.writeInt((int) crc.getValue());
+            out.write(body);
+        }
+        return RECORD_PREFIX_SIZE + bodyLength;
+    }
+
+    /**
+     * Rewrites the file with only the live records, once the garbage outweighs them. Records
+     * are written to a temporary file which atomically replaces the original.
+     */
+    private void maybeCompact() throws IOException {
+        if (mDeadBytes < MIN_COMPACTION_BYTES || mDeadBytes < mLiveBytes) {
+            return;
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            byte[] prefix = new byte[BODY_PREFIX_SIZE];
+            prefix[0] = OP_ADD;
+            int count = mRecords.size();
+            for (int i = 0; i < count; i++) {
+                byte[] payload = mRecords.valueAt(i);
+                writeLong(prefix, 1, mRecords.keyAt(i));
+                crc.reset();
+                crc.update(prefix);
+                crc.update(payload);
+                out.writeInt(BODY_PREFIX_SIZE + payload.length);
+                out.writeInt((int) crc.getValue());
+                out.write(prefix);
+                out.write(payload);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete();
+            throw new IOException("Unable to replace " + mFile);
+        }
+        mDeadBytes = 0;
+    }
+
+    private void writeHeader(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+    }
+
+    /**
+     * Deletes all blobs which do not belong to any of the {@param liveRecords}.
+     */
+    private void deleteBlobs(LongArrayMap<byte[]> liveRecords) {
+        File[] blobs = mBlobDir.listFiles();
+        if (blobs == null) {
+            return;
+        }
+        for (File blob : blobs) {
+            if (liveRecords != null) {
+                try {
+                    if (liveRecords.containsKey(Long.parseLong(blob.getName()))) {
+                        continue;
+                    }
+                } catch (NumberFormatException e) { }
+            }
+            blob.delete();
+        }
+    }
+
+    private File getBlobFile(long id) {
+        return new File(mBlobDir, Long.toString(id));
+    }
+
+    private void writeFully(File file, byte[] data) throws IOException {
+        if (!mBlobDir.exists() && !mBlobDir.mkdirs()) {
+            throw new IOException("Unable to create " + mBlobDir);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    private static long readLong(byte[] buf, int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (buf[offset + i] & 0xFF);
+        }
+        return result;
+    }
+
+    private static void writeLong(byte[] buf, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buf[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
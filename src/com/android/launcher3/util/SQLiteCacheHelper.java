@@ -89,6 +89,15 @@ public abstract class SQLiteCacheHelper {
 
     protected abstract void onCreateTable(SQLiteDatabase db);
 
+    /**
+     * Called when the DB version changes.
+     *
+     * @return true if the table was migrated in place, false to drop and re-create it.
+     */
+    protected boolean onUpgradeTable(SQLiteDatabase db, int oldVersion, int newVersion) {
+        return false;
+    }
+
     public SQLiteDatabase getDb() {
         return mOpenHelper.getWritableDatabase();
     }
@@ -109,7 +118,7 @@ public abstract class SQLiteCacheHelper {
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            if (oldVersion != newVersion) {
+            if (oldVersion != newVersion && !onUpgradeTable(db, oldVersion, newVersion)) {
                 clearDB(db);
             }
         }
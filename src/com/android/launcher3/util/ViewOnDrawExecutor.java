@@ -24,17 +24,25 @@ import android.view.ViewTreeObserver.OnDrawListener;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.LauncherModel;
 
-import java.util.ArrayList;
 import java.util.concurrent.Executor;
 
 /**
  * An executor which runs all the tasks after the first onDraw is called on the target view.
+ *
+ * The tasks are then spread over the following frames by a {@link FrameBudgetScheduler}, by
+ * increasing priority.
  */
 public class ViewOnDrawExecutor implements Executor, OnDrawListener, Runnable,
         OnAttachStateChangeListener {
 
-    private final ArrayList<Runnable> mTasks = new ArrayList<>();
-    private final Executor mExecutor;
+    // Priorities of the tasks, the lowest run first
+    public static final int PRIORITY_ADJACENT_PAGES = 0;
+    public static final int PRIORITY_OTHER_PAGES = 1;
+    public static final int PRIORITY_DEFAULT = 2;
+
+    private static final String[] PHASE_NAMES = {"adjacent pages", "other pages", "other tasks"};
+
+    private final FrameBudgetScheduler mScheduler = new FrameBudgetScheduler(PHASE_NAMES);
 
     private Launcher mLauncher;
     private View mAttachedView;
@@ -44,10 +52,6 @@ public class ViewOnDrawExecutor implements Executor, OnDrawListener, Runnable,
     private boolean mLoadAnimationCompleted;
     private boolean mFirstDrawCompleted;
 
-    public ViewOnDrawExecutor(Executor executor) {
-        mExecutor = executor;
-    }
-
     public void attachTo(Launcher launcher) {
         mLauncher = launcher;
         mAttachedView = launcher.getWorkspace();
@@ -57,14 +61,21 @@ public class ViewOnDrawExecutor implements Executor, OnDrawListener, Runnable,
     }
 
     private void attachObserver() {
-        if (!mCompleted) {
+        if (!mCompleted && !mIsExecuting) {
             mAttachedView.getViewTreeObserver().addOnDrawListener(this);
         }
     }
 
     @Override
     public void execute(Runnable command) {
-        mTasks.add(command);
+        execute(command, PRIORITY_DEFAULT);
+    }
+
+    /**
+     * Queues a task which runs before the queued tasks of a higher priority.
+     */
+    public void execute(Runnable command, int priority) {
+        mScheduler.add(command, priority);
         LauncherModel.setWorkerPriority(Process.THREAD_PRIORITY_BACKGROUND);
     }
 
@@ -98,18 +109,24 @@ public class ViewOnDrawExecutor implements Executor, OnDrawListener, Runnable,
 
     @Override
     public void run() {
-        // Post the pending tasks after both onDraw and onLoadAnimationCompleted have been called.
-        if (mLoadAnimationCompleted && mFirstDrawCompleted && !mCompleted) {
+        // Run the pending tasks after both onDraw and onLoadAnimationCompleted have been called.
+        if (mLoadAnimationCompleted && mFirstDrawCompleted && !mCompleted && !mIsExecuting) {
             mIsExecuting = true;
-            for (final Runnable r : mTasks) {
-                mExecutor.execute(r);
-            }
-            markCompleted();
+            mAttachedView.getViewTreeObserver().removeOnDrawListener(this);
+            mScheduler.start(new Runnable() {
+                @Override
+                public void run() {
+                    markCompleted();
+                }
+            });
         }
     }
 
+    /**
+     * Marks the executor as completed, dropping the tasks which haven't run yet.
+     */
     public void markCompleted() {
-        mTasks.clear();
+        mScheduler.cancel();
         mCompleted = true;
         mIsExecuting = false;
         if (mAttachedView != null) {
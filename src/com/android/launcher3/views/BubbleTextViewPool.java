@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.views;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import com.android.launcher3.BubbleTextView;
+import com.android.launcher3.InvariantDeviceProfile;
+import com.android.launcher3.Launcher;
+import com.android.launcher3.MainThreadExecutor;
+import com.android.launcher3.R;
+import com.android.launcher3.Utilities;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of the icons of the workspace, folders and all apps, so that binding items doesn't
+ * inflate them from XML.
+ *
+ * The pool is filled on a background thread when the main thread is idle, with enough icons for
+ * a page of the workspace with the hotseat, a page of a folder and a screen of all apps. Icons
+ * which are discarded are put back in the pool. Apart from the background inflation, all the
+ * methods must be called on the main thread.
+ */
+public class BubbleTextViewPool implements MessageQueue.IdleHandler {
+
+    private static final String TAG = "BubbleTextViewPool";
+
+    private static final int[] LAYOUTS = {
+            R.layout.app_icon, R.layout.folder_application, R.layout.all_apps_icon};
+
+    private final Launcher mLauncher;
+    private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
+
+    // Number of views to keep for each layout
+    private final SparseIntArray mCapacities = new SparseIntArray();
+    private final SparseArray<ArrayList<BubbleTextView>> mViews = new SparseArray<>();
+
+    private boolean mFillScheduled;
+    private boolean mFilling;
+    // Set if views can't be inflated off the main thread, in which case the pool is only
+    // filled with the discarded views
+    private boolean mBackgroundInflationFailed;
+    private boolean mDestroyed;
+
+    public BubbleTextViewPool(Launcher launcher) {
+        mLauncher = launcher;
+        InvariantDeviceProfile inv = launcher.getDeviceProfile().inv;
+        mCapacities.put(R.layout.app_icon, inv.numColumns * inv.numRows + inv.numHotseatIcons);
+        mCapacities.put(R.layout.folder_application, inv.numFolderColumns * inv.numFolderRows);
+        mCapacities.put(R.layout.all_apps_icon, inv.numColumnsDrawer * inv.numRows);
+        for (int layoutId : LAYOUTS) {
+            mViews.put(layoutId, new ArrayList<BubbleTextView>());
+        }
+    }
+
+    /**
+     * Returns an icon inflated from {@param layoutId} without layout params, or null if the
+     * pool has none.
+     */
+    public BubbleTextView obtain(int layoutId) {
+        ArrayList<BubbleTextView> views = mViews.get(layoutId);
+        if (views == null || views.isEmpty()) {
+            return null;
+        }
+        return views.remove(views.size() - 1);
+    }
+
+    /**
+     * Puts back an icon which was inflated from {@param layoutId} and is not used anymore. The
+     * icon must have been removed from its parent.
+     */
+    public void recycle(int layoutId, View view) {
+        ArrayList<BubbleTextView> views = mViews.get(layoutId);
+        if (mDestroyed || views == null || !(view instanceof BubbleTextView)
+                || view.getParent() != null || views.size() >= mCapacities.get(layoutId)) {
+            return;
+        }
+        BubbleTextView icon = (BubbleTextView) view;
+        icon.prepareForReuse();
+        views.add(icon);
+    }
+
+    /**
+     * Fills the pool the next time the main thread is idle.
+     */
+    public void fillWhenIdle() {
+        if (!mFillScheduled && !mFilling && !mDestroyed && !mBackgroundInflationFailed) {
+            mFillScheduled = true;
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    @Override
+    public boolean queueIdle() {
+        mFillScheduled = false;
+        if (mDestroyed) {
+            return false;
+        }
+        final SparseIntArray missing = new SparseIntArray();
+        for (int layoutId : LAYOUTS) {
+            int count = mCapacities.get(layoutId) - mViews.get(layoutId).size();
+            if (count > 0) {
+                missing.put(layoutId, count);
+            }
+        }
+        if (missing.size() == 0) {
+            return false;
+        }
+
+        mFilling = true;
+        // LayoutInflater is not thread safe
+        final LayoutInflater inflater = LayoutInflater.from(mLauncher).cloneInContext(mLauncher);
+        Utilities.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final SparseArray<ArrayList<BubbleTextView>> inflated = new SparseArray<>();
+                boolean failed = false;
+                try {
+                    for (int i = 0; i < missing.size(); i++) {
+                        ArrayList<BubbleTextView> views = new ArrayList<>();
+                        inflated.put(missing.keyAt(i), views);
+                        for (int j = 0; j < missing.valueAt(i); j++) {
+                            views.add((BubbleTextView) inflater.inflate(
+                                    missing.keyAt(i), null, false));
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Unable to inflate icons in the background", e);
+                    failed = true;
+                }
+                final boolean backgroundInflationFailed = failed;
+                mMainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onViewsInflated(inflated, backgroundInflationFailed);
+                    }
+                });
+            }
+        });
+        return false;
+    }
+
+    private void onViewsInflated(SparseArray<ArrayList<BubbleTextView>> inflated,
+            boolean backgroundInflationFailed) {
+        mFilling = false;
+        mBackgroundInflationFailed |= backgroundInflationFailed;
+        if (mDestroyed) {
+            return;
+        }
+        for (int i = 0; i < inflated.size(); i++) {
+            int layoutId = inflated.keyAt(i);
+            ArrayList<BubbleTextView> views = mViews.get(layoutId);
+            for (BubbleTextView view : inflated.valueAt(i)) {
+                if (views.size() < mCapacities.get(layoutId)) {
+                    views.add(view);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the pooled views, which hold on to the launcher.
+     */
+    public void destroy() {
+        mDestroyed = true;
+        if (mFillScheduled) {
+            Looper.myQueue().removeIdleHandler(this);
+            mFillScheduled = false;
+        }
+        for (int i = 0; i < mViews.size(); i++) {
+            mViews.valueAt(i).clear();
+        }
+    }
+}
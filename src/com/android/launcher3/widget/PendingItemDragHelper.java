@@ -36,7 +36,6 @@ import com.android.launcher3.Workspace;
 import com.android.launcher3.dragndrop.DragOptions;
 import com.android.launcher3.dragndrop.LivePreviewWidgetCell;
 import com.android.launcher3.graphics.DragPreviewProvider;
-import com.android.launcher3.graphics.HolographicOutlineHelper;
 import com.android.launcher3.graphics.LauncherIcons;
 
 /**
@@ -157,7 +156,7 @@ public class PendingItemDragHelper extends DragPreviewProvider {
 
 
     @Override
-    public Bitmap createDragOutline(Canvas canvas) {
+    public Bitmap createDragOutlineShape(Canvas canvas) {
         if (mAddInfo instanceof PendingAddShortcutInfo) {
             int width = mPreviewBitmap.getWidth();
             int height = mPreviewBitmap.getHeight();
@@ -173,9 +172,6 @@ public class PendingItemDragHelper extends DragPreviewProvider {
             dst.offset(blurSizeOutline / 2, blurSizeOutline / 2);
             canvas.drawBitmap(mPreviewBitmap, src, dst, new Paint(Paint.FILTER_BITMAP_FLAG));
 
-            HolographicOutlineHelper.getInstance(mView.getContext())
-                    .applyExpensiveOutlineWithBlur(b, canvas);
-
             canvas.setBitmap(null);
             return b;
         }
@@ -199,8 +195,6 @@ public class PendingItemDragHelper extends DragPreviewProvider {
         dst.offset((w - scaledWidth) / 2, (h - scaledHeight) / 2);
 
         canvas.drawBitmap(mPreviewBitmap, src, dst, null);
-        HolographicOutlineHelper.getInstance(mView.getContext())
-                .applyExpensiveOutlineWithBlur(b, canvas);
         canvas.setBitmap(null);
 
         return b;
@@ -13,6 +13,7 @@ import com.android.launcher3.AppWidgetResizeFrame;
 import com.android.launcher3.DropTarget;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.LauncherAppWidgetProviderInfo;
+import com.android.launcher3.Utilities;
 import com.android.launcher3.compat.AppWidgetManagerCompat;
 import com.android.launcher3.dragndrop.DragController;
 import com.android.launcher3.dragndrop.DragLayer;
@@ -38,6 +39,9 @@ public class WidgetHostViewLoader implements DragController.DragListener {
     // to be set back to -1.
     @Thunk int mWidgetLoadingId = -1;
 
+    // Set once the drag ends, after which a widget id bound in the background is discarded
+    @Thunk boolean mCancelled;
+
     public WidgetHostViewLoader(Launcher launcher, View view) {
         mLauncher = launcher;
         mHandler = new Handler();
@@ -58,9 +62,7 @@ public class WidgetHostViewLoader implements DragController.DragListener {
 
         // Cleanup up preloading state.
         mLauncher.getDragController().removeDragListener(this);
-
-        mHandler.removeCallbacks(mBindWidgetRunnable);
-        mHandler.removeCallbacks(mInflateWidgetRunnable);
+        mCancelled = true;
 
         // Cleanup widget id
         if (mWidgetLoadingId != -1) {
@@ -96,19 +98,31 @@ public class WidgetHostViewLoader implements DragController.DragListener {
             return false;
         }
 
+        // Allocating and binding the id are binder calls, make them in the background so that
+        // they don't delay the start of the drag.
         mBindWidgetRunnable = new Runnable() {
             @Override
             public void run() {
-                mWidgetLoadingId = mLauncher.getAppWidgetHost().allocateAppWidgetId();
+                final int widgetId = mLauncher.getAppWidgetHost().allocateAppWidgetId();
                 if (LOGD) {
-                    Log.d(TAG, "Binding widget, id: " + mWidgetLoadingId);
-                }
-                if(AppWidgetManagerCompat.getInstance(mLauncher).bindAppWidgetIdIfAllowed(
-                        mWidgetLoadingId, pInfo, options)) {
-
-                    // Widget id bound. Inflate the widget.
-                    mHandler.post(mInflateWidgetRunnable);
+                    Log.d(TAG, "Binding widget, id: " + widgetId);
                 }
+                final boolean bound = AppWidgetManagerCompat.getInstance(mLauncher)
+                        .bindAppWidgetIdIfAllowed(widgetId, pInfo, options);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mCancelled) {
+                            mLauncher.getAppWidgetHost().deleteAppWidgetId(widgetId);
+                            return;
+                        }
+                        mWidgetLoadingId = widgetId;
+                        if (bound) {
+                            // Widget id bound. Inflate the widget.
+                            mInflateWidgetRunnable.run();
+                        }
+                    }
+                });
             }
         };
 
@@ -148,7 +162,7 @@ public class WidgetHostViewLoader implements DragController.DragListener {
         if (LOGD) {
             Log.d(TAG, "About to bind/inflate widget");
         }
-        mHandler.post(mBindWidgetRunnable);
+        Utilities.THREAD_POOL_EXECUTOR.execute(mBindWidgetRunnable);
         return true;
     }
 
@@ -247,6 +247,14 @@ public class WidgetsContainerView extends BaseContainerView
         }
     }
 
+    /**
+     * Replaces the widgets of the package, without touching the other packages.
+     */
+    public void updateWidgetsForPackage(String packageName,
+            MultiHashMap<PackageItemInfo, WidgetItem> widgets) {
+        mAdapter.updateWidgetsForPackage(packageName, widgets);
+    }
+
     public boolean isEmpty() {
         return mAdapter.getItemCount() == 0;
     }
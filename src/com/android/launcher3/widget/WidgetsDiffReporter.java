@@ -16,6 +16,7 @@
 
 package com.android.launcher3.widget;
 
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.android.launcher3.IconCache;
@@ -23,6 +24,7 @@ import com.android.launcher3.model.PackageItemInfo;
 import com.android.launcher3.widget.WidgetsListAdapter.WidgetListRowEntryComparator;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 
 /**
@@ -116,6 +118,51 @@ public class WidgetsDiffReporter {
         } while(orgRowEntry != null || newRowEntry != null);
     }
 
+    /**
+     * Applies the change of a single package to {@param currentEntries}, which is sorted with
+     * {@param comparator}. The other rows are left where they are.
+     *
+     * @param newEntry the new row of the package, or null if it was removed.
+     */
+    public void processPackage(ArrayList<WidgetListRowEntry> currentEntries, String packageName,
+            @Nullable WidgetListRowEntry newEntry, WidgetListRowEntryComparator comparator) {
+        int index = -1;
+        for (int i = 0; i < currentEntries.size(); i++) {
+            if (currentEntries.get(i).pkgItem.packageName.equals(packageName)) {
+                index = i;
+                break;
+            }
+        }
+        if (DEBUG) {
+            Log.d(TAG, "processPackage " + packageName + " index=" + index + " newEntry="
+                    + newEntry);
+        }
+
+        if (index >= 0) {
+            WidgetListRowEntry orgEntry = currentEntries.get(index);
+            if (newEntry != null && comparator.compare(orgEntry, newEntry) == 0) {
+                // Same position, did the icon or the widgets change?
+                if (!isSamePackageItemInfo(orgEntry.pkgItem, newEntry.pkgItem)
+                        || !orgEntry.widgets.equals(newEntry.widgets)) {
+                    currentEntries.set(index, newEntry);
+                    mListener.notifyItemChanged(index);
+                }
+                return;
+            }
+            currentEntries.remove(index);
+            mListener.notifyItemRemoved(index);
+        }
+
+        if (newEntry != null) {
+            int position = Collections.binarySearch(currentEntries, newEntry, comparator);
+            if (position < 0) {
+                position = -position - 1;
+            }
+            currentEntries.add(position, newEntry);
+            mListener.notifyItemInserted(position);
+        }
+    }
+
     /**
      * Compare package name using the same comparator as in {@link WidgetsListAdapter}.
      * Also handle null row pointers.
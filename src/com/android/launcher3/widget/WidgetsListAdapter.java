@@ -16,6 +16,7 @@
 package com.android.launcher3.widget;
 
 import android.content.Context;
+import android.support.annotation.VisibleForTesting;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.Adapter;
 import android.util.Log;
@@ -25,6 +26,7 @@ import android.view.View.OnClickListener;
 import android.view.View.OnLongClickListener;
 import android.view.ViewGroup;
 
+import com.android.launcher3.BaseActivity;
 import com.android.launcher3.R;
 import com.android.launcher3.WidgetPreviewLoader;
 import com.android.launcher3.compat.AlphabeticIndexCompat;
@@ -63,6 +65,8 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
     private final int mIndent;
     private ArrayList<WidgetListRowEntry> mEntries = new ArrayList<>();
     private final WidgetsDiffReporter mDiffReporter;
+    private final WidgetItemComparator mWidgetComparator = new WidgetItemComparator();
+    private final WidgetListRowEntryComparator mRowComparator = new WidgetListRowEntryComparator();
 
     public WidgetsListAdapter(Context context, LayoutInflater layoutInflater,
             WidgetPreviewLoader widgetPreviewLoader, AlphabeticIndexCompat indexCompat,
@@ -105,18 +109,33 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
      * Update the widget list.
      */
     public void setWidgets(MultiHashMap<PackageItemInfo, WidgetItem> widgets) {
-        ArrayList<WidgetListRowEntry> tempEntries = new ArrayList<>();
+        ArrayList<WidgetListRowEntry> tempEntries = createRows(widgets);
+        Collections.sort(tempEntries, mRowComparator);
+        mDiffReporter.process(mEntries, tempEntries, mRowComparator);
+    }
 
-        WidgetItemComparator widgetComparator = new WidgetItemComparator();
+    /**
+     * Update the row of a single package.
+     *
+     * @param widgets the widgets of the package, empty if the package has none anymore.
+     */
+    public void updateWidgetsForPackage(String packageName,
+            MultiHashMap<PackageItemInfo, WidgetItem> widgets) {
+        ArrayList<WidgetListRowEntry> rows = createRows(widgets);
+        mDiffReporter.processPackage(mEntries, packageName,
+                rows.isEmpty() ? null : rows.get(0), mRowComparator);
+    }
+
+    private ArrayList<WidgetListRowEntry> createRows(
+            MultiHashMap<PackageItemInfo, WidgetItem> widgets) {
+        ArrayList<WidgetListRowEntry> rows = new ArrayList<>(widgets.size());
         for (Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : widgets.entrySet()) {
             WidgetListRowEntry row = new WidgetListRowEntry(entry.getKey(), entry.getValue());
             row.titleSectionName = mIndexer.computeSectionName(row.pkgItem.title);
-            Collections.sort(row.widgets, widgetComparator);
-            tempEntries.add(row);
+            Collections.sort(row.widgets, mWidgetComparator);
+            rows.add(row);
         }
-        WidgetListRowEntryComparator rowComparator = new WidgetListRowEntryComparator();
-        Collections.sort(tempEntries, rowComparator);
-        mDiffReporter.process(mEntries, tempEntries, rowComparator);
+        return rows;
     }
 
     @Override
@@ -128,6 +147,11 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
         return mEntries.get(pos).titleSectionName;
     }
 
+    @VisibleForTesting
+    String getPackageName(int pos) {
+        return mEntries.get(pos).pkgItem.packageName;
+    }
+
     /**
      * Copies and returns the widgets associated with the package and user of the ComponentKey.
      */
@@ -148,6 +172,19 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
         return null;
     }
 
+    /**
+     * Starts loading the previews of the row at {@param pos}, before the row is bound.
+     */
+    public void prefetchPreviews(int pos, BaseActivity activity) {
+        if (pos < 0 || pos >= mEntries.size()) {
+            return;
+        }
+        int previewSize = WidgetCell.getPresetPreviewSize(activity.getDeviceProfile());
+        for (WidgetItem item : mEntries.get(pos).widgets) {
+            mWidgetPreviewLoader.prefetchPreview(activity, item, previewSize, previewSize);
+        }
+    }
+
     @Override
     public void onBindViewHolder(WidgetsRowViewHolder holder, int pos) {
         WidgetListRowEntry entry = mEntries.get(pos);
@@ -19,9 +19,11 @@ package com.android.launcher3.widget;
 import android.content.Context;
 import android.graphics.Color;
 import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
 import android.view.View;
 
+import com.android.launcher3.BaseActivity;
 import com.android.launcher3.BaseRecyclerView;
 
 /**
@@ -30,7 +32,11 @@ import com.android.launcher3.BaseRecyclerView;
 public class WidgetsRecyclerView extends BaseRecyclerView {
 
     private static final String TAG = "WidgetsRecyclerView";
+    // Number of rows beyond the visible ones, in the scroll direction, whose previews are loaded
+    private static final int PREFETCH_ROW_COUNT = 2;
+
     private WidgetsListAdapter mAdapter;
+    private int mLastPrefetchedPosition = NO_POSITION;
 
     public WidgetsRecyclerView(Context context) {
         this(context, null);
@@ -57,6 +63,34 @@ public class WidgetsRecyclerView extends BaseRecyclerView {
         // create a layout manager with Launcher's context so that scroll position
         // can be preserved during screen rotation.
         setLayoutManager(new LinearLayoutManager(getContext()));
+        addOnScrollListener(new OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                prefetchPreviews(dy);
+            }
+        });
+    }
+
+    /**
+     * Starts loading the previews of the rows which are about to be scrolled into view.
+     */
+    private void prefetchPreviews(int dy) {
+        if (dy == 0 || mAdapter == null || isModelNotReady()) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) getLayoutManager();
+        int step = dy > 0 ? 1 : -1;
+        int position = dy > 0 ? layoutManager.findLastVisibleItemPosition() + 1
+                : layoutManager.findFirstVisibleItemPosition() - 1;
+        if (position == mLastPrefetchedPosition) {
+            return;
+        }
+        mLastPrefetchedPosition = position;
+
+        BaseActivity activity = BaseActivity.fromContext(getContext());
+        for (int i = 0; i < PREFETCH_ROW_COUNT; i++) {
+            mAdapter.prefetchPreviews(position + i * step, activity);
+        }
     }
 
     @Override
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps.search;
+
+import android.content.ComponentName;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.android.launcher3.AppInfo;
+import com.android.launcher3.allapps.search.DefaultAppSearchAlgorithm.StringMatcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares searching 1,000 multilingual titles keystroke by keystroke through
+ * {@link AppSearchIndex} with the per-title scan it replaced.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class AppSearchIndexBenchmark {
+
+    private static final String TAG = "AppSearchIndexBench";
+
+    private static final int APP_COUNT = 1000;
+    private static final int ITERATIONS = 5;
+
+    private static final String[] WORDS = {
+            "Mail", "Calendar", "Photo", "Music", "Weather", "Maps", "Notes", "Clock",
+            "Camera", "Files", "Chrome", "Messenger", "Wallet", "Fitness", "Radio",
+            "Café", "Élan", "Über", "Straße", "Façade", "Ærø", "Señor", "Mañana",
+            "Почта", "Календарь", "Музыка", "Карты", "Погода",
+            "电子邮件", "日历", "相机", "地图", "音乐", "天气",
+            "メール", "カレンダー", "カメラ", "ミュージック",
+            "다운로드", "드라이브", "카메라", "음악", "날씨",
+            "البريد", "التقويم", "الكاميرا", "الخرائط",
+            "Ημερολόγιο", "Μουσική", "Χάρτες",
+            "डाउनलोड", "कैमरा", "संगीत",
+            "2048", "K9", "HD", "TV", "Pro", "Lite", "GO",
+    };
+
+    private static final String[] QUERIES = {
+            "mail", "cal", "cafe", "ube", "stras", "почт", "карт", "电子", "日", "カメ",
+            "다운", "ㄷ", "الكا", "ημερ", "डाउ", "20", "hd tv", "pro", "go", "x",
+    };
+
+    @Test
+    public void testSearch() {
+        List<AppInfo> apps = generateApps(new Random(42));
+        StringMatcher matcher = StringMatcher.getInstance();
+
+        long scanTime = 0;
+        long indexTime = 0;
+        long indexBuildTime = 0;
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            // A fresh index per iteration, to include the cost of building it.
+            long start = System.nanoTime();
+            AppSearchIndex index = new AppSearchIndex(matcher);
+            index.update(apps);
+            indexBuildTime += System.nanoTime() - start;
+
+            for (String query : QUERIES) {
+                List<AppInfo> lastMatches = null;
+                for (int length = 1; length <= query.length(); length++) {
+                    String prefix = query.substring(0, length);
+
+                    start = System.nanoTime();
+                    List<AppInfo> expected = new ArrayList<>();
+                    for (AppInfo info : apps) {
+                        if (DefaultAppSearchAlgorithm.matches(info, prefix, matcher)) {
+                            expected.add(info);
+                        }
+                    }
+                    scanTime += System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    index.update(apps);
+                    List<AppInfo> actual = index.filter(
+                            lastMatches == null ? apps : lastMatches, matcher.newQuery(prefix));
+                    indexTime += System.nanoTime() - start;
+
+                    assertEquals(prefix, expected, actual);
+                    lastMatches = actual;
+                }
+            }
+        }
+
+        Log.d(TAG, String.format("%d titles, %d iterations: scan=%.1fms, index=%.1fms"
+                + " (of which building=%.1fms)", APP_COUNT, ITERATIONS, scanTime / 1e6f,
+                (indexTime + indexBuildTime) / 1e6f, indexBuildTime / 1e6f));
+    }
+
+    private static List<AppInfo> generateApps(Random random) {
+        List<AppInfo> apps = new ArrayList<>(APP_COUNT);
+        for (int i = 0; i < APP_COUNT; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    title.append(random.nextBoolean() ? " " : "");
+                }
+                title.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            AppInfo info = new AppInfo();
+            info.title = title.toString();
+            info.componentName = new ComponentName("com.example.app" + i, "Main");
+            apps.add(info);
+        }
+        return apps;
+    }
+}
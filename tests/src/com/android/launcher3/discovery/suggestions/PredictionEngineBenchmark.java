@@ -0,0 +1,240 @@
+package com.android.launcher3.discovery.suggestions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Replays a launch log through {@link PredictionEngine} and the lifetime counters it replaced,
+ * and reports the ranking latency and how often the launched app was among the predictions.
+ *
+ * The log recorded on the device is used when it is long enough, otherwise a synthetic log
+ * with daily and weekly routines is generated.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class PredictionEngineBenchmark {
+
+    private static final String TAG = "PredictionEngineBench";
+
+    private static final int PREDICTION_COUNT = 9;
+    private static final int MIN_RECORDED_LAUNCHES = 500;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    @Test
+    public void testEngineOrder() {
+        PredictionEngine<String> engine = new PredictionEngine<>(
+                new PredictionEngine.Params(), TimeZone.getTimeZone("UTC"));
+        long time = 0;
+        // "old" was used heavily a long time ago, "new" a little more recently
+        for (int i = 0; i < 20; i++) {
+            engine.onLaunch("old", time, false);
+        }
+        time += 90 * 24 * HOUR_MS;
+        for (int i = 0; i < 5; i++) {
+            engine.onLaunch("new", time, false);
+        }
+        assertEquals(Arrays.asList("new", "old"), engine.getPredictions(time, false, 2));
+
+        engine.remove("new");
+        assertEquals(Collections.singletonList("old"), engine.getPredictions(time, false, 2));
+    }
+
+    @Test
+    public void testReplay() {
+        List<LaunchEvent> log = SuggestionsDatabaseHelper
+                .getInstance(InstrumentationRegistry.getTargetContext()).getLaunchLog(0);
+        String source = "recorded";
+        if (log.size() < MIN_RECORDED_LAUNCHES) {
+            log = generateLog(new Random(42), 60, 80);
+            source = "synthetic";
+        }
+
+        Result engine = replay(log, new EngineRanker());
+        Result counters = replay(log, new CounterRanker());
+        Log.d(TAG, "Replayed " + log.size() + " " + source + " launches");
+        Log.d(TAG, "PredictionEngine: " + engine);
+        Log.d(TAG, "Lifetime counters: " + counters);
+
+        if (source.equals("synthetic")) {
+            assertTrue(engine.hits >= counters.hits);
+        }
+    }
+
+    private static Result replay(List<LaunchEvent> log, Ranker ranker) {
+        Result result = new Result();
+        long[] latencies = new long[log.size()];
+        for (int i = 0; i < log.size(); i++) {
+            LaunchEvent launch = log.get(i);
+            long start = System.nanoTime();
+            List<ComponentName> predictions =
+                    ranker.getPredictions(launch.time, launch.headset, PREDICTION_COUNT);
+            latencies[i] = System.nanoTime() - start;
+            if (predictions.contains(launch.component)) {
+                result.hits++;
+            }
+            ranker.onLaunch(launch);
+        }
+        result.launches = log.size();
+        Arrays.sort(latencies);
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        result.meanLatencyUs = latencies.length == 0 ? 0 : total / latencies.length / 1000f;
+        result.p95LatencyUs = latencies.length == 0
+                ? 0 : latencies[(int) (latencies.length * 0.95f)] / 1000f;
+        return result;
+    }
+
+    /**
+     * Generates a log where every app has a preferred set of hours and days, plus some noise,
+     * and where habits change half way through.
+     */
+    private static List<LaunchEvent> generateLog(Random random, int days, int appCount) {
+        List<LaunchEvent> log = new ArrayList<>();
+        ComponentName[] apps = new ComponentName[appCount];
+        int[] preferredHour = new int[appCount];
+        for (int i = 0; i < appCount; i++) {
+            apps[i] = new ComponentName("com.example.app" + i, "Main");
+            preferredHour[i] = random.nextInt(24);
+        }
+
+        long time = 1500000000000L;
+        for (int day = 0; day < days; day++) {
+            if (day == days / 2) {
+                // Habits change
+                for (int i = 0; i < appCount; i++) {
+                    preferredHour[i] = random.nextInt(24);
+                }
+            }
+            boolean weekend = day % 7 >= 5;
+            for (int hour = 7; hour < 24; hour++) {
+                int launches = random.nextInt(weekend ? 4 : 7);
+                for (int j = 0; j < launches; j++) {
+                    int app;
+                    if (random.nextFloat() < 0.7f) {
+                        // Pick among the apps used around this hour, favouring the first ones
+                        List<Integer> candidates = new ArrayList<>();
+                        for (int i = 0; i < appCount; i++) {
+                            if (Math.abs(preferredHour[i] - hour) <= 1) {
+                                candidates.add(i);
+                            }
+                        }
+                        app = candidates.isEmpty() ? random.nextInt(appCount)
+                                : candidates.get((int) (Math.pow(random.nextFloat(), 2)
+                                        * candidates.size()));
+                    } else {
+                        app = (int) (Math.pow(random.nextFloat(), 3) * appCount);
+                    }
+                    long offset = random.nextInt((int) HOUR_MS);
+                    log.add(new LaunchEvent(apps[app], time + hour * HOUR_MS + offset,
+                            random.nextFloat() < 0.1f));
+                }
+            }
+            time += 24 * HOUR_MS;
+        }
+        Collections.sort(log, new Comparator<LaunchEvent>() {
+            @Override
+            public int compare(LaunchEvent a, LaunchEvent b) {
+                return Long.compare(a.time, b.time);
+            }
+        });
+        return log;
+    }
+
+    private static class Result {
+        int launches;
+        int hits;
+        float meanLatencyUs;
+        float p95LatencyUs;
+
+        @Override
+        public String toString() {
+            return String.format("hit-rate@%d=%.3f, mean=%.1fus, p95=%.1fus", PREDICTION_COUNT,
+                    launches == 0 ? 0 : (float) hits / launches, meanLatencyUs, p95LatencyUs);
+        }
+    }
+
+    private interface Ranker {
+        List<ComponentName> getPredictions(long time, boolean headset, int count);
+        void onLaunch(LaunchEvent launch);
+    }
+
+    private static class EngineRanker implements Ranker {
+        private final PredictionEngine<ComponentName> mEngine = new PredictionEngine<>();
+
+        @Override
+        public List<ComponentName> getPredictions(long time, boolean headset, int count) {
+            return mEngine.getPredictions(time, headset, count);
+        }
+
+        @Override
+        public void onLaunch(LaunchEvent launch) {
+            mEngine.onLaunch(launch.component, launch.time, launch.headset);
+        }
+    }
+
+    /**
+     * Ranks by lifetime launch count in the current context, like the original implementation
+     * which sorted the whole table for every query.
+     */
+    private static class CounterRanker implements Ranker {
+        private final HashMap<ComponentName, int[]> mCounters = new HashMap<>();
+
+        @Override
+        public List<ComponentName> getPredictions(long time, boolean headset, int count) {
+            final int context = getContext(time, headset);
+            List<Map.Entry<ComponentName, int[]>> entries = new ArrayList<>(mCounters.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<ComponentName, int[]>>() {
+                @Override
+                public int compare(Map.Entry<ComponentName, int[]> a,
+                        Map.Entry<ComponentName, int[]> b) {
+                    return Integer.compare(b.getValue()[context], a.getValue()[context]);
+                }
+            });
+            List<ComponentName> result = new ArrayList<>();
+            for (int i = 0; i < entries.size() && i < count; i++) {
+                result.add(entries.get(i).getKey());
+            }
+            return result;
+        }
+
+        @Override
+        public void onLaunch(LaunchEvent launch) {
+            int[] counters = mCounters.get(launch.component);
+            if (counters == null) {
+                counters = new int[SuggestionCandidate.CONTEXT_COUNT];
+                mCounters.put(launch.component, counters);
+            }
+            counters[getContext(launch.time, launch.headset)]++;
+        }
+
+        private static int getContext(long time, boolean headset) {
+            if (headset) {
+                return SuggestionCandidate.CONTEXT_HEADSET;
+            }
+            int hour = (int) ((time + TimeZone.getDefault().getOffset(time)) / HOUR_MS % 24);
+            return hour > 5 && hour < 21
+                    ? SuggestionCandidate.CONTEXT_DAY : SuggestionCandidate.CONTEXT_NIGHT;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Unit tests for {@link BitmapPool}
+ */
+@SmallTest
+public class BitmapPoolTest extends TestCase {
+
+    public void testReuseLargerBitmap() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = pool.acquire(64, 64, Config.ARGB_8888);
+        bitmap.eraseColor(Color.RED);
+        pool.release(bitmap);
+
+        Bitmap reused = pool.acquire(48, 48, Config.ARGB_8888);
+        assertSame(bitmap, reused);
+        assertEquals(48, reused.getWidth());
+        assertEquals(48, reused.getHeight());
+        assertEquals(Color.TRANSPARENT, reused.getPixel(10, 10));
+    }
+
+    public void testNoReuseOfSmallerBitmap() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = pool.acquire(16, 16, Config.ARGB_8888);
+        pool.release(bitmap);
+        assertNotSame(bitmap, pool.acquire(64, 64, Config.ARGB_8888));
+    }
+
+    public void testNoReuseOfMuchLargerBitmap() {
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap bitmap = pool.acquire(256, 256, Config.ARGB_8888);
+        pool.release(bitmap);
+        assertNotSame(bitmap, pool.acquire(16, 16, Config.ARGB_8888));
+    }
+
+    public void testBudget() {
+        BitmapPool pool = new BitmapPool(2 * 32 * 32 * 4);
+        Bitmap first = pool.acquire(32, 32, Config.ARGB_8888);
+        Bitmap second = pool.acquire(32, 32, Config.ARGB_8888);
+        Bitmap third = pool.acquire(32, 32, Config.ARGB_8888);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        // The least recently released bitmap was dropped
+        Bitmap a = pool.acquire(32, 32, Config.ARGB_8888);
+        Bitmap b = pool.acquire(32, 32, Config.ARGB_8888);
+        assertTrue(a == second || a == third);
+        assertTrue(b == second || b == third);
+        assertNotSame(first, pool.acquire(32, 32, Config.ARGB_8888));
+    }
+
+    public void testDecodeReusesBitmap() {
+        Bitmap source = Bitmap.createBitmap(20, 30, Config.ARGB_8888);
+        source.eraseColor(Color.BLUE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.PNG, 100, out);
+
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        Bitmap pooled = pool.acquire(32, 32, Config.ARGB_8888);
+        pool.release(pooled);
+
+        Bitmap decoded = pool.decode(out.toByteArray(), null);
+        assertSame(pooled, decoded);
+        assertEquals(20, decoded.getWidth());
+        assertEquals(30, decoded.getHeight());
+        assertEquals(Color.BLUE, decoded.getPixel(5, 5));
+    }
+}
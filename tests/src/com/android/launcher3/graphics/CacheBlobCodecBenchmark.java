@@ -0,0 +1,97 @@
+package com.android.launcher3.graphics;
+
+import static com.android.launcher3.util.BenchmarkIcons.ICON_SIZE;
+import static com.android.launcher3.util.BenchmarkIcons.ITERATIONS;
+import static com.android.launcher3.util.BenchmarkIcons.WARMUP_ITERATIONS;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.android.launcher3.util.BenchmarkIcons;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the encode and decode time, and the size, of the cache blob codecs on the icons of
+ * the installed apps, at full and low resolution. Round trips are tested by
+ * {@link CacheBlobCodecTest}.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CacheBlobCodecBenchmark {
+
+    private static final String TAG = "CacheBlobCodecBench";
+
+    private static final int LOW_RES_SCALE_FACTOR = 5;
+
+    @Test
+    public void testCodecs() {
+        List<Bitmap> icons = loadIcons(InstrumentationRegistry.getTargetContext());
+        assertTrue(icons.size() > 0);
+
+        for (CacheBlobCodec codec : new CacheBlobCodec[] {
+                CacheBlobCodec.PNG, CacheBlobCodec.RAW_DEFLATE}) {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                run(codec, icons);
+            }
+            long encodeTime = 0;
+            long decodeTime = 0;
+            long size = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long[] result = run(codec, icons);
+                encodeTime += result[0];
+                decodeTime += result[1];
+                size = result[2];
+            }
+            Log.d(TAG, String.format("codec=%d, %d bitmaps: encode=%.1fms, decode=%.1fms,"
+                    + " size=%dKB", codec.tag, icons.size(), encodeTime / 1e6f / ITERATIONS,
+                    decodeTime / 1e6f / ITERATIONS, size / 1024));
+        }
+    }
+
+    /**
+     * @return the encode time, decode time and total size in bytes
+     */
+    private static long[] run(CacheBlobCodec codec, List<Bitmap> icons) {
+        long encodeTime = 0;
+        long decodeTime = 0;
+        long size = 0;
+        for (Bitmap icon : icons) {
+            long start = System.nanoTime();
+            byte[] blob = codec.encode(icon);
+            encodeTime += System.nanoTime() - start;
+            size += blob.length;
+
+            // Low res icons are decoded with the config used by the icon cache
+            Config config = icon.getWidth() < ICON_SIZE ? Config.RGB_565 : null;
+            start = System.nanoTime();
+            Bitmap decoded = CacheBlobCodec.decode(blob, config);
+            decodeTime += System.nanoTime() - start;
+            BitmapPool.getInstance().release(decoded);
+        }
+        return new long[] {encodeTime, decodeTime, size};
+    }
+
+    /**
+     * Returns the icons of the installed apps, at full and low resolution.
+     */
+    private static List<Bitmap> loadIcons(Context context) {
+        List<Bitmap> icons = new ArrayList<>();
+        for (Bitmap icon : BenchmarkIcons.loadIcons(context)) {
+            icons.add(icon);
+            icons.add(Bitmap.createScaledBitmap(icon, ICON_SIZE / LOW_RES_SCALE_FACTOR,
+                    ICON_SIZE / LOW_RES_SCALE_FACTOR, true));
+        }
+        return icons;
+    }
+}
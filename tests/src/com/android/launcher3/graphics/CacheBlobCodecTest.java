@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Color;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link CacheBlobCodec}
+ */
+@SmallTest
+public class CacheBlobCodecTest extends TestCase {
+
+    public void testRoundTrip() {
+        Bitmap bitmap = createIcon(Color.argb(0x80, 0x10, 0x80, 0xF0));
+        Bitmap decoded = CacheBlobCodec.decode(CacheBlobCodec.RAW_DEFLATE.encode(bitmap), null);
+        assertNotNull(decoded);
+        assertEquals(Config.ARGB_8888, decoded.getConfig());
+        assertTrue(bitmap.sameAs(decoded));
+    }
+
+    public void testOpaqueLowResDecodedAsRgb565() {
+        Bitmap bitmap = createIcon(Color.rgb(0xF8, 0x80, 0x08));
+        Bitmap decoded = CacheBlobCodec.decode(CacheBlobCodec.RAW_DEFLATE.encode(bitmap),
+                Config.RGB_565);
+        assertNotNull(decoded);
+        assertEquals(Config.RGB_565, decoded.getConfig());
+        assertEquals(bitmap.getWidth(), decoded.getWidth());
+        assertEquals(bitmap.getHeight(), decoded.getHeight());
+        // These channels are exact in RGB_565
+        assertEquals(Color.rgb(0xF8, 0x80, 0x08), decoded.getPixel(0, 0));
+        assertEquals(Color.WHITE, decoded.getPixel(bitmap.getWidth() - 1, 0));
+    }
+
+    public void testTranslucentLowResKeepsAlpha() {
+        Bitmap bitmap = createIcon(Color.TRANSPARENT);
+        Bitmap decoded = CacheBlobCodec.decode(CacheBlobCodec.RAW_DEFLATE.encode(bitmap),
+                Config.RGB_565);
+        assertNotNull(decoded);
+        assertEquals(Config.ARGB_8888, decoded.getConfig());
+        assertTrue(bitmap.sameAs(decoded));
+    }
+
+    /**
+     * Returns a small icon filled with {@param color}, with a white last column.
+     */
+    private static Bitmap createIcon(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(38, 38, Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.setPixel(bitmap.getWidth() - 1, y, Color.WHITE);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,139 @@
+package com.android.launcher3.graphics;
+
+import static com.android.launcher3.util.BenchmarkIcons.ICON_SIZE;
+import static com.android.launcher3.util.BenchmarkIcons.ITERATIONS;
+import static com.android.launcher3.util.BenchmarkIcons.WARMUP_ITERATIONS;
+import static com.android.launcher3.util.BenchmarkIcons.loadIconDrawables;
+import static com.android.launcher3.util.BenchmarkIcons.renderIcons;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ * Compares the empty and default icon checks of {@link IconPixelScanner} with the bitmap
+ * comparisons they replace, on the icons of the installed apps.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class IconPixelScannerBenchmark {
+
+    private static final String TAG = "IconPixelScannerBench";
+
+    @Test
+    public void testIsEmpty() {
+        List<Bitmap> icons = renderIcons(
+                loadIconDrawables(InstrumentationRegistry.getTargetContext()));
+        assertTrue(icons.size() > 0);
+        // Add an empty icon, as returned by icon packs which don't theme an app
+        icons.add(Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888));
+
+        for (Bitmap icon : icons) {
+            assertEquals(isEmptyLegacy(icon), IconPixelScanner.isEmpty(icon));
+        }
+
+        long legacyTime = 0;
+        long scanTime = 0;
+        for (int i = -WARMUP_ITERATIONS; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            for (Bitmap icon : icons) {
+                isEmptyLegacy(icon);
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (Bitmap icon : icons) {
+                IconPixelScanner.isEmpty(icon);
+            }
+            long scan = System.nanoTime() - start;
+            if (i >= 0) {
+                legacyTime += legacy;
+                scanTime += scan;
+            }
+        }
+        Log.d(TAG, String.format("isEmpty, %d bitmaps: sameAs=%.2fms, scan=%.2fms",
+                icons.size(), legacyTime / 1e6f / ITERATIONS, scanTime / 1e6f / ITERATIONS));
+    }
+
+    @Test
+    public void testIsDefault() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        Drawable defaultIcon = context.getPackageManager().getDefaultActivityIcon();
+        List<Drawable> icons = loadIconDrawables(context);
+        assertTrue(icons.size() > 0);
+        icons.add(defaultIcon);
+        icons.add(new BitmapDrawable(context.getResources(), toBitmap(defaultIcon)));
+
+        IconPixelScanner.IconMatcher matcher = new IconPixelScanner.IconMatcher(defaultIcon);
+        Bitmap defaultBitmap = toBitmap(defaultIcon);
+        for (Drawable icon : icons) {
+            if (isDefaultLegacy(icon, defaultIcon, defaultBitmap)) {
+                assertTrue(matcher.matches(icon));
+            }
+        }
+        assertTrue(matcher.matches(defaultIcon));
+        assertFalse(matcher.matches(new BitmapDrawable(context.getResources(),
+                Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888))));
+
+        long legacyTime = 0;
+        long matchTime = 0;
+        for (int i = -WARMUP_ITERATIONS; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            for (Drawable icon : icons) {
+                isDefaultLegacy(icon, defaultIcon, defaultBitmap);
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (Drawable icon : icons) {
+                matcher.matches(icon);
+            }
+            long match = System.nanoTime() - start;
+            if (i >= 0) {
+                legacyTime += legacy;
+                matchTime += match;
+            }
+        }
+        Log.d(TAG, String.format("isDefault, %d drawables: rasterize=%.2fms, matcher=%.2fms",
+                icons.size(), legacyTime / 1e6f / ITERATIONS, matchTime / 1e6f / ITERATIONS));
+    }
+
+    private static boolean isEmptyLegacy(Bitmap bm) {
+        return bm.sameAs(Bitmap.createBitmap(bm.getWidth(), bm.getHeight(), bm.getConfig()));
+    }
+
+    private static boolean isDefaultLegacy(Drawable drawable, Drawable defaultIcon,
+            Bitmap defaultBitmap) {
+        Drawable.ConstantState state = drawable.getConstantState();
+        return (state != null && state.equals(defaultIcon.getConstantState()))
+                || toBitmap(drawable).sameAs(defaultBitmap);
+    }
+
+    private static Bitmap toBitmap(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            return ((BitmapDrawable) drawable).getBitmap();
+        }
+        int width = Math.max(drawable.getIntrinsicWidth(), 1);
+        int height = Math.max(drawable.getIntrinsicHeight(), 1);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(canvas);
+        canvas.setBitmap(null);
+        return bitmap;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The icons of the installed apps and the iteration counts shared by the benchmarks.
+ */
+public class BenchmarkIcons {
+
+    public static final int ICON_SIZE = 192;
+    public static final int WARMUP_ITERATIONS = 2;
+    public static final int ITERATIONS = 5;
+
+    /**
+     * Returns the icons of the launcher activities of the installed apps.
+     */
+    public static List<Drawable> loadIconDrawables(Context context) {
+        PackageManager pm = context.getPackageManager();
+        Intent intent = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER);
+        List<Drawable> icons = new ArrayList<>();
+        for (ResolveInfo info : pm.queryIntentActivities(intent, 0)) {
+            icons.add(info.loadIcon(pm));
+        }
+        return icons;
+    }
+
+    /**
+     * Returns the icons of the launcher activities of the installed apps, drawn in
+     * {@link #ICON_SIZE} bitmaps.
+     */
+    public static List<Bitmap> loadIcons(Context context) {
+        return renderIcons(loadIconDrawables(context));
+    }
+
+    /**
+     * Returns the drawables drawn in {@link #ICON_SIZE} bitmaps.
+     */
+    public static List<Bitmap> renderIcons(List<Drawable> drawables) {
+        List<Bitmap> icons = new ArrayList<>();
+        Canvas canvas = new Canvas();
+        for (Drawable drawable : drawables) {
+            Bitmap icon = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
+            canvas.setBitmap(icon);
+            drawable.setBounds(0, 0, ICON_SIZE, ICON_SIZE);
+            drawable.draw(canvas);
+            canvas.setBitmap(null);
+            icons.add(icon);
+        }
+        return icons;
+    }
+}
@@ -0,0 +1,118 @@
+package com.android.launcher3.util;
+
+import static com.android.launcher3.util.BenchmarkIcons.ICON_SIZE;
+import static com.android.launcher3.util.BenchmarkIcons.ITERATIONS;
+import static com.android.launcher3.util.BenchmarkIcons.WARMUP_ITERATIONS;
+import static com.android.launcher3.util.BenchmarkIcons.loadIcons;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.android.launcher3.graphics.BitmapPool;
+import com.android.launcher3.graphics.CacheBlobCodec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Compares reading the icons of the installed apps from an {@link IconAtlas} with reading them
+ * from a SQLite table of encoded blobs, as the icon cache does.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class IconAtlasBenchmark {
+
+    private static final String TAG = "IconAtlasBench";
+
+    private static final long MAX_BYTES = 256 * 1024 * 1024;
+
+    private File mAtlasFile;
+    private File mDbFile;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mAtlasFile = new File(context.getCacheDir(), "icon-atlas-test");
+        mDbFile = new File(context.getCacheDir(), "icon-atlas-test.db");
+        mAtlasFile.delete();
+        mDbFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mAtlasFile.delete();
+        mDbFile.delete();
+    }
+
+    @Test
+    public void testReadTime() {
+        List<Bitmap> icons = loadIcons(InstrumentationRegistry.getTargetContext());
+        assertTrue(icons.size() > 0);
+
+        IconAtlas atlas = new IconAtlas(mAtlasFile, ICON_SIZE, MAX_BYTES);
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(mDbFile, null);
+        db.execSQL("CREATE TABLE icons (componentName TEXT PRIMARY KEY, icon BLOB)");
+        CacheBlobCodec codec = CacheBlobCodec.getDefault();
+        for (int i = 0; i < icons.size(); i++) {
+            assertTrue(atlas.put(getComponent(i), 0, icons.get(i)));
+            ContentValues values = new ContentValues();
+            values.put("componentName", getComponent(i));
+            values.put("icon", codec.encode(icons.get(i)));
+            db.insert("icons", null, values);
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            readFromDb(db, icons.size());
+            readFromAtlas(atlas, icons.size());
+        }
+        long dbTime = 0;
+        long atlasTime = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            dbTime += readFromDb(db, icons.size());
+            atlasTime += readFromAtlas(atlas, icons.size());
+        }
+        db.close();
+
+        Log.d(TAG, String.format("%d icons: sqlite=%.1fms, atlas=%.1fms, atlas size=%dKB",
+                icons.size(), dbTime / 1e6f / ITERATIONS, atlasTime / 1e6f / ITERATIONS,
+                mAtlasFile.length() / 1024));
+    }
+
+    private static long readFromDb(SQLiteDatabase db, int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Cursor c = db.query("icons", new String[] {"icon"}, "componentName = ?",
+                    new String[] {getComponent(i)}, null, null, null);
+            assertTrue(c.moveToNext());
+            Bitmap icon = CacheBlobCodec.decode(c.getBlob(0), null);
+            c.close();
+            BitmapPool.getInstance().release(icon);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long readFromAtlas(IconAtlas atlas, int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            BitmapPool.getInstance().release(atlas.get(getComponent(i), 0));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String getComponent(int index) {
+        return "com.example.app" + index + "/.Main";
+    }
+}
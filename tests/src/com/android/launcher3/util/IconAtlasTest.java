@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests for {@link IconAtlas}
+ */
+@SmallTest
+public class IconAtlasTest extends AndroidTestCase {
+
+    private static final int ICON_SIZE = 48;
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    // Offset of the state of the first slot, after the file header
+    private static final int FIRST_SLOT_STATE_OFFSET = 12;
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), "icon-atlas-test");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testIconsSurviveReload() {
+        IconAtlas atlas = new IconAtlas(mFile, ICON_SIZE, MAX_BYTES);
+        assertTrue(atlas.put("com.example/.A", 0, createIcon(Color.RED)));
+        assertTrue(atlas.put("com.example/.B", 0, createIcon(Color.GREEN)));
+        // Replacing an icon moves it to another slot
+        assertTrue(atlas.put("com.example/.A", 0, createIcon(Color.BLUE)));
+
+        atlas = new IconAtlas(mFile, ICON_SIZE, MAX_BYTES);
+        assertTrue(createIcon(Color.BLUE).sameAs(atlas.get("com.example/.A", 0)));
+        assertTrue(createIcon(Color.GREEN).sameAs(atlas.get("com.example/.B", 0)));
+        assertNull(atlas.get("com.example/.A", 1));
+    }
+
+    public void testRemovedIconsStayRemoved() {
+        IconAtlas atlas = new IconAtlas(mFile, ICON_SIZE, MAX_BYTES);
+        assertTrue(atlas.put("com.example/.A", 0, createIcon(Color.RED)));
+        assertTrue(atlas.put("com.example/.B", 0, createIcon(Color.GREEN)));
+        assertTrue(atlas.put("com.other/.C", 0, createIcon(Color.BLUE)));
+        atlas.remove("com.example/.A", 0);
+        atlas.removePackage("com.other", 0);
+
+        atlas = new IconAtlas(mFile, ICON_SIZE, MAX_BYTES);
+        assertNull(atlas.get("com.example/.A", 0));
+        assertNull(atlas.get("com.other/.C", 0));
+        assertNotNull(atlas.get("com.example/.B", 0));
+    }
+
+    public void testUncommittedSlotIgnored() throws Exception {
+        IconAtlas atlas = new IconAtlas(mFile, ICON_SIZE, MAX_BYTES);
+        assertTrue(atlas.put("com.example/.A", 0, createIcon(Color.RED)));
+
+        // Simulate a crash before the state of the first slot was written
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.seek(FIRST_SLOT_STATE_OFFSET);
+            raf.writeInt(0);
+        }
+        atlas = new IconAtlas(mFile, ICON_SIZE, MAX_BYTES);
+        assertNull(atlas.get("com.example/.A", 0));
+        assertTrue(atlas.put("com.example/.A", 0, createIcon(Color.RED)));
+        assertNotNull(atlas.get("com.example/.A", 0));
+    }
+
+    public void testOtherSizesNotStored() {
+        IconAtlas atlas = new IconAtlas(mFile, ICON_SIZE, MAX_BYTES);
+        assertTrue(atlas.put("com.example/.A", 0, createIcon(Color.RED)));
+
+        // Storing an icon of another size removes the previous one
+        Bitmap icon = Bitmap.createBitmap(ICON_SIZE / 2, ICON_SIZE / 2, Bitmap.Config.ARGB_8888);
+        assertFalse(atlas.put("com.example/.A", 0, icon));
+        assertNull(atlas.get("com.example/.A", 0));
+    }
+
+    public void testFullAtlas() {
+        // Room for a single icon
+        long maxBytes = 12 + 256 + ICON_SIZE * ICON_SIZE * 4;
+        IconAtlas atlas = new IconAtlas(mFile, ICON_SIZE, maxBytes);
+        assertTrue(atlas.put("com.example/.A", 0, createIcon(Color.RED)));
+        assertFalse(atlas.put("com.example/.B", 0, createIcon(Color.GREEN)));
+        assertNull(atlas.get("com.example/.B", 0));
+        assertNotNull(atlas.get("com.example/.A", 0));
+    }
+
+    private static Bitmap createIcon(int color) {
+        Bitmap icon = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
+        icon.eraseColor(color);
+        return icon;
+    }
+}
@@ -0,0 +1,98 @@
+package com.android.launcher3.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link RecordQueueFile}
+ */
+@SmallTest
+public class RecordQueueFileTest extends AndroidTestCase {
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), "record-queue-test");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new RecordQueueFile(mFile).clear();
+        mFile.delete();
+        new File(mFile.getPath() + ".blobs").delete();
+        super.tearDown();
+    }
+
+    public void testRecordsSurviveReload() throws Exception {
+        RecordQueueFile queue = new RecordQueueFile(mFile);
+        long first = queue.add(new byte[] {1, 2, 3});
+        long second = queue.add(new byte[] {4}, new byte[] {5, 6});
+        long third = queue.add(new byte[] {7});
+        queue.remove(first);
+
+        queue = new RecordQueueFile(mFile);
+        LongArrayMap<byte[]> records = queue.getAll();
+        assertEquals(2, records.size());
+        assertFalse(records.containsKey(first));
+        assertTrue(Arrays.equals(new byte[] {4}, records.get(second)));
+        assertTrue(Arrays.equals(new byte[] {7}, records.get(third)));
+        assertTrue(Arrays.equals(new byte[] {5, 6}, queue.getBlob(second)));
+        assertNull(queue.getBlob(third));
+
+        // New ids follow the highest id in the file. Ids of removed records can be reused once
+        // compaction drops them.
+        assertTrue(queue.add(new byte[0]) > third);
+    }
+
+    public void testClear() throws Exception {
+        RecordQueueFile queue = new RecordQueueFile(mFile);
+        long id = queue.add(new byte[] {1}, new byte[] {2});
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.getBlob(id));
+        assertTrue(new RecordQueueFile(mFile).isEmpty());
+    }
+
+    public void testCorruptTailIsDropped() throws Exception {
+        RecordQueueFile queue = new RecordQueueFile(mFile);
+        long id = queue.add(new byte[] {1, 2, 3});
+        queue.add(new byte[] {4, 5, 6});
+
+        // Simulate a crash in the middle of the last write
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+
+        queue = new RecordQueueFile(mFile);
+        LongArrayMap<byte[]> records = queue.getAll();
+        assertEquals(1, records.size());
+        assertTrue(records.containsKey(id));
+
+        // The file is still usable after recovery
+        long next = queue.add(new byte[] {7});
+        assertEquals(2, new RecordQueueFile(mFile).getAll().size());
+        assertTrue(next > id);
+    }
+
+    public void testCompaction() throws Exception {
+        RecordQueueFile queue = new RecordQueueFile(mFile);
+        byte[] payload = new byte[1024];
+        long kept = queue.add(payload);
+        for (int i = 0; i < 64; i++) {
+            queue.remove(queue.add(payload));
+        }
+        // Garbage has been reclaimed
+        assertTrue(mFile.length() < 32 * 1024);
+
+        LongArrayMap<byte[]> records = new RecordQueueFile(mFile).getAll();
+        assertEquals(1, records.size());
+        assertTrue(records.containsKey(kept));
+    }
+}
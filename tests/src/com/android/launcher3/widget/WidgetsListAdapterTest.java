@@ -40,6 +40,7 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.times;
@@ -120,6 +121,54 @@ public class WidgetsListAdapterTest {
         // E - null = -1, E deleted from index 3      [A, C, D]
     }
 
+    @Test
+    public void testUpdateWidgetsForPackage_inserted() throws Exception {
+        mAdapter.setWidgets(generateSampleMap(1));
+        MultiHashMap<PackageItemInfo, WidgetItem> newMap = generateSampleMap(2);
+        PackageItemInfo added = null;
+        for (PackageItemInfo info : newMap.keySet()) {
+            if (!info.packageName.equals(mAdapter.getPackageName(0))) {
+                added = info;
+            }
+        }
+        mAdapter.updateWidgetsForPackage(added.packageName, singlePackageMap(newMap, added));
+        verify(mListener, times(1)).notifyDataSetChanged();
+        verify(mListener, times(1)).notifyItemInserted(anyInt());
+        assertEquals(2, mAdapter.getItemCount());
+    }
+
+    @Test
+    public void testUpdateWidgetsForPackage_removed() throws Exception {
+        mAdapter.setWidgets(generateSampleMap(2));
+        mAdapter.updateWidgetsForPackage(mAdapter.getPackageName(1),
+                new MultiHashMap<PackageItemInfo, WidgetItem>());
+        verify(mListener, times(1)).notifyDataSetChanged();
+        verify(mListener, times(1)).notifyItemRemoved(1);
+        assertEquals(1, mAdapter.getItemCount());
+    }
+
+    @Test
+    public void testUpdateWidgetsForPackage_changed() throws Exception {
+        mAdapter.setWidgets(generateSampleMap(2));
+        MultiHashMap<PackageItemInfo, WidgetItem> newMap = generateSampleMap(2);
+        for (PackageItemInfo info : newMap.keySet()) {
+            if (info.packageName.equals(mAdapter.getPackageName(1))) {
+                mAdapter.updateWidgetsForPackage(info.packageName,
+                        singlePackageMap(newMap, info));
+            }
+        }
+        verify(mListener, times(1)).notifyItemChanged(1);
+        verify(mListener, times(0)).notifyItemInserted(anyInt());
+        verify(mListener, times(0)).notifyItemRemoved(anyInt());
+    }
+
+    private static MultiHashMap<PackageItemInfo, WidgetItem> singlePackageMap(
+            MultiHashMap<PackageItemInfo, WidgetItem> map, PackageItemInfo info) {
+        MultiHashMap<PackageItemInfo, WidgetItem> result = new MultiHashMap<>();
+        result.put(info, map.get(info));
+        return result;
+    }
+
     /**
      * Helper method to generate the sample widget model map that can be used for the tests
      * @param num the number of WidgetItem the map should contain